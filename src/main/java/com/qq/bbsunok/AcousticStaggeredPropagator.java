@@ -0,0 +1,504 @@
+package com.qq.bbsunok;
+import java.util.Arrays;
+/**
+ * 二维变密度声波方程的交错网格有限差分传播器，一阶速度-压力方程，卷积完全匹配层（CPML）吸收边界。
+ * <p>
+ * dp/dt = -ρv^2*(dvx/dx+dvz/dz)，dvx/dt = -(1/ρ)*dp/dx，dvz/dt = -(1/ρ)*dp/dz。
+ * 压力p在整网格点上，vx在(x+dx/2,z)，vz在(x,z+dz/2)，速度比压力晚半个时间步。
+ * 网格和数组的排列由{@link ModelGrid}给出：模型四周（自由表面时上方除外）各加npml个吸收边界点，
+ * 外面再加order/2个恒为零的网格点，z为快轴。ρv^2*dt、dt/ρ和差分系数直接使用模型网格中的数组。
+ * <p>
+ * 吸收边界中每个空间导数d/dx替换为d/dx+ψ，ψ(n) = b*ψ(n-1)+a*(d/dx)(n)，
+ * b = exp(-(d+α)*dt)，a = d*(b-1)/(d+α)。ψ只在吸收边界的条带中分配：
+ * x方向的ψ只有左右各npml列，z方向的ψ只有上下各npml行。
+ * 每一列先计算两个方向的导数，吸收边界的条带中再加上ψ，最后用同一个没有分支的循环更新整列。
+ * 对象保存了波场，不能被多个线程同时使用。
+ * @author bbsun
+ *
+ */
+final class AcousticStaggeredPropagator {
+	/**
+	 * 吸收边界的理论反射系数
+	 */
+	private static final double REFLECTION = 1.0e-4;
+	/**
+	 * 模型网格
+	 */
+	private final ModelGrid model;
+	/**
+	 * 模型的水平网格点数
+	 */
+	private final int nx;
+	/**
+	 * 吸收边界的网格点数
+	 */
+	private final int npml;
+	/**
+	 * 差分算子的半宽度
+	 */
+	private final int m;
+	/**
+	 * 计算网格的水平网格点数（包括吸收边界）
+	 */
+	private final int nxp;
+	/**
+	 * 计算网格的深度网格点数（包括吸收边界）
+	 */
+	private final int nzp;
+	/**
+	 * 模型第一行在计算网格中的深度下标
+	 */
+	private final int ztop;
+	/**
+	 * 一列的长度（包括两端的零点和对齐补齐的点）
+	 */
+	private final int stride;
+	/**
+	 * 时间采样
+	 */
+	private final float dt;
+	/**
+	 * 水平空间采样
+	 */
+	private final float dx;
+	/**
+	 * 深度空间采样
+	 */
+	private final float dz;
+	/**
+	 * 是否采用自由表面
+	 */
+	private final boolean free;
+	/**
+	 * 水平方向的系数a[k]/dx
+	 */
+	private final float[] ax;
+	/**
+	 * 深度方向的系数a[k]/dz
+	 */
+	private final float[] az;
+	/**
+	 * ρ*v^2*dt
+	 */
+	private final float[] kappa;
+	/**
+	 * vx所在位置的dt/ρ
+	 */
+	private final float[] bx;
+	/**
+	 * vz所在位置的dt/ρ
+	 */
+	private final float[] bz;
+	/**
+	 * x方向整网格点的CPML系数b和a
+	 */
+	private final float[] bxi, axi;
+	/**
+	 * x方向半网格点的CPML系数b和a
+	 */
+	private final float[] bxh, axh;
+	/**
+	 * z方向整网格点的CPML系数b和a
+	 */
+	private final float[] bzi, azi;
+	/**
+	 * z方向半网格点的CPML系数b和a
+	 */
+	private final float[] bzh, azh;
+	/**
+	 * 压力
+	 */
+	private final float[] p;
+	/**
+	 * 水平速度
+	 */
+	private final float[] vx;
+	/**
+	 * 垂直速度
+	 */
+	private final float[] vz;
+	/**
+	 * 左右条带中dp/dx的ψ [2*npml][nzp]
+	 */
+	private final float[] psiPx;
+	/**
+	 * 左右条带中dvx/dx的ψ [2*npml][nzp]
+	 */
+	private final float[] psiVx;
+	/**
+	 * 上下条带中dp/dz的ψ [nxp][ztop+npml]
+	 */
+	private final float[] psiPz;
+	/**
+	 * 上下条带中dvz/dz的ψ [nxp][ztop+npml]
+	 */
+	private final float[] psiVz;
+	/**
+	 * z方向吸收边界的行数（上下合计）
+	 */
+	private final int nzs;
+	/**
+	 * 每个线程的导数缓冲区，[线程][2][nzp]
+	 */
+	private float[][][] buffers;
+	/**
+	 * 本次模拟的条带工作线程，模拟之外为null（串行计算）
+	 */
+	private StripWorkers workers;
+	/**
+	 * 一组列的速度更新
+	 */
+	private final StripWorkers.Strip velocityStrip = (a, b, t) -> columns(a, b, true, buffers[t]);
+	/**
+	 * 一组列的压力更新
+	 */
+	private final StripWorkers.Strip pressureStrip = (a, b, t) -> columns(a, b, false, buffers[t]);
+	/**
+	 * 震源的数组下标
+	 */
+	private int[] sources = new int[0];
+	/**
+	 * 震源的加载系数v^2*dt/(dx*dz)
+	 */
+	private float[] sourceScale = new float[0];
+	/**
+	 * 检波点的数组下标
+	 */
+	private int[] receivers = new int[0];
+	/**
+	 * 最近一次模拟的网格点更新速度
+	 */
+	private double cellsPerSecond;
+	/**
+	 * 构造函数
+	 * @param model 模型网格，需要有密度
+	 * @param f0 震源的主频，用于CPML的频率偏移α=π*f0
+	 */
+	AcousticStaggeredPropagator(ModelGrid model, float f0) {
+		if(!model.hasDensity())
+			throw new ArithmeticException("变密度声波方程需要密度模型。");
+		this.model  = model;
+		this.m      = model.m;
+		this.nx     = model.nx;
+		this.npml   = model.npml;
+		this.dt     = model.dt;
+		this.dx     = model.dx;
+		this.dz     = model.dz;
+		this.free   = model.free;
+		this.ztop   = model.ztop;
+		this.nxp    = model.nxp;
+		this.nzp    = model.nzp;
+		this.nzs    = ztop+npml;
+		this.stride = model.stride;
+		this.ax     = model.ax;
+		this.az     = model.az;
+		this.kappa  = model.kappa;
+		this.bx     = model.buoyancyX;
+		this.bz     = model.buoyancyZ;
+		int size = model.size();
+		p  = new float[size];
+		vx = new float[size];
+		vz = new float[size];
+		float alpha = (float) (Math.PI*f0);
+		bxi = new float[nxp];
+		axi = new float[nxp];
+		bxh = new float[nxp];
+		axh = new float[nxp];
+		cpml(model.profileX, alpha, dx, bxi, axi);
+		cpml(model.profileXHalf, alpha, dx, bxh, axh);
+		bzi = new float[nzp];
+		azi = new float[nzp];
+		bzh = new float[nzp];
+		azh = new float[nzp];
+		cpml(model.profileZ, alpha, dz, bzi, azi);
+		cpml(model.profileZHalf, alpha, dz, bzh, azh);
+		psiPx = new float[2*npml*nzp];
+		psiVx = new float[2*npml*nzp];
+		psiPz = new float[nxp*nzs];
+		psiVz = new float[nxp*nzs];
+		buffers = new float[1][2][nzp];
+	}
+	/**
+	 * 计算CPML系数，d = d0*(距离/宽度)^2，α = αmax*(1-距离/宽度)
+	 * @param profile 归一化距离的平方，只有吸收边界条带中的点非零
+	 * @param alphaMax 最大的频率偏移
+	 * @param h 空间采样
+	 * @param b 输出的系数b
+	 * @param a 输出的系数a
+	 */
+	private void cpml(float[] profile, float alphaMax, float h, float[] b, float[] a) {
+		Arrays.fill(b, 1.0f);
+		if(npml==0)
+			return;
+		double d0 = 3.0*model.vmax*Math.log(1.0/REFLECTION)/(2.0*npml*h);
+		for(int i=0;i<profile.length;i++) {
+			if(profile[i]==0.0f)
+				continue;
+			double r  = Math.sqrt(profile[i]);
+			double d  = d0*profile[i];
+			double al = alphaMax*(1.0-r);
+			double bi = Math.exp(-(d+al)*dt);
+			b[i] = (float) bi;
+			a[i] = (float) (d/(d+al)*(bi-1.0));
+		}
+	}
+	/**
+	 * 设置震源位置
+	 * @param sx 震源位置坐标（以网格点为单位）
+	 * @param sz 震源位置坐标（以网格点为单位）
+	 */
+	void setSources(float[] sx, float[] sz) {
+		if(sx.length!=sz.length)
+			throw new ArithmeticException("震源的坐标个数应该一致。");
+		sources     = new int[sx.length];
+		sourceScale = new float[sx.length];
+		for(int i=0;i<sx.length;i++) {
+			sources[i]     = modelIndex(sx[i], sz[i]);
+			sourceScale[i] = model.w[sources[i]]/(dt*dx*dz);
+		}
+	}
+	/**
+	 * 设置检波点位置
+	 * @param rx 接收点坐标（以网格点为单位）
+	 * @param rz 接收点坐标（以网格点为单位）
+	 */
+	void setReceivers(float[] rx, float[] rz) {
+		if(rx.length!=rz.length)
+			throw new ArithmeticException("检波点的坐标个数应该一致。");
+		receivers = new int[rx.length];
+		for(int i=0;i<rx.length;i++)
+			receivers[i] = modelIndex(rx[i], rz[i]);
+	}
+	/**
+	 * 设置并行计算的线程数，每个时间步的速度和压力更新分别按列划分给常驻的{@link StripWorkers}
+	 * @param threads 线程数，1为串行计算
+	 */
+	void setThreads(int threads) {
+		if(threads<1)
+			throw new ArithmeticException("线程数必须为正整数");
+		threads = Math.min(threads, nxp);
+		if(buffers.length!=threads)
+			buffers = new float[threads][2][nzp];
+	}
+	/**
+	 * 返回最近一次模拟的网格点更新速度
+	 * @return 每秒更新的网格点数
+	 */
+	double getCellsPerSecond() {
+		return cellsPerSecond;
+	}
+	/**
+	 * 正演模拟
+	 * <p>
+	 * 震源加载在压力上，加载量为v^2乘以子波的时间积分，常密度时压力满足与{@link ScalarWavePropagator}相同的二阶方程。
+	 * @param sou 震源子波 [ns][nt]
+	 * @param rec 压力记录 [nr][nt]
+	 */
+	void forward(float[][] sou, float[][] rec) {
+		forward(sou, ReceiverSink.of(rec));
+	}
+	/**
+	 * 正演模拟，压力记录按时间块交给输出
+	 * @param sou 震源子波 [ns][nt]
+	 * @param sink 压力记录的输出
+	 */
+	void forward(float[][] sou, ReceiverSink sink) {
+		if(sou.length!=sources.length)
+			throw new ArithmeticException("震源子波的道数应该与坐标个数一致。");
+		int nt = sou.length>0?sou[0].length:0;
+		RecordBuffer rec = new RecordBuffer(sink, receivers, nt);
+		reset();
+		double[] integral = new double[sources.length];
+		long start = System.nanoTime();
+		workers = new StripWorkers(buffers.length);
+		try {
+			for(int it=0;it<nt;it++) {
+				columns(true);
+				columns(false);
+				for(int is=0;is<sources.length;is++) {
+					integral[is] += sou[is][it]*dt;
+					p[sources[is]] += (float) (sourceScale[is]*integral[is]);
+				}
+				rec.record(p);
+			}
+		} finally {
+			workers.close();
+			workers = null;
+		}
+		rec.end();
+		long elapsed = Math.max(System.nanoTime()-start, 1L);
+		cellsPerSecond = (double) nxp*nzp*nt/(elapsed*1.0e-9);
+	}
+	/**
+	 * 波场和ψ清零
+	 */
+	void reset() {
+		Arrays.fill(p, 0.0f);
+		Arrays.fill(vx, 0.0f);
+		Arrays.fill(vz, 0.0f);
+		Arrays.fill(psiPx, 0.0f);
+		Arrays.fill(psiVx, 0.0f);
+		Arrays.fill(psiPz, 0.0f);
+		Arrays.fill(psiVz, 0.0f);
+	}
+	/**
+	 * 更新所有列的速度或压力
+	 * @param velocity true更新速度，false更新压力
+	 */
+	private void columns(boolean velocity) {
+		StripWorkers.Strip strip = velocity?velocityStrip:pressureStrip;
+		if(workers==null)
+			strip.run(0, nxp, 0);
+		else
+			workers.run(0, nxp, strip);
+		if(free) {
+			for(int ix=0;ix<nxp;ix++)
+				freeSurface(ix, velocity);
+		}
+	}
+	/**
+	 * 更新一组列的速度或压力
+	 * @param ix0 起始列号
+	 * @param ix1 结束列号（不包含）
+	 * @param velocity true更新速度，false更新压力
+	 * @param g 导数缓冲区
+	 */
+	private void columns(int ix0, int ix1, boolean velocity, float[][] g) {
+		for(int ix=ix0;ix<ix1;ix++) {
+			if(velocity)
+				velocityColumn(ix, g[0], g[1]);
+			else
+				pressureColumn(ix, g[0], g[1]);
+		}
+	}
+	/**
+	 * 更新一列的速度：vx -= dt/ρ*(dp/dx+ψ)，vz -= dt/ρ*(dp/dz+ψ)
+	 * @param ix 列号
+	 * @param gx dp/dx的缓冲区
+	 * @param gz dp/dz的缓冲区
+	 */
+	private void velocityColumn(int ix, float[] gx, float[] gz) {
+		int i0 = index(ix, 0);
+		derivative(p, i0, stride, 0, ax, gx);
+		derivative(p, i0, 1, 0, az, gz);
+		correctX(ix, gx, bxh[ix], axh[ix], psiPx);
+		correctZ(ix, gz, bzh, azh, psiPz);
+		float[] vx = this.vx;
+		float[] vz = this.vz;
+		float[] bx = this.bx;
+		float[] bz = this.bz;
+		for(int j=0,i=i0;j<nzp;j++,i++) {
+			vx[i] -= bx[i]*gx[j];
+			vz[i] -= bz[i]*gz[j];
+		}
+	}
+	/**
+	 * 更新一列的压力：p -= ρv^2*dt*(dvx/dx+ψ+dvz/dz+ψ)
+	 * @param ix 列号
+	 * @param gx dvx/dx的缓冲区
+	 * @param gz dvz/dz的缓冲区
+	 */
+	private void pressureColumn(int ix, float[] gx, float[] gz) {
+		int i0 = index(ix, 0);
+		derivative(vx, i0, stride, 1, ax, gx);
+		derivative(vz, i0, 1, 1, az, gz);
+		correctX(ix, gx, bxi[ix], axi[ix], psiVx);
+		correctZ(ix, gz, bzi, azi, psiVz);
+		float[] p = this.p;
+		float[] kappa = this.kappa;
+		for(int j=0,i=i0;j<nzp;j++,i++)
+			p[i] -= kappa[i]*(gx[j]+gz[j]);
+	}
+	/**
+	 * 计算一列的交错网格一阶导数
+	 * <p>
+	 * shift为0时计算半网格点上的导数 sum a[k]*(f[i+k]-f[i-k+1])，为1时计算整网格点上的导数 sum a[k]*(f[i+k-1]-f[i-k])。
+	 * @param f 波场
+	 * @param i0 这一列第一个网格点的数组下标
+	 * @param step 求导方向上相邻网格点的下标差
+	 * @param shift 0或1
+	 * @param a 系数
+	 * @param g 输出的导数
+	 */
+	private void derivative(float[] f, int i0, int step, int shift, float[] a, float[] g) {
+		Arrays.fill(g, 0.0f);
+		for(int k=1;k<=m;k++) {
+			float ak = a[k];
+			int plus  = i0+(k-shift)*step;
+			int minus = i0-(k-1+shift)*step;
+			for(int j=0;j<nzp;j++)
+				g[j] += ak*(f[plus+j]-f[minus+j]);
+		}
+	}
+	/**
+	 * 左右吸收边界条带中的x方向导数加上ψ
+	 * @param ix 列号
+	 * @param g 导数
+	 * @param b 这一列的系数b
+	 * @param a 这一列的系数a
+	 * @param psi ψ
+	 */
+	private void correctX(int ix, float[] g, float b, float a, float[] psi) {
+		if(ix>=npml && ix<nxp-npml)
+			return;
+		int xs = ix<npml?ix:ix-nx;
+		for(int j=0,k=xs*nzp;j<nzp;j++,k++) {
+			psi[k] = b*psi[k]+a*g[j];
+			g[j] += psi[k];
+		}
+	}
+	/**
+	 * 上下吸收边界条带中的z方向导数加上ψ
+	 * @param ix 列号
+	 * @param g 导数
+	 * @param b 系数b
+	 * @param a 系数a
+	 * @param psi ψ
+	 */
+	private void correctZ(int ix, float[] g, float[] b, float[] a, float[] psi) {
+		int base = ix*nzs;
+		for(int iz=0;iz<ztop;iz++) {
+			int k = base+iz;
+			psi[k] = b[iz]*psi[k]+a[iz]*g[iz];
+			g[iz] += psi[k];
+		}
+		for(int iz=nzp-npml,k=base+ztop;iz<nzp;iz++,k++) {
+			psi[k] = b[iz]*psi[k]+a[iz]*g[iz];
+			g[iz] += psi[k];
+		}
+	}
+	/**
+	 * 自由表面：地表压力为零，压力关于地表反对称，vz关于地表对称
+	 * @param ix 列号
+	 * @param velocity true处理速度，false处理压力
+	 */
+	private void freeSurface(int ix, boolean velocity) {
+		int i = index(ix, 0);
+		if(velocity) {
+			for(int k=0;k<m;k++)
+				vz[i-1-k] = vz[i+k];
+		} else {
+			p[i] = 0.0f;
+			for(int k=1;k<=m;k++)
+				p[i-k] = -p[i+k];
+		}
+	}
+	/**
+	 * 计算网格中一点的数组下标
+	 * @param ix 水平下标
+	 * @param iz 深度下标
+	 * @return 数组下标
+	 */
+	private int index(int ix, int iz) {
+		return (ix+m)*stride+iz+m;
+	}
+	/**
+	 * 模型中一点（四舍五入到最近的网格点）的数组下标
+	 * @param x 水平坐标（以网格点为单位）
+	 * @param z 深度坐标（以网格点为单位）
+	 * @return 数组下标
+	 */
+	private int modelIndex(float x, float z) {
+		return model.modelIndex(x, z);
+	}
+}
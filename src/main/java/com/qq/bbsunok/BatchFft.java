@@ -0,0 +1,218 @@
+package com.qq.bbsunok;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.function.IntConsumer;
+import com.qq.bbsunok.FastFourierTransform.Type;
+/**
+ * 多道快速傅里叶变换。
+ * <p>
+ * 所有道共享同一组变换计划，按道划分为多个任务在ForkJoinPool中并行计算。
+ * 每个工作线程使用{@link FftPlan}中自己的工作数组，变换过程中不再分配内存。
+ * 输入既可以是二维数组（每行一道），也可以是按道连续存放的一维数组。
+ * @author bbsun
+ *
+ */
+public final class BatchFft {
+	/**
+	 * 每个子任务至少处理的样点数，避免任务划分过细
+	 */
+	private static final int MIN_SAMPLES_PER_TASK = 1<<15;
+	/**
+	 * 每道的样点数
+	 */
+	private final int nt;
+	/**
+	 * 复数正变换计划
+	 */
+	private final FftPlan forward;
+	/**
+	 * 复数反变换计划
+	 */
+	private final FftPlan backward;
+	/**
+	 * 实数变换计划
+	 */
+	private final RealFftPlan real;
+	/**
+	 * 线程池
+	 */
+	private final ForkJoinPool pool;
+	/**
+	 * 构造函数，使用公共的ForkJoinPool
+	 * @param nt 每道的样点数
+	 */
+	public BatchFft(int nt) {
+		this(nt, ForkJoinPool.commonPool());
+	}
+	/**
+	 * 构造函数
+	 * @param nt 每道的样点数
+	 * @param pool 线程池
+	 */
+	public BatchFft(int nt, ForkJoinPool pool) {
+		this.nt       = nt;
+		this.forward  = FftPlan.get(nt, Type.FORWARD);
+		this.backward = FftPlan.get(nt, Type.BACKWARD);
+		this.real     = RealFftPlan.get(nt);
+		this.pool     = pool;
+	}
+	/**
+	 * 返回每道的样点数
+	 * @return 每道的样点数
+	 */
+	public int getLength() {
+		return nt;
+	}
+	/**
+	 * 多道复数原位变换
+	 * @param c 输入(输出）数组，每行为交错存放的nt个复数
+	 * @param type 变换类型
+	 */
+	public void complexToComplex(float[][] c, Type type) {
+		FftPlan plan = plan(type);
+		run(c.length, i -> plan.execute(c[i], 0, 1));
+	}
+	/**
+	 * 多道复数原位变换，实部和虚部分开存放
+	 * @param re 实部数组，每行一道
+	 * @param im 虚部数组，每行一道
+	 * @param type 变换类型
+	 */
+	public void complexToComplex(float[][] re, float[][] im, Type type) {
+		if(re.length!=im.length)
+			throw new ArithmeticException("实部和虚部数组的道数应该一致。");
+		FftPlan plan = plan(type);
+		run(re.length, i -> plan.execute(re[i], 0, im[i], 0, 1));
+	}
+	/**
+	 * 多道复数原位变换，数据按道连续存放
+	 * @param c 输入(输出）数组，第i道从下标2*nt*i开始，交错存放nt个复数
+	 * @param ntraces 道数
+	 * @param type 变换类型
+	 */
+	public void complexToComplex(float[] c, int ntraces, Type type) {
+		FftPlan plan = plan(type);
+		run(ntraces, i -> plan.execute(c, 2*nt*i, 1));
+	}
+	/**
+	 * 多道实数对复数正变换
+	 * @param x 实数输入数组 [ntraces][nt]
+	 * @param c 输出数组 [ntraces][2*(nt/2+1)]，交错存放
+	 */
+	public void realToComplex(float[][] x, float[][] c) {
+		if(x.length!=c.length)
+			throw new ArithmeticException("输入和输出数组的道数应该一致。");
+		run(x.length, i -> real.forward(x[i], 0, c[i], 0));
+	}
+	/**
+	 * 多道实数对复数正变换，数据按道连续存放
+	 * @param x 实数输入数组，第i道从下标nt*i开始
+	 * @param ntraces 道数
+	 * @param c 输出数组，第i道从下标2*(nt/2+1)*i开始
+	 */
+	public void realToComplex(float[] x, int ntraces, float[] c) {
+		int nc = 2*real.getSpectrumLength();
+		run(ntraces, i -> real.forward(x, nt*i, c, nc*i));
+	}
+	/**
+	 * 多道复数对实数反变换
+	 * @param c 输入数组 [ntraces][2*(nt/2+1)]，交错存放
+	 * @param x 实数输出数组 [ntraces][nt]
+	 */
+	public void complexToReal(float[][] c, float[][] x) {
+		if(x.length!=c.length)
+			throw new ArithmeticException("输入和输出数组的道数应该一致。");
+		run(x.length, i -> real.inverse(c[i], 0, x[i], 0));
+	}
+	/**
+	 * 多道复数对实数反变换，数据按道连续存放
+	 * @param c 输入数组，第i道从下标2*(nt/2+1)*i开始
+	 * @param ntraces 道数
+	 * @param x 实数输出数组，第i道从下标nt*i开始
+	 */
+	public void complexToReal(float[] c, int ntraces, float[] x) {
+		int nc = 2*real.getSpectrumLength();
+		run(ntraces, i -> real.inverse(c, nc*i, x, nt*i));
+	}
+	/**
+	 * 返回变换类型对应的计划
+	 * @param type 变换类型
+	 * @return 变换计划
+	 */
+	private FftPlan plan(Type type) {
+		return type==Type.FORWARD?forward:backward;
+	}
+	/**
+	 * 在线程池中对每一道执行计算
+	 * @param ntraces 道数
+	 * @param kernel 每一道的计算
+	 */
+	private void run(int ntraces, IntConsumer kernel) {
+		parallelFor(pool, ntraces, Math.max(1, MIN_SAMPLES_PER_TASK/Math.max(nt,1)), kernel);
+	}
+	/**
+	 * 在线程池中对下标0...n-1并行执行计算
+	 * @param pool 线程池
+	 * @param n 下标个数
+	 * @param grain 每个子任务最多处理的下标个数
+	 * @param kernel 每个下标的计算
+	 */
+	static void parallelFor(ForkJoinPool pool, int n, int grain, IntConsumer kernel) {
+		// 保证每个工作线程至少分到几个任务，以便负载均衡
+		grain = Math.min(grain, Math.max(1, n/(4*pool.getParallelism())));
+		if(n<=grain) {
+			for(int i=0;i<n;i++)
+				kernel.accept(i);
+			return;
+		}
+		pool.invoke(new TraceTask(0, n, grain, kernel));
+	}
+	/**
+	 * 按道二分的并行任务
+	 */
+	private static final class TraceTask extends RecursiveAction {
+		/**
+		 * 序列化版本
+		 */
+		private static final long serialVersionUID = 1L;
+		/**
+		 * 起始道号
+		 */
+		private final int begin;
+		/**
+		 * 结束道号（不包含）
+		 */
+		private final int end;
+		/**
+		 * 不再划分的道数
+		 */
+		private final int grain;
+		/**
+		 * 每一道的计算
+		 */
+		private final transient IntConsumer kernel;
+		/**
+		 * 构造函数
+		 * @param begin 起始道号
+		 * @param end 结束道号（不包含）
+		 * @param grain 不再划分的道数
+		 * @param kernel 每一道的计算
+		 */
+		TraceTask(int begin, int end, int grain, IntConsumer kernel) {
+			this.begin  = begin;
+			this.end    = end;
+			this.grain  = grain;
+			this.kernel = kernel;
+		}
+		@Override
+		protected void compute() {
+			if(end-begin<=grain) {
+				for(int i=begin;i<end;i++)
+					kernel.accept(i);
+				return;
+			}
+			int mid = (begin+end)>>>1;
+			invokeAll(new TraceTask(begin, mid, grain, kernel), new TraceTask(mid, end, grain, kernel));
+		}
+	}
+}
@@ -1,10 +1,11 @@
 package com.qq.bbsunok;
+import java.nio.FloatBuffer;
 import java.util.logging.Logger;
 import edu.mines.jtk.util.ArrayMath;
 /**
- * 基于二分法的快速傅里叶变换。
+ * 快速傅里叶变换。
  * <p>
- * 输入数据的长度必须为2的整数幂。
+ * 输入数据的长度可以为任意正整数，具体算法由{@link FftPlan}根据长度自动选择。
  * @author bbsun
  *
  */
@@ -13,10 +14,6 @@ public class FastFourierTransform {
 	 * Logging
 	 */
 	private static Logger logger = Logger.getGlobal();
-	/**
-	 * PI常数
-	 */
-	private static final double PI=3.1415926;
 	/**
 	 *傅里叶变换类型。
 	 */
@@ -33,50 +30,13 @@ public class FastFourierTransform {
 	/**
 	 * 快速傅里叶变换计算。
 	 * <p>
-	 * 采用Inplace实现。
+	 * 采用Inplace实现，旋转因子和排序由缓存的{@link FftPlan}提供。
 	 * @param in 输入数组
 	 * @param type 变换类型
 	 */
 	public static void runInplace(float[][] in, Type type){
-		int n  = in.length;
-		int m  = in[0].length;
-		final float scale = type==Type.FORWARD?1.0f:(float) (1.0f/n);
-		final double sign = type==Type.FORWARD?-1.0:1.0;
-		int p = getPower(n);
-		if(m!=2) 
-			throw new ArithmeticException("输入数组的第二维应该是2，代表实部和虚部。");
-		if(Math.pow(2,p)!=n)
-			throw new ArithmeticException("数组的长度必须为2的整数幂");
-		// 重新排列数据
-		reOrder(in);
-		for(int i=1;i<=p;i++) {
-			// x数组的长度
-			int xn = (int) Math.pow(2,(i-1));
-			double dp = 2*PI/2/xn*sign;
-			// z数组的长度
-			int zn = xn*2;
-			for(int j=0;j<n;j+=zn) {
-				for(int k=j;k<(j+xn);k++) {
-					int ix    = k;
-					int iy    = ix + xn ;
-					int iz    = k;
-					double xr = in[ix][0] ;
-					double xi = in[ix][1] ;
-					double yr = in[iy][0] ;
-					double yi = in[iy][1];
-					double pr = Math.cos(k*dp);
-					double pi = Math.sin(k*dp);
-					double t1 = pr*yr-pi*yi;
-					double t2 = pr*yi+pi*yr;
-					in[iz][0]    = (float) (xr + t1);
-					in[iz][1]    = (float) (xi + t2);
-					in[iz+xn][0] = (float) (xr - t1);
-					in[iz+xn][1] = (float) (xi - t2);
-				}
-			}
-		}
-		//归一化，使得正变换接反变换得到原数组
-		ArrayMath.mul(scale, in, in);
+		checkComplex(in);
+		FftPlan.get(in.length, type).execute(in);
 	}
 	/**
 	 * 快速傅里叶变换。
@@ -86,67 +46,119 @@ public class FastFourierTransform {
 	 */
 	public static float[][] run(float[][] in, Type type)
 	{
-		int n  = in.length;
-		int m  = in[0].length;
-		final float scale = type==Type.FORWARD?1.0f:(float) (1.0f/n);
-		final double sign = type==Type.FORWARD?-1.0:1.0;
-		int p = getPower(n);
-		if(m!=2) 
-			throw new ArithmeticException("输入数组的第二维应该是2，代表实部和虚部。");
-		if(Math.pow(2,p)!=n)
-			throw new ArithmeticException("数组的长度必须为2的整数幂");
+		checkComplex(in);
+		FftPlan plan = FftPlan.get(in.length, type);
 		// 傅里叶变换系数结果
-		float [][] out = new float[n][2];
-		// 零时变量
-		float [][] tmp = null ;
-		// 重新排列数据
-		reOrder(in);
-		for(int i=1;i<=p;i++) {
-			// x数组的长度
-			int xn = (int) Math.pow(2,(i-1));
-			double dp = 2*PI/2/xn*sign;
-			// z数组的长度
-			int zn = xn*2;
-			for(int j=0;j<n;j+=zn) {
-				for(int k=j;k<(j+xn);k++) {
-					int ix    = k;
-					int iy    = ix + xn ;
-					int iz    = k;
-					double xr = in[ix][0] ;
-					double xi = in[ix][1] ;
-					double yr = in[iy][0] ;
-					double yi = in[iy][1];
-					double pr = Math.cos(k*dp);
-					double pi = Math.sin(k*dp);
-					double zr = xr + (pr*yr-pi*yi);
-					double zi = xi + (pr*yi+pi*yr);
-					out[iz][0] = (float) zr;
-					out[iz][1] = (float) zi;
-				}
-				for(int k=(j+xn);k<(j+zn);k++) {
-					int ix    = k -xn;
-					int iy    = ix + xn ;
-					int iz    = k;
-					double xr = in[ix][0] ;
-					double xi = in[ix][1] ;
-					double yr = in[iy][0] ;
-					double yi = in[iy][1];
-					double pr = Math.cos((k-xn)*dp);
-					double pi = Math.sin((k-xn)*dp);
-					double zr = xr - (pr*yr-pi*yi);
-					double zi = xi - (pr*yi+pi*yr);
-					out[iz][0] = (float) zr;
-					out[iz][1] = (float) zi;
-				}
-			}
-			tmp = in;
-			in  = out;
-			out = tmp;
-		}
-		//归一化，使得正变换接反变换得到原数组
-		out = ArrayMath.mul(scale, in);
+		float [][] out = ArrayMath.copy(in);
+		plan.execute(out);
 		return out;
 	}
+	/**
+	 * 对交错存放（实部，虚部，实部，虚部...）的复数数组进行原位快速傅里叶变换。
+	 * @param c 输入(输出）数组，长度为变换长度的两倍
+	 * @param type 变换类型
+	 */
+	public static void runInplace(float[] c, Type type){
+		if(c.length%2!=0)
+			throw new ArithmeticException("交错存放的复数数组长度应该为偶数，代表实部和虚部。");
+		FftPlan.get(c.length/2, type).execute(c, 0, 1);
+	}
+	/**
+	 * 对交错存放的复数数组进行原位快速傅里叶变换。
+	 * @param c 输入(输出）数组
+	 * @param offset 第一个样点实部的下标
+	 * @param stride 相邻复数样点的间隔（以复数为单位）
+	 * @param n 变换长度
+	 * @param type 变换类型
+	 */
+	public static void runInplace(float[] c, int offset, int stride, int n, Type type){
+		FftPlan.get(n, type).execute(c, offset, stride);
+	}
+	/**
+	 * 对实部和虚部分开存放的复数数组进行原位快速傅里叶变换。
+	 * @param re 实部数组
+	 * @param im 虚部数组
+	 * @param type 变换类型
+	 */
+	public static void runInplace(float[] re, float[] im, Type type){
+		if(re.length!=im.length)
+			throw new ArithmeticException("实部和虚部数组的长度应该一致。");
+		FftPlan.get(re.length, type).execute(re, 0, im, 0, 1);
+	}
+	/**
+	 * 对实部和虚部分开存放的复数数组进行原位快速傅里叶变换。
+	 * @param re 实部数组
+	 * @param reOffset 第一个样点在实部数组中的下标
+	 * @param im 虚部数组
+	 * @param imOffset 第一个样点在虚部数组中的下标
+	 * @param stride 相邻样点的间隔
+	 * @param n 变换长度
+	 * @param type 变换类型
+	 */
+	public static void runInplace(float[] re, int reOffset, float[] im, int imOffset, int stride, int n, Type type){
+		FftPlan.get(n, type).execute(re, reOffset, im, imOffset, stride);
+	}
+	/**
+	 * 实数对复数的快速傅里叶正变换，只计算n/2+1个非冗余的频率样点。
+	 * @param x 实数输入数组
+	 * @return 交错存放的n/2+1个复数频率样点
+	 * @see RealFftPlan
+	 */
+	public static float[] realToComplex(float[] x){
+		RealFftPlan plan = RealFftPlan.get(x.length);
+		float[] c = new float[2*plan.getSpectrumLength()];
+		plan.forward(x, 0, c, 0);
+		return c;
+	}
+	/**
+	 * 实数对复数的快速傅里叶正变换，只计算n/2+1个非冗余的频率样点。
+	 * @param x 实数输入数组，长度为n
+	 * @param c 输出数组，交错存放n/2+1个复数
+	 */
+	public static void realToComplex(float[] x, float[] c){
+		RealFftPlan.get(x.length).forward(x, 0, c, 0);
+	}
+	/**
+	 * 复数对实数的快速傅里叶反变换，输入为n/2+1个非冗余的频率样点。
+	 * @param c 输入数组，交错存放n/2+1个复数
+	 * @param x 实数输出数组，长度为n
+	 */
+	public static void complexToReal(float[] c, float[] x){
+		RealFftPlan.get(x.length).inverse(c, 0, x, 0);
+	}
+	/**
+	 * 对缓冲区（例如内存映射文件）中交错存放的复数进行原位快速傅里叶变换。
+	 * 除可写的堆缓冲区外，数据经工作数组复制，见{@link FftPlan#execute(FloatBuffer, int)}。
+	 * @param c 输入(输出）缓冲区
+	 * @param offset 第一个样点实部的下标
+	 * @param n 变换长度
+	 * @param type 变换类型
+	 */
+	public static void runInplace(FloatBuffer c, int offset, int n, Type type){
+		FftPlan.get(n, type).execute(c, offset);
+	}
+	/**
+	 * 缓冲区（例如内存映射文件）中实数道的快速傅里叶正变换。
+	 * @param x 实数输入缓冲区
+	 * @param xOffset 第一个样点的下标
+	 * @param n 变换长度
+	 * @param c 输出缓冲区，交错存放n/2+1个复数
+	 * @param cOffset 第一个频率样点实部的下标
+	 */
+	public static void realToComplex(FloatBuffer x, int xOffset, int n, FloatBuffer c, int cOffset){
+		RealFftPlan.get(n).forward(x, xOffset, c, cOffset);
+	}
+	/**
+	 * 缓冲区（例如内存映射文件）中频谱的复数对实数快速傅里叶反变换。
+	 * @param c 输入缓冲区，交错存放n/2+1个复数
+	 * @param cOffset 第一个频率样点实部的下标
+	 * @param x 实数输出缓冲区
+	 * @param xOffset 第一个样点的下标
+	 * @param n 变换长度
+	 */
+	public static void complexToReal(FloatBuffer c, int cOffset, FloatBuffer x, int xOffset, int n){
+		RealFftPlan.get(n).inverse(c, cOffset, x, xOffset);
+	}
 	/**
 	 * 测试快速傅里叶变换
 	 * @param args 输入参数
@@ -171,35 +183,11 @@ public class FastFourierTransform {
 		logger.info(info.toString());
 	}
 	/**
-	 * Bitreserve排序
-	 * @param a 输入(输出）数组
-	 */
-	private static void reOrder(float [][] a) {
-		int n = a.length;
-        int shift = 1 + Integer.numberOfLeadingZeros(n);
-        for (int k = 0; k < n; k++) {
-            int j = Integer.reverse(k) >>> shift;
-            if (j > k) {
-            	float tr = a[j][0];
-            	float ti = a[j][1];
-                a[j][0]  = a[k][0];
-                a[j][1]  = a[k][1];
-                a[k][0]  = tr;
-                a[k][1] = ti;
-            }
-        }
-	}
-	/**
-	 * 计算log2(n)
-	 * @param n 整型数
-	 * @return log2(n)
-	 */
-	private static int getPower(int n) {
-		int p=1;
-		while(n/2>1) {
-			n=n/2;
-			p++;
-		}
-		return p;
+	 * 检查复数数组的维数
+	 * @param in 输入数组
+	 */
+	private static void checkComplex(float[][] in) {
+		if(in[0].length!=2) 
+			throw new ArithmeticException("输入数组的第二维应该是2，代表实部和虚部。");
 	}
 }
@@ -0,0 +1,291 @@
+package com.qq.bbsunok;
+import java.util.concurrent.ForkJoinPool;
+import edu.mines.jtk.dsp.Conv;
+/**
+ * 基于快速傅里叶变换的卷积和互相关。
+ * <p>
+ * 参数的含义与{@link Conv}相同：x的第一个样点的序号为kx，z只计算序号kz...kz+lz-1的样点，
+ * 卷积为z[i] = sum x[j]*y[i-j]，互相关为z[i] = sum x[j]*y[i+j]。
+ * 根据数组的长度估计直接计算和FFT的计算量，自动选择较快的一种。
+ * 用FFT时短的序列只变换一次，长的序列按块做重叠相加（overlap-add），
+ * 块长约为短序列长度的几倍，因此很长的序列也不需要很长的变换。
+ * 多道数据共享同一个滤波器时，滤波器的频谱只计算一次，各道在ForkJoinPool中并行计算。
+ * <p>
+ * 连续输入的长数据流请使用{@link OverlapSaveFilter}。
+ * @author bbsun
+ *
+ */
+public final class FftConvolution {
+	/**
+	 * 一次复数乘加相对于FFT中一次蝶形运算的计算量估计
+	 */
+	private static final float FFT_COST = 6.0f;
+	/**
+	 * 重叠相加时变换长度与短序列长度之比
+	 */
+	private static final int BLOCK_FACTOR = 4;
+	/**
+	 * 重叠相加的最小变换长度
+	 */
+	private static final int MIN_NFFT = 64;
+	/**
+	 * 每个线程的工作数组
+	 */
+	private static final ThreadLocal<float[]> BUFFER = ThreadLocal.withInitial(() -> new float[0]);
+	/**
+	 * 卷积 z[i] = sum x[j]*y[i-j]
+	 * @param lx x的长度
+	 * @param kx x第一个样点的序号
+	 * @param x 输入数组
+	 * @param ly y的长度
+	 * @param ky y第一个样点的序号
+	 * @param y 输入数组
+	 * @param lz z的长度
+	 * @param kz z第一个样点的序号
+	 * @param z 输出数组
+	 */
+	public static void conv(int lx, int kx, float[] x, int ly, int ky, float[] y, int lz, int kz, float[] z) {
+		if(!useFft(Math.min(lx,ly), Math.max(lx,ly), lz)) {
+			Conv.conv(lx, kx, x, ly, ky, y, lz, kz, z);
+			return;
+		}
+		// 卷积可以交换，短的序列作为滤波器
+		if(lx<=ly)
+			new Kernel(lx, kx, x, ly).apply(ly, ky, y, lz, kz, z);
+		else
+			new Kernel(ly, ky, y, lx).apply(lx, kx, x, lz, kz, z);
+	}
+	/**
+	 * 互相关 z[i] = sum x[j]*y[i+j]
+	 * @param lx x的长度
+	 * @param kx x第一个样点的序号
+	 * @param x 输入数组
+	 * @param ly y的长度
+	 * @param ky y第一个样点的序号
+	 * @param y 输入数组
+	 * @param lz z的长度
+	 * @param kz z第一个样点的序号
+	 * @param z 输出数组
+	 */
+	public static void xcor(int lx, int kx, float[] x, int ly, int ky, float[] y, int lz, int kz, float[] z) {
+		if(!useFft(Math.min(lx,ly), Math.max(lx,ly), lz)) {
+			Conv.xcor(lx, kx, x, ly, ky, y, lz, kz, z);
+			return;
+		}
+		// 互相关等于x反转后的卷积
+		conv(lx, 1-kx-lx, reverse(lx, x), ly, ky, y, lz, kz, z);
+	}
+	/**
+	 * 多道卷积，所有道共享同一个滤波器x，z[t][i] = sum x[j]*y[t][i-j]
+	 * @param lx x的长度
+	 * @param kx x第一个样点的序号
+	 * @param x 滤波器
+	 * @param ly 每道的长度
+	 * @param ky 每道第一个样点的序号
+	 * @param y 输入数组 [ntraces][ly]
+	 * @param lz 每道输出的长度
+	 * @param kz 每道输出第一个样点的序号
+	 * @param z 输出数组 [ntraces][lz]
+	 */
+	public static void conv(int lx, int kx, float[] x, int ly, int ky, float[][] y, int lz, int kz, float[][] z) {
+		if(y.length!=z.length)
+			throw new ArithmeticException("输入和输出数组的道数应该一致。");
+		if(!useFft(lx, ly, lz)) {
+			BatchFft.parallelFor(ForkJoinPool.commonPool(), y.length, grain((double) lz*lx),
+					i -> Conv.conv(lx, kx, x, ly, ky, y[i], lz, kz, z[i]));
+			return;
+		}
+		Kernel kernel = new Kernel(lx, kx, x, ly);
+		BatchFft.parallelFor(ForkJoinPool.commonPool(), y.length, grain(kernel.cost(ly)),
+				i -> kernel.apply(ly, ky, y[i], lz, kz, z[i]));
+	}
+	/**
+	 * 多道互相关，所有道共享同一个滤波器x，z[t][i] = sum x[j]*y[t][i+j]
+	 * @param lx x的长度
+	 * @param kx x第一个样点的序号
+	 * @param x 滤波器
+	 * @param ly 每道的长度
+	 * @param ky 每道第一个样点的序号
+	 * @param y 输入数组 [ntraces][ly]
+	 * @param lz 每道输出的长度
+	 * @param kz 每道输出第一个样点的序号
+	 * @param z 输出数组 [ntraces][lz]
+	 */
+	public static void xcor(int lx, int kx, float[] x, int ly, int ky, float[][] y, int lz, int kz, float[][] z) {
+		if(y.length!=z.length)
+			throw new ArithmeticException("输入和输出数组的道数应该一致。");
+		if(!useFft(lx, ly, lz)) {
+			BatchFft.parallelFor(ForkJoinPool.commonPool(), y.length, grain((double) lz*lx),
+					i -> Conv.xcor(lx, kx, x, ly, ky, y[i], lz, kz, z[i]));
+			return;
+		}
+		conv(lx, 1-kx-lx, reverse(lx, x), ly, ky, y, lz, kz, z);
+	}
+	/**
+	 * 根据计算量选择直接计算或者FFT
+	 * @param ls 滤波器（短序列）的长度
+	 * @param ll 长序列的长度
+	 * @param lz 输出的长度
+	 * @return 是否使用FFT
+	 */
+	private static boolean useFft(int ls, int ll, int lz) {
+		if(ls<=0 || ll<=0 || lz<=0)
+			return false;
+		double direct = (double) ls*Math.min(lz, ls+ll-1);
+		int nfft = nfft(ls, ll);
+		int block = nfft-ls+1;
+		int nblocks = (ll+block-1)/block;
+		return direct>fftCost(nfft)*(nblocks+1);
+	}
+	/**
+	 * 一次实数变换、频谱相乘和反变换的计算量估计
+	 * @param nfft 变换长度
+	 * @return 计算量
+	 */
+	private static double fftCost(int nfft) {
+		return FFT_COST*nfft*(Math.log(nfft)/Math.log(2.0)+1.0);
+	}
+	/**
+	 * 选择重叠相加的变换长度
+	 * @param ls 滤波器的长度
+	 * @param ll 长序列的长度
+	 * @return 变换长度
+	 */
+	private static int nfft(int ls, int ll) {
+		int full  = FftPlan.fastLength(ls+ll-1);
+		int block = FftPlan.fastLength(Math.max(BLOCK_FACTOR*ls, MIN_NFFT));
+		return Math.min(full, block);
+	}
+	/**
+	 * 每个并行任务处理的道数
+	 * @param cost 每道的计算量
+	 * @return 道数
+	 */
+	private static int grain(double cost) {
+		return (int) Math.max(1.0, (1<<18)/Math.max(cost,1.0));
+	}
+	/**
+	 * 反转数组
+	 * @param n 长度
+	 * @param x 输入数组
+	 * @return 反转后的数组
+	 */
+	private static float[] reverse(int n, float[] x) {
+		float[] r = new float[n];
+		for(int i=0;i<n;i++)
+			r[i] = x[n-1-i];
+		return r;
+	}
+	/**
+	 * 返回当前线程的工作数组
+	 * @param size 需要的最小长度
+	 * @return 工作数组
+	 */
+	private static float[] buffer(int size) {
+		float[] b = BUFFER.get();
+		if(b.length<size) {
+			b = new float[size];
+			BUFFER.set(b);
+		}
+		return b;
+	}
+	/**
+	 * 频谱已经计算好的滤波器，计算卷积时对长序列分块做重叠相加
+	 */
+	private static final class Kernel {
+		/**
+		 * 滤波器的长度
+		 */
+		private final int lh;
+		/**
+		 * 滤波器第一个样点的序号
+		 */
+		private final int kh;
+		/**
+		 * 变换长度
+		 */
+		private final int nfft;
+		/**
+		 * 每块长序列的样点数
+		 */
+		private final int block;
+		/**
+		 * 实数变换计划
+		 */
+		private final RealFftPlan plan;
+		/**
+		 * 滤波器的频谱，交错存放
+		 */
+		private final float[] h;
+		/**
+		 * 构造函数
+		 * @param lh 滤波器的长度
+		 * @param kh 滤波器第一个样点的序号
+		 * @param x 滤波器
+		 * @param ll 要滤波的序列的长度
+		 */
+		Kernel(int lh, int kh, float[] x, int ll) {
+			this.lh    = lh;
+			this.kh    = kh;
+			this.nfft  = nfft(lh, ll);
+			this.block = nfft-lh+1;
+			this.plan  = RealFftPlan.get(nfft);
+			float[] t = new float[nfft];
+			System.arraycopy(x, 0, t, 0, lh);
+			this.h = new float[2*plan.getSpectrumLength()];
+			plan.forward(t, 0, h, 0);
+		}
+		/**
+		 * 一道的计算量估计
+		 * @param ls 序列的长度
+		 * @return 计算量
+		 */
+		double cost(int ls) {
+			return fftCost(nfft)*((ls+block-1)/block);
+		}
+		/**
+		 * 滤波 z[i] = sum h[j]*s[i-j]
+		 * @param ls 序列的长度
+		 * @param ks 序列第一个样点的序号
+		 * @param s 序列
+		 * @param lz 输出的长度
+		 * @param kz 输出第一个样点的序号
+		 * @param z 输出数组
+		 */
+		void apply(int ls, int ks, float[] s, int lz, int kz, float[] z) {
+			int nc = 2*plan.getSpectrumLength();
+			float[] b = buffer(nfft+nc);
+			for(int i=0;i<lz;i++)
+				z[i] = 0.0f;
+			for(int b0=0;b0<ls;b0+=block) {
+				int nb = Math.min(block, ls-b0);
+				// 这一块的结果从序号kh+ks+b0开始，共nb+lh-1个样点，与z没有重叠时跳过
+				int i0 = kh+ks+b0-kz;
+				int i1 = i0+nb+lh-1;
+				if(i1<=0 || i0>=lz)
+					continue;
+				System.arraycopy(s, b0, b, 0, nb);
+				for(int i=nb;i<nfft;i++)
+					b[i] = 0.0f;
+				plan.forward(b, 0, b, nfft);
+				for(int k=nfft,j=0;j<nc;k+=2,j+=2) {
+					float br = b[k];
+					float bi = b[k+1];
+					b[k]   = br*h[j]-bi*h[j+1];
+					b[k+1] = br*h[j+1]+bi*h[j];
+				}
+				plan.inverse(b, nfft, b, 0);
+				int m0 = Math.max(0, -i0);
+				int m1 = Math.min(i1, lz)-i0;
+				for(int m=m0;m<m1;m++)
+					z[i0+m] += b[m];
+			}
+		}
+	}
+	/**
+	 * 私有构造器
+	 */
+	private FftConvolution() {
+
+	}
+}
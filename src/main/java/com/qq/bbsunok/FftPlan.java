@@ -0,0 +1,843 @@
+package com.qq.bbsunok;
+import java.nio.FloatBuffer;
+import java.util.concurrent.ConcurrentHashMap;
+import com.qq.bbsunok.FastFourierTransform.Type;
+/**
+ * 快速傅里叶变换计划。
+ * <p>
+ * 按变换长度和变换类型预先计算旋转因子表，
+ * 重复计算相同长度的变换时不再调用三角函数。
+ * 计划对象创建后不再修改，可被多个线程共享；通过{@link #get(int, Type)}得到的计划会被缓存。
+ * <p>
+ * 变换长度可以为任意正整数：
+ * 只含因子2,3,5,7,11,13的长度（包括2的整数幂）采用混合基Stockham自动排序算法，
+ * 2的整数幂长度以基4级为主，不需要Bitreverse排序，扫过数据的次数比基2算法少一半；
+ * 其余长度（如大素数）采用Bluestein线性调频Z变换，转化为2的整数幂长度的卷积。
+ * 当Java Vector API可用时（见{@link VectorSupport}），不小于{@value #SIMD_LENGTH}的2的整数幂长度、
+ * 实部和虚部分开连续存放的数据改用{@link VectorFftKernel}原位计算。
+ * 按实测，交错存放的数据上Bitreverse排序的SIMD原位算法并不比Stockham算法快（长度1024以下更慢），
+ * 只有分开存放的数据省去了与交错工作数组之间的复制，长度512以上快1.1至1.9倍。
+ * @author bbsun
+ *
+ */
+public final class FftPlan {
+	/**
+	 * 计划缓存，键由长度和变换类型组成
+	 */
+	private static final ConcurrentHashMap<Long, FftPlan> CACHE = new ConcurrentHashMap<>();
+	/**
+	 * 每个线程的工作数组，用于非连续数据的变换
+	 */
+	private static final ThreadLocal<float[]> WORKSPACE = ThreadLocal.withInitial(() -> new float[0]);
+	/**
+	 * 混合基算法支持的素因子
+	 */
+	private static final int[] PRIMES = {3,5,7,11,13};
+	/**
+	 * 分开存放的数据使用SIMD原位算法的最小长度
+	 */
+	private static final int SIMD_LENGTH = 512;
+	/**
+	 * 算法类别
+	 */
+	private enum Kind{
+		/**
+		 * 混合基Stockham算法
+		 */
+		MIXED_RADIX,
+		/**
+		 * Bluestein算法
+		 */
+		BLUESTEIN
+	}
+	/**
+	 * 变换长度
+	 */
+	private final int n;
+	/**
+	 * 变换类型
+	 */
+	private final Type type;
+	/**
+	 * 相位旋转的符号
+	 */
+	private final float sign;
+	/**
+	 * 归一化系数
+	 */
+	private final float scale;
+	/**
+	 * 算法类别
+	 */
+	private final Kind kind;
+	/**
+	 * 除数据之外变换需要的工作数组长度
+	 */
+	private final int work;
+	/**
+	 * 按蝶形级连续存放的旋转因子实部，半长为xn的一级从下标xn-1开始
+	 */
+	private float[] wr;
+	/**
+	 * 按蝶形级连续存放的旋转因子虚部
+	 */
+	private float[] wi;
+	/**
+	 * Bitreverse排列，不使用SIMD原位算法时为null
+	 */
+	private int[] rev;
+	/**
+	 * 混合基算法每一级的基
+	 */
+	private int[] radix;
+	/**
+	 * 混合基算法交错存放的旋转因子
+	 */
+	private float[] tw;
+	/**
+	 * 混合基算法每一级旋转因子的起始下标
+	 */
+	private int[] twOffset;
+	/**
+	 * 奇素数基蝶形的余弦系数，按基的大小索引
+	 */
+	private float[][] oddCos;
+	/**
+	 * 奇素数基蝶形的（带符号）正弦系数，按基的大小索引
+	 */
+	private float[][] oddSin;
+	/**
+	 * Bluestein算法的卷积长度
+	 */
+	private int m;
+	/**
+	 * Bluestein算法交错存放的线性调频信号
+	 */
+	private float[] chirp;
+	/**
+	 * Bluestein算法交错存放的卷积核频谱
+	 */
+	private float[] kernel;
+	/**
+	 * Bluestein算法卷积使用的正变换
+	 */
+	private FftPlan convForward;
+	/**
+	 * Bluestein算法卷积使用的反变换
+	 */
+	private FftPlan convBackward;
+	/**
+	 * 得到（缓存的）快速傅里叶变换计划
+	 * @param n 变换长度
+	 * @param type 变换类型
+	 * @return 变换计划
+	 */
+	public static FftPlan get(int n, Type type) {
+		long key = ((long) n << 1) | type.ordinal();
+		FftPlan plan = CACHE.get(key);
+		if(plan==null) {
+			// Bluestein计划在构造时会取得其它长度的计划，因此不能在computeIfAbsent中构造
+			plan = new FftPlan(n, type);
+			FftPlan old = CACHE.putIfAbsent(key, plan);
+			if(old!=null)
+				plan = old;
+		}
+		return plan;
+	}
+	/**
+	 * 返回不小于n且只含因子2、3、5的最小长度，补零到该长度后变换最快
+	 * @param n 需要的最小长度
+	 * @return 变换长度
+	 */
+	public static int fastLength(int n) {
+		for(int m=Math.max(n,1);;m++) {
+			int k = m;
+			while(k%2==0)
+				k /= 2;
+			while(k%3==0)
+				k /= 3;
+			while(k%5==0)
+				k /= 5;
+			if(k==1)
+				return m;
+		}
+	}
+	/**
+	 * 构造函数
+	 * @param n 变换长度
+	 * @param type 变换类型
+	 */
+	private FftPlan(int n, Type type) {
+		if(n<1)
+			throw new ArithmeticException("数组的长度必须为正整数");
+		this.n     = n;
+		this.type  = type;
+		this.sign  = type==Type.FORWARD?-1.0f:1.0f;
+		this.scale = type==Type.FORWARD?1.0f:1.0f/n;
+		int[] factors = factorize(n);
+		if(factors!=null) {
+			kind = Kind.MIXED_RADIX;
+			int rmax = 0;
+			for(int r: factors)
+				rmax = Math.max(rmax, r);
+			work = 2*n+2*rmax;
+			initMixedRadix(factors);
+			// 分开存放的数据另外准备SIMD原位算法
+			if(VectorSupport.ENABLED && Integer.bitCount(n)==1 && n>=Math.max(SIMD_LENGTH, 4*VectorFftKernel.length()))
+				initRadix2();
+		} else {
+			kind = Kind.BLUESTEIN;
+			m = Integer.highestOneBit(2*n-1);
+			if(m<2*n-1)
+				m <<= 1;
+			initBluestein();
+			work = 2*m+convForward.getWorkLength();
+		}
+	}
+	/**
+	 * 分解混合基算法的因子
+	 * @param n 变换长度
+	 * @return 每一级的基，若含有不支持的素因子则返回null
+	 */
+	private static int[] factorize(int n) {
+		int[] f = new int[32];
+		int nf  = 0;
+		while(n%4==0) {
+			f[nf++] = 4;
+			n /= 4;
+		}
+		while(n%2==0) {
+			f[nf++] = 2;
+			n /= 2;
+		}
+		for(int p: PRIMES) {
+			while(n%p==0) {
+				f[nf++] = p;
+				n /= p;
+			}
+		}
+		if(n!=1)
+			return null;
+		int[] r = new int[nf];
+		System.arraycopy(f, 0, r, 0, nf);
+		return r;
+	}
+	/**
+	 * 计算SIMD原位算法的旋转因子和Bitreverse排列
+	 */
+	private void initRadix2() {
+		wr = new float[Math.max(n-1,1)];
+		wi = new float[Math.max(n-1,1)];
+		for(int xn=1;xn<n;xn<<=1) {
+			double dp = Math.PI/xn*sign;
+			for(int k=0;k<xn;k++) {
+				wr[xn-1+k] = (float) Math.cos(k*dp);
+				wi[xn-1+k] = (float) Math.sin(k*dp);
+			}
+		}
+		rev = new int[n];
+		int shift = 1 + Integer.numberOfLeadingZeros(n);
+		for(int k=0;k<n && n>1;k++)
+			rev[k] = Integer.reverse(k) >>> shift;
+	}
+	/**
+	 * 计算混合基算法每一级的旋转因子
+	 * @param factors 每一级的基
+	 */
+	private void initMixedRadix(int[] factors) {
+		radix    = factors;
+		twOffset = new int[factors.length];
+		int size = 0;
+		int ns   = 1;
+		for(int s=0;s<factors.length;s++) {
+			twOffset[s] = size;
+			size += 2*ns*(factors[s]-1);
+			ns   *= factors[s];
+		}
+		tw = new float[size];
+		oddCos = new float[14][];
+		oddSin = new float[14][];
+		ns = 1;
+		for(int s=0;s<factors.length;s++) {
+			int r = factors[s];
+			int l = ns*r;
+			for(int k=0;k<ns;k++) {
+				for(int q=1;q<r;q++) {
+					int i = twOffset[s]+2*(k*(r-1)+q-1);
+					double a = sign*2.0*Math.PI*((long) q*k%l)/l;
+					tw[i]   = (float) Math.cos(a);
+					tw[i+1] = (float) Math.sin(a);
+				}
+			}
+			if(r>4 && oddCos[r]==null) {
+				oddCos[r] = new float[r];
+				oddSin[r] = new float[r];
+				for(int p=0;p<r;p++) {
+					oddCos[r][p] = (float) Math.cos(2.0*Math.PI*p/r);
+					oddSin[r][p] = (float) (sign*Math.sin(2.0*Math.PI*p/r));
+				}
+			}
+			ns = l;
+		}
+	}
+	/**
+	 * 计算Bluestein算法的线性调频信号和卷积核频谱
+	 */
+	private void initBluestein() {
+		chirp = new float[2*n];
+		for(int k=0;k<n;k++) {
+			double a = sign*Math.PI*((long) k*k%(2L*n))/n;
+			chirp[2*k]   = (float) Math.cos(a);
+			chirp[2*k+1] = (float) Math.sin(a);
+		}
+		convForward  = get(m, Type.FORWARD);
+		convBackward = get(m, Type.BACKWARD);
+		kernel = new float[2*m];
+		kernel[0] = chirp[0];
+		kernel[1] = -chirp[1];
+		for(int k=1;k<n;k++) {
+			kernel[2*k]       =  chirp[2*k];
+			kernel[2*k+1]     = -chirp[2*k+1];
+			kernel[2*(m-k)]   =  chirp[2*k];
+			kernel[2*(m-k)+1] = -chirp[2*k+1];
+		}
+		int wl = convForward.getWorkLength();
+		convForward.transform(kernel, 0, wl>0?new float[wl]:null, 0);
+	}
+	/**
+	 * 返回变换长度
+	 * @return 变换长度
+	 */
+	public int getLength() {
+		return n;
+	}
+	/**
+	 * 返回变换类型
+	 * @return 变换类型
+	 */
+	public Type getType() {
+		return type;
+	}
+	/**
+	 * 对复数数组进行原位变换
+	 * <p>
+	 * 数据先复制到当前线程的交错工作数组中，在连续内存上完成蝶形运算后再复制回去。
+	 * @param a 输入(输出）数组，第二维为2，代表实部和虚部
+	 */
+	public void execute(float[][] a) {
+		if(a.length!=n)
+			throw new ArithmeticException("数组的长度与变换计划的长度不一致");
+		float[] c = workspace(2*n+work);
+		for(int k=0;k<n;k++) {
+			c[2*k]   = a[k][0];
+			c[2*k+1] = a[k][1];
+		}
+		transform(c, 0, c, 2*n);
+		for(int k=0;k<n;k++) {
+			a[k][0] = c[2*k];
+			a[k][1] = c[2*k+1];
+		}
+	}
+	/**
+	 * 对交错存放（实部，虚部，实部，虚部...）的复数数组进行原位变换
+	 * @param c 输入(输出）数组
+	 * @param offset 第一个样点实部的下标
+	 * @param stride 相邻复数样点的间隔（以复数为单位）
+	 */
+	public void execute(float[] c, int offset, int stride) {
+		checkRange(c.length, offset, 2*stride, 2);
+		if(stride==1) {
+			transform(c, offset, work>0?workspace(work):null, 0);
+			return;
+		}
+		float[] w = workspace(2*n+work);
+		for(int k=0,j=offset;k<n;k++,j+=2*stride) {
+			w[2*k]   = c[j];
+			w[2*k+1] = c[j+1];
+		}
+		transform(w, 0, w, 2*n);
+		for(int k=0,j=offset;k<n;k++,j+=2*stride) {
+			c[j]   = w[2*k];
+			c[j+1] = w[2*k+1];
+		}
+	}
+	/**
+	 * 对缓冲区（例如内存映射文件）中交错存放的复数进行原位变换
+	 * <p>
+	 * 可写的堆缓冲区直接在其底层数组上变换。
+	 * 直接缓冲区和内存映射文件不能作为数组访问，而蝶形运算只在数组上实现，
+	 * 因此数据整块读入当前线程的工作数组，变换后整块写回：不分配新的数组，但比数组多两次顺序复制。
+	 * @param c 输入(输出）缓冲区
+	 * @param offset 第一个样点实部的下标
+	 */
+	public void execute(FloatBuffer c, int offset) {
+		checkRange(c.limit(), offset, 2, 2);
+		if(c.hasArray()) {
+			execute(c.array(), c.arrayOffset()+offset, 1);
+			return;
+		}
+		float[] w = workspace(2*n+work);
+		c.get(offset, w, 0, 2*n);
+		transform(w, 0, w, 2*n);
+		c.put(offset, w, 0, 2*n);
+	}
+	/**
+	 * 对实部和虚部分开存放的复数数组进行原位变换
+	 * @param re 实部数组
+	 * @param reOffset 第一个样点在实部数组中的下标
+	 * @param im 虚部数组
+	 * @param imOffset 第一个样点在虚部数组中的下标
+	 * @param stride 相邻样点的间隔
+	 */
+	public void execute(float[] re, int reOffset, float[] im, int imOffset, int stride) {
+		checkRange(re.length, reOffset, stride, 1);
+		checkRange(im.length, imOffset, stride, 1);
+		if(stride==1 && rev!=null) {
+			radix2Split(re, reOffset, im, imOffset);
+			return;
+		}
+		float[] w = workspace(2*n+work);
+		for(int k=0,i=reOffset,j=imOffset;k<n;k++,i+=stride,j+=stride) {
+			w[2*k]   = re[i];
+			w[2*k+1] = im[j];
+		}
+		transform(w, 0, w, 2*n);
+		for(int k=0,i=reOffset,j=imOffset;k<n;k++,i+=stride,j+=stride) {
+			re[i] = w[2*k];
+			im[j] = w[2*k+1];
+		}
+	}
+	/**
+	 * 返回除数据之外变换需要的工作数组长度
+	 * @return 工作数组长度
+	 */
+	int getWorkLength() {
+		return work;
+	}
+	/**
+	 * 连续交错存放数据的原位变换
+	 * @param c 输入(输出）数组
+	 * @param off 第一个样点实部的下标
+	 * @param w 工作数组，长度至少为{@link #getWorkLength()}，为0时可为null
+	 * @param woff 工作数组的起始下标
+	 */
+	void transform(float[] c, int off, float[] w, int woff) {
+		switch(kind) {
+			case MIXED_RADIX:
+				stockham(c, off, w, woff);
+				break;
+			case BLUESTEIN:
+				bluestein(c, off, w, woff);
+				break;
+		}
+	}
+	/**
+	 * 连续分开存放数据的SIMD原位算法
+	 * @param re 实部数组
+	 * @param ro 第一个样点在实部数组中的下标
+	 * @param im 虚部数组
+	 * @param io 第一个样点在虚部数组中的下标
+	 */
+	private void radix2Split(float[] re, int ro, float[] im, int io) {
+		// 重新排列数据
+		for(int k=0;k<n;k++) {
+			int j = rev[k];
+			if(j>k) {
+				float tr = re[ro+j];
+				float ti = im[io+j];
+				re[ro+j] = re[ro+k];
+				im[io+j] = im[io+k];
+				re[ro+k] = tr;
+				im[io+k] = ti;
+			}
+		}
+		VectorFftKernel.butterflies(re, ro, im, io, n, wr, wi);
+		//归一化，使得正变换接反变换得到原数组
+		if(scale!=1.0f) {
+			for(int i=0;i<n;i++) {
+				re[ro+i] *= scale;
+				im[io+i] *= scale;
+			}
+		}
+	}
+	/**
+	 * 混合基Stockham自动排序算法，每一级在数据和工作数组之间交替读写，结果为自然顺序，不需要Bitreverse排序
+	 * @param c 输入(输出）数组
+	 * @param off 第一个样点实部的下标
+	 * @param w 工作数组，长度至少为2n+2*最大基
+	 * @param woff 工作数组的起始下标
+	 */
+	private void stockham(float[] c, int off, float[] w, int woff) {
+		float[] src = c;
+		int     so  = off;
+		float[] dst = w;
+		int     dso = woff;
+		int     tmp = woff+2*n;
+		int     ns  = 1;
+		for(int s=0;s<radix.length;s++) {
+			int r = radix[s];
+			switch(r) {
+				case 2:
+					pass2(ns, src, so, dst, dso, twOffset[s]);
+					break;
+				case 3:
+					pass3(ns, src, so, dst, dso, twOffset[s]);
+					break;
+				case 4:
+					pass4(ns, src, so, dst, dso, twOffset[s]);
+					break;
+				case 5:
+					pass5(ns, src, so, dst, dso, twOffset[s]);
+					break;
+				default:
+					passOdd(r, ns, src, so, dst, dso, twOffset[s], w, tmp);
+					break;
+			}
+			float[] t = src;
+			src = dst;
+			dst = t;
+			int to = so;
+			so  = dso;
+			dso = to;
+			ns *= r;
+		}
+		if(src!=c || so!=off)
+			System.arraycopy(src, so, c, off, 2*n);
+		scale(c, off);
+	}
+	/**
+	 * Stockham基2蝶形级
+	 * @param ns 已完成变换的子序列长度
+	 * @param x 输入数组
+	 * @param xo 输入数组起始下标
+	 * @param y 输出数组
+	 * @param yo 输出数组起始下标
+	 * @param t 旋转因子起始下标
+	 */
+	private void pass2(int ns, float[] x, int xo, float[] y, int yo, int t) {
+		int h = 2*(n/2);
+		for(int b=0,j=0;j<n/2;b++) {
+			int d = yo+2*b*ns*2;
+			for(int k=0;k<ns;k++,j++,d+=2) {
+				int i   = xo+2*j;
+				float wr1 = tw[t+2*k];
+				float wi1 = tw[t+2*k+1];
+				float ar = x[i];
+				float ai = x[i+1];
+				float br = x[i+h]*wr1-x[i+h+1]*wi1;
+				float bi = x[i+h]*wi1+x[i+h+1]*wr1;
+				y[d]        = ar+br;
+				y[d+1]      = ai+bi;
+				y[d+2*ns]   = ar-br;
+				y[d+2*ns+1] = ai-bi;
+			}
+		}
+	}
+	/**
+	 * Stockham基3蝶形级
+	 * @param ns 已完成变换的子序列长度
+	 * @param x 输入数组
+	 * @param xo 输入数组起始下标
+	 * @param y 输出数组
+	 * @param yo 输出数组起始下标
+	 * @param t 旋转因子起始下标
+	 */
+	private void pass3(int ns, float[] x, int xo, float[] y, int yo, int t) {
+		final float s3 = (float) (sign*Math.sqrt(3.0)/2.0);
+		int h = 2*(n/3);
+		int o = 2*ns;
+		for(int b=0,j=0;j<n/3;b++) {
+			int d = yo+2*b*ns*3;
+			for(int k=0;k<ns;k++,j++,d+=2) {
+				int i  = xo+2*j;
+				int ti = t+4*k;
+				float v0r = x[i];
+				float v0i = x[i+1];
+				float v1r = x[i+h]*tw[ti]-x[i+h+1]*tw[ti+1];
+				float v1i = x[i+h]*tw[ti+1]+x[i+h+1]*tw[ti];
+				float v2r = x[i+2*h]*tw[ti+2]-x[i+2*h+1]*tw[ti+3];
+				float v2i = x[i+2*h]*tw[ti+3]+x[i+2*h+1]*tw[ti+2];
+				float ar = v1r+v2r;
+				float ai = v1i+v2i;
+				float br = v0r-0.5f*ar;
+				float bi = v0i-0.5f*ai;
+				float cr = s3*(v1r-v2r);
+				float ci = s3*(v1i-v2i);
+				y[d]       = v0r+ar;
+				y[d+1]     = v0i+ai;
+				y[d+o]     = br-ci;
+				y[d+o+1]   = bi+cr;
+				y[d+2*o]   = br+ci;
+				y[d+2*o+1] = bi-cr;
+			}
+		}
+	}
+	/**
+	 * Stockham基4蝶形级
+	 * @param ns 已完成变换的子序列长度
+	 * @param x 输入数组
+	 * @param xo 输入数组起始下标
+	 * @param y 输出数组
+	 * @param yo 输出数组起始下标
+	 * @param t 旋转因子起始下标
+	 */
+	private void pass4(int ns, float[] x, int xo, float[] y, int yo, int t) {
+		int h = 2*(n/4);
+		int o = 2*ns;
+		if(ns==1) {
+			// 第一级的旋转因子全为1
+			for(int j=0,i=xo,d=yo;j<n/4;j++,i+=2,d+=8) {
+				float a0r = x[i]+x[i+2*h];
+				float a0i = x[i+1]+x[i+2*h+1];
+				float a1r = x[i]-x[i+2*h];
+				float a1i = x[i+1]-x[i+2*h+1];
+				float b0r = x[i+h]+x[i+3*h];
+				float b0i = x[i+h+1]+x[i+3*h+1];
+				float b1r = -sign*(x[i+h+1]-x[i+3*h+1]);
+				float b1i =  sign*(x[i+h]-x[i+3*h]);
+				y[d]   = a0r+b0r;
+				y[d+1] = a0i+b0i;
+				y[d+2] = a1r+b1r;
+				y[d+3] = a1i+b1i;
+				y[d+4] = a0r-b0r;
+				y[d+5] = a0i-b0i;
+				y[d+6] = a1r-b1r;
+				y[d+7] = a1i-b1i;
+			}
+			return;
+		}
+		for(int b=0,j=0;j<n/4;b++) {
+			int d = yo+2*b*ns*4;
+			for(int k=0;k<ns;k++,j++,d+=2) {
+				int i  = xo+2*j;
+				int ti = t+6*k;
+				float v0r = x[i];
+				float v0i = x[i+1];
+				float v1r = x[i+h]*tw[ti]-x[i+h+1]*tw[ti+1];
+				float v1i = x[i+h]*tw[ti+1]+x[i+h+1]*tw[ti];
+				float v2r = x[i+2*h]*tw[ti+2]-x[i+2*h+1]*tw[ti+3];
+				float v2i = x[i+2*h]*tw[ti+3]+x[i+2*h+1]*tw[ti+2];
+				float v3r = x[i+3*h]*tw[ti+4]-x[i+3*h+1]*tw[ti+5];
+				float v3i = x[i+3*h]*tw[ti+5]+x[i+3*h+1]*tw[ti+4];
+				float a0r = v0r+v2r;
+				float a0i = v0i+v2i;
+				float a1r = v0r-v2r;
+				float a1i = v0i-v2i;
+				float b0r = v1r+v3r;
+				float b0i = v1i+v3i;
+				// (v1-v3)乘以sign*i
+				float b1r = -sign*(v1i-v3i);
+				float b1i =  sign*(v1r-v3r);
+				y[d]       = a0r+b0r;
+				y[d+1]     = a0i+b0i;
+				y[d+o]     = a1r+b1r;
+				y[d+o+1]   = a1i+b1i;
+				y[d+2*o]   = a0r-b0r;
+				y[d+2*o+1] = a0i-b0i;
+				y[d+3*o]   = a1r-b1r;
+				y[d+3*o+1] = a1i-b1i;
+			}
+		}
+	}
+	/**
+	 * Stockham基5蝶形级
+	 * @param ns 已完成变换的子序列长度
+	 * @param x 输入数组
+	 * @param xo 输入数组起始下标
+	 * @param y 输出数组
+	 * @param yo 输出数组起始下标
+	 * @param t 旋转因子起始下标
+	 */
+	private void pass5(int ns, float[] x, int xo, float[] y, int yo, int t) {
+		final float c1 = oddCos[5][1];
+		final float c2 = oddCos[5][2];
+		final float s1 = oddSin[5][1];
+		final float s2 = oddSin[5][2];
+		int h = 2*(n/5);
+		int o = 2*ns;
+		for(int b=0,j=0;j<n/5;b++) {
+			int d = yo+2*b*ns*5;
+			for(int k=0;k<ns;k++,j++,d+=2) {
+				int i  = xo+2*j;
+				int ti = t+8*k;
+				float v0r = x[i];
+				float v0i = x[i+1];
+				float v1r = x[i+h]*tw[ti]-x[i+h+1]*tw[ti+1];
+				float v1i = x[i+h]*tw[ti+1]+x[i+h+1]*tw[ti];
+				float v2r = x[i+2*h]*tw[ti+2]-x[i+2*h+1]*tw[ti+3];
+				float v2i = x[i+2*h]*tw[ti+3]+x[i+2*h+1]*tw[ti+2];
+				float v3r = x[i+3*h]*tw[ti+4]-x[i+3*h+1]*tw[ti+5];
+				float v3i = x[i+3*h]*tw[ti+5]+x[i+3*h+1]*tw[ti+4];
+				float v4r = x[i+4*h]*tw[ti+6]-x[i+4*h+1]*tw[ti+7];
+				float v4i = x[i+4*h]*tw[ti+7]+x[i+4*h+1]*tw[ti+6];
+				float a1r = v1r+v4r;
+				float a1i = v1i+v4i;
+				float b1r = v1r-v4r;
+				float b1i = v1i-v4i;
+				float a2r = v2r+v3r;
+				float a2i = v2i+v3i;
+				float b2r = v2r-v3r;
+				float b2i = v2i-v3i;
+				float p1r = v0r+c1*a1r+c2*a2r;
+				float p1i = v0i+c1*a1i+c2*a2i;
+				float q1r = s1*b1r+s2*b2r;
+				float q1i = s1*b1i+s2*b2i;
+				float p2r = v0r+c2*a1r+c1*a2r;
+				float p2i = v0i+c2*a1i+c1*a2i;
+				float q2r = s2*b1r-s1*b2r;
+				float q2i = s2*b1i-s1*b2i;
+				y[d]       = v0r+a1r+a2r;
+				y[d+1]     = v0i+a1i+a2i;
+				y[d+o]     = p1r-q1i;
+				y[d+o+1]   = p1i+q1r;
+				y[d+2*o]   = p2r-q2i;
+				y[d+2*o+1] = p2i+q2r;
+				y[d+3*o]   = p2r+q2i;
+				y[d+3*o+1] = p2i-q2r;
+				y[d+4*o]   = p1r+q1i;
+				y[d+4*o+1] = p1i-q1r;
+			}
+		}
+	}
+	/**
+	 * Stockham奇素数基蝶形级（用于7,11,13），利用共轭对称将乘法次数减半
+	 * @param r 基
+	 * @param ns 已完成变换的子序列长度
+	 * @param x 输入数组
+	 * @param xo 输入数组起始下标
+	 * @param y 输出数组
+	 * @param yo 输出数组起始下标
+	 * @param t 旋转因子起始下标
+	 * @param v 临时数组，保存对称和与差
+	 * @param vo 临时数组起始下标
+	 */
+	private void passOdd(int r, int ns, float[] x, int xo, float[] y, int yo, int t, float[] v, int vo) {
+		final float[] cs = oddCos[r];
+		final float[] sn = oddSin[r];
+		int h  = 2*(n/r);
+		int o  = 2*ns;
+		int hr = r/2;
+		for(int b=0,j=0;j<n/r;b++) {
+			int d = yo+2*b*ns*r;
+			for(int k=0;k<ns;k++,j++,d+=2) {
+				int i  = xo+2*j;
+				int ti = t+2*(r-1)*k;
+				float v0r = x[i];
+				float v0i = x[i+1];
+				float sr  = v0r;
+				float si  = v0i;
+				for(int q=1;q<=hr;q++) {
+					int i1 = i+q*h;
+					int i2 = i+(r-q)*h;
+					int t1 = ti+2*(q-1);
+					int t2 = ti+2*(r-q-1);
+					float ur = x[i1]*tw[t1]-x[i1+1]*tw[t1+1];
+					float ui = x[i1]*tw[t1+1]+x[i1+1]*tw[t1];
+					float wr2 = x[i2]*tw[t2]-x[i2+1]*tw[t2+1];
+					float wi2 = x[i2]*tw[t2+1]+x[i2+1]*tw[t2];
+					int a = vo+4*(q-1);
+					v[a]   = ur+wr2;
+					v[a+1] = ui+wi2;
+					v[a+2] = ur-wr2;
+					v[a+3] = ui-wi2;
+					sr += v[a];
+					si += v[a+1];
+				}
+				y[d]   = sr;
+				y[d+1] = si;
+				for(int q=1;q<=hr;q++) {
+					float pr = v0r;
+					float pi = v0i;
+					float qr = 0.0f;
+					float qi = 0.0f;
+					for(int p=1;p<=hr;p++) {
+						int e = p*q%r;
+						int a = vo+4*(p-1);
+						pr += cs[e]*v[a];
+						pi += cs[e]*v[a+1];
+						qr += sn[e]*v[a+2];
+						qi += sn[e]*v[a+3];
+					}
+					y[d+q*o]       = pr-qi;
+					y[d+q*o+1]     = pi+qr;
+					y[d+(r-q)*o]   = pr+qi;
+					y[d+(r-q)*o+1] = pi-qr;
+				}
+			}
+		}
+	}
+	/**
+	 * Bluestein线性调频Z变换，将任意长度的变换转化为2的整数幂长度的循环卷积
+	 * @param c 输入(输出）数组
+	 * @param off 第一个样点实部的下标
+	 * @param w 工作数组，长度至少为2m
+	 * @param woff 工作数组的起始下标
+	 */
+	private void bluestein(float[] c, int off, float[] w, int woff) {
+		for(int k=0;k<n;k++) {
+			int i = off+2*k;
+			float xr = c[i];
+			float xi = c[i+1];
+			float pr = chirp[2*k];
+			float pi = chirp[2*k+1];
+			w[woff+2*k]   = xr*pr-xi*pi;
+			w[woff+2*k+1] = xr*pi+xi*pr;
+		}
+		java.util.Arrays.fill(w, woff+2*n, woff+2*m, 0.0f);
+		convForward.transform(w, woff, w, woff+2*m);
+		for(int k=0;k<m;k++) {
+			int i = woff+2*k;
+			float xr = w[i];
+			float xi = w[i+1];
+			float pr = kernel[2*k];
+			float pi = kernel[2*k+1];
+			w[i]   = xr*pr-xi*pi;
+			w[i+1] = xr*pi+xi*pr;
+		}
+		convBackward.transform(w, woff, w, woff+2*m);
+		for(int k=0;k<n;k++) {
+			int i = woff+2*k;
+			float xr = w[i];
+			float xi = w[i+1];
+			float pr = chirp[2*k]*scale;
+			float pi = chirp[2*k+1]*scale;
+			c[off+2*k]   = xr*pr-xi*pi;
+			c[off+2*k+1] = xr*pi+xi*pr;
+		}
+	}
+	/**
+	 * 归一化，使得正变换接反变换得到原数组
+	 * @param c 输入(输出）数组
+	 * @param off 第一个样点实部的下标
+	 */
+	private void scale(float[] c, int off) {
+		if(scale!=1.0f) {
+			for(int i=off;i<off+2*n;i++)
+				c[i] *= scale;
+		}
+	}
+	/**
+	 * 检查数组下标范围
+	 * @param length 数组长度
+	 * @param offset 第一个样点的下标
+	 * @param step 相邻样点的间隔（以单精度数为单位）
+	 * @param width 每个样点占用的单精度数个数
+	 */
+	private void checkRange(int length, int offset, int step, int width) {
+		if(step<1 || offset<0 || offset+(long)(n-1)*step+width>length)
+			throw new ArithmeticException("数组的长度、偏移或间隔与变换计划的长度不一致");
+	}
+	/**
+	 * 返回当前线程的工作数组
+	 * @param size 需要的最小长度
+	 * @return 工作数组
+	 */
+	static float[] workspace(int size) {
+		float[] w = WORKSPACE.get();
+		if(w.length<size) {
+			w = new float[size];
+			WORKSPACE.set(w);
+		}
+		return w;
+	}
+}
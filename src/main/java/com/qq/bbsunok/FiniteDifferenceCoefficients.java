@@ -0,0 +1,297 @@
+package com.qq.bbsunok;
+import java.util.concurrent.ConcurrentHashMap;
+/**
+ * 有限差分系数。
+ * <p>
+ * 二阶导数的中心差分近似为 f''(x) ≈ (c[0]*f(x) + sum c[k]*(f(x+k*h)+f(x-k*h)))/h^2，k=1...order/2；
+ * 交错网格一阶导数的近似见{@link #staggered(int)}。除泰勒展开系数外，还可以按最高频率和速度范围
+ * 求频散优化的系数（{@link #optimized(int, float, float, float, float, float)}）。
+ * @author bbsun
+ *
+ */
+public final class FiniteDifferenceCoefficients {
+	/**
+	 * 二阶导数的泰勒展开系数
+	 * @param order 空间有限差分阶数，(2,4,6,8,10)
+	 * @return 系数c[0...order/2]
+	 */
+	public static float[] taylor(int order) {
+		int m = halfOrder(order);
+		double[] c = new double[m+1];
+		for(int k=1;k<=m;k++) {
+			// c[k] = 2*(-1)^(k+1)*(m!)^2/(k^2*(m-k)!*(m+k)!)
+			double r = 2.0/((double) k*k);
+			for(int j=1;j<=k;j++)
+				r *= (double) (m-k+j)/(m+j);
+			c[k] = (k%2==1)?r:-r;
+			c[0] -= 2.0*c[k];
+		}
+		float[] f = new float[m+1];
+		for(int k=0;k<=m;k++)
+			f[k] = (float) c[k];
+		return f;
+	}
+	/**
+	 * 交错网格一阶导数的泰勒展开系数
+	 * <p>
+	 * 一阶导数的近似为 f'(x) ≈ sum a[k]*(f(x+(2k-1)*h/2)-f(x-(2k-1)*h/2))/h，k=1...order/2，
+	 * 系数满足 sum a[k]*(2k-1)^(2n-1) = δ(n,1)，n=1...order/2。
+	 * @param order 空间有限差分阶数，(2,4,6,8,10)
+	 * @return 系数a[1...order/2]，a[0]为零
+	 */
+	public static float[] staggered(int order) {
+		int m = halfOrder(order);
+		double[][] a = new double[m][m+1];
+		for(int n=0;n<m;n++) {
+			for(int k=0;k<m;k++)
+				a[n][k] = Math.pow(2*k+1, 2*n+1);
+			a[n][m] = n==0?1.0:0.0;
+		}
+		double[] x = gauss(a);
+		float[] f = new float[m+1];
+		for(int k=1;k<=m;k++)
+			f[k] = (float) x[k-1];
+		return f;
+	}
+	/**
+	 * 频散优化的二阶导数系数（时间-空间域）
+	 * <p>
+	 * 时间二阶、空间order阶的格式沿坐标轴传播的平面波满足
+	 * (c[0]+2*sum c[k]*cos(k*kh)) = 2*(cos(r*kh)-1)/r^2，r = v*dt/h。
+	 * 在v从vmin到vmax、kh从0到2π*fmax*h/v的范围内按相对误差的最小二乘求系数，约束sum k^2*c[k] = 1
+	 * 保证低波数时与泰勒系数一致。这样同时补偿了空间和时间的频散，同样的精度下每个波长需要的网格点更少。
+	 * 结果按参数缓存。
+	 * @param order 空间有限差分阶数，(2,4,6,8,10)
+	 * @param fmax 最高频率
+	 * @param vmin 最小速度
+	 * @param vmax 最大速度
+	 * @param h 空间采样
+	 * @param dt 时间采样
+	 * @return 系数c[0...order/2]
+	 */
+	public static float[] optimized(int order, float fmax, float vmin, float vmax, float h, float dt) {
+		return CACHE.computeIfAbsent(new Key(false, order, fmax, vmin, vmax, h, dt), Key::solve).clone();
+	}
+	/**
+	 * 频散优化的交错网格一阶导数系数（时间-空间域）
+	 * <p>
+	 * 交错网格的格式沿坐标轴传播的平面波满足 2*sum a[k]*sin((k-1/2)*kh) = 2*sin(r*kh/2)/r，r = v*dt/h，
+	 * 优化的范围和方法与{@link #optimized(int, float, float, float, float, float)}相同，
+	 * 约束sum (2k-1)*a[k] = 1。结果按参数缓存。
+	 * @param order 空间有限差分阶数，(2,4,6,8,10)
+	 * @param fmax 最高频率
+	 * @param vmin 最小速度
+	 * @param vmax 最大速度
+	 * @param h 空间采样
+	 * @param dt 时间采样
+	 * @return 系数a[1...order/2]，a[0]为零
+	 */
+	public static float[] optimizedStaggered(int order, float fmax, float vmin, float vmax, float h, float dt) {
+		return CACHE.computeIfAbsent(new Key(true, order, fmax, vmin, vmax, h, dt), Key::solve).clone();
+	}
+	/**
+	 * 频散优化系数的参数
+	 */
+	private static final class Key {
+		/**
+		 * 是否为交错网格一阶导数
+		 */
+		private final boolean staggered;
+		/**
+		 * 空间有限差分阶数
+		 */
+		private final int order;
+		/**
+		 * 最高频率、最小速度、最大速度、空间采样和时间采样
+		 */
+		private final float fmax, vmin, vmax, h, dt;
+		/**
+		 * 构造函数
+		 * @param staggered 是否为交错网格一阶导数
+		 * @param order 空间有限差分阶数
+		 * @param fmax 最高频率
+		 * @param vmin 最小速度
+		 * @param vmax 最大速度
+		 * @param h 空间采样
+		 * @param dt 时间采样
+		 */
+		Key(boolean staggered, int order, float fmax, float vmin, float vmax, float h, float dt) {
+			halfOrder(order);
+			if(!(fmax>0.0f && vmin>0.0f && vmax>=vmin && h>0.0f && dt>0.0f))
+				throw new ArithmeticException("频散优化需要正的最高频率、速度范围、空间采样和时间采样");
+			this.staggered = staggered;
+			this.order = order;
+			this.fmax  = fmax;
+			this.vmin  = vmin;
+			this.vmax  = vmax;
+			this.h     = h;
+			this.dt    = dt;
+		}
+		@Override
+		public boolean equals(Object o) {
+			if(!(o instanceof Key))
+				return false;
+			Key k = (Key) o;
+			return staggered==k.staggered && order==k.order && fmax==k.fmax && vmin==k.vmin
+					&& vmax==k.vmax && h==k.h && dt==k.dt;
+		}
+		@Override
+		public int hashCode() {
+			int r = Boolean.hashCode(staggered);
+			r = 31*r+order;
+			r = 31*r+Float.hashCode(fmax);
+			r = 31*r+Float.hashCode(vmin);
+			r = 31*r+Float.hashCode(vmax);
+			r = 31*r+Float.hashCode(h);
+			return 31*r+Float.hashCode(dt);
+		}
+		/**
+		 * 带约束的加权最小二乘
+		 * <p>
+		 * 未知数为c[1...m]（或a[1...m]），在波数和速度的采样点上使 (sum c[k]*φk(kh)-T)/T 的平方和最小，
+		 * 约束用拉格朗日乘子加入法方程。
+		 * @return 系数
+		 */
+		float[] solve() {
+			int m = order/2;
+			double[][] a = new double[m+1][m+2];
+			double[] phi = new double[m];
+			for(int iv=0;iv<VELOCITIES;iv++) {
+				double v = vmin+(vmax-vmin)*iv/(VELOCITIES-1);
+				double r = v*dt/h;
+				double kmax = Math.min(2.0*Math.PI*fmax*h/v, MAX_WAVENUMBER);
+				for(int ik=1;ik<=WAVENUMBERS;ik++) {
+					double x = kmax*ik/WAVENUMBERS;
+					double t;
+					if(staggered) {
+						t = 2.0*Math.sin(r*x/2.0)/r;
+						for(int k=1;k<=m;k++)
+							phi[k-1] = 2.0*Math.sin((k-0.5)*x);
+					} else {
+						t = 2.0*(Math.cos(r*x)-1.0)/(r*r);
+						for(int k=1;k<=m;k++)
+							phi[k-1] = 2.0*(Math.cos(k*x)-1.0);
+					}
+					double wt = 1.0/(t*t);
+					for(int i=0;i<m;i++) {
+						for(int j=0;j<m;j++)
+							a[i][j] += wt*phi[i]*phi[j];
+						a[i][m+1] += wt*phi[i]*t;
+					}
+				}
+			}
+			for(int k=1;k<=m;k++) {
+				double g = staggered?2*k-1:(double) k*k;
+				a[k-1][m] = g;
+				a[m][k-1] = g;
+			}
+			a[m][m+1] = 1.0;
+			double[] c = gauss(a);
+			float[] f = new float[m+1];
+			for(int k=1;k<=m;k++) {
+				f[k] = (float) c[k-1];
+				if(!staggered)
+					f[0] -= 2.0f*f[k];
+			}
+			return f;
+		}
+	}
+	/**
+	 * 频散优化的最高归一化波数kh（约每个波长2.2个网格点），超过的部分不再优化
+	 */
+	private static final double MAX_WAVENUMBER = 0.9*Math.PI;
+	/**
+	 * 频散优化时波数的采样点数
+	 */
+	private static final int WAVENUMBERS = 200;
+	/**
+	 * 频散优化时速度的采样点数
+	 */
+	private static final int VELOCITIES = 5;
+	/**
+	 * 计算谱半径时波数的采样点数
+	 */
+	private static final int SAMPLES = 512;
+	/**
+	 * 频散优化系数的缓存
+	 */
+	private static final ConcurrentHashMap<Key, float[]> CACHE = new ConcurrentHashMap<>();
+	/**
+	 * 选主元的高斯消元
+	 * @param a 增广矩阵 [n][n+1]，计算中被修改
+	 * @return 解
+	 */
+	private static double[] gauss(double[][] a) {
+		int n = a.length;
+		for(int i=0;i<n;i++) {
+			int pivot = i;
+			for(int r=i+1;r<n;r++)
+				if(Math.abs(a[r][i])>Math.abs(a[pivot][i]))
+					pivot = r;
+			double[] t = a[i];
+			a[i] = a[pivot];
+			a[pivot] = t;
+			for(int r=0;r<n;r++) {
+				if(r==i)
+					continue;
+				double f = a[r][i]/a[i][i];
+				for(int c=i;c<=n;c++)
+					a[r][c] -= f*a[i][c];
+			}
+		}
+		double[] x = new double[n];
+		for(int i=0;i<n;i++)
+			x[i] = a[i][n]/a[i][i];
+		return x;
+	}
+	/**
+	 * 二阶导数差分算子的谱半径 max|c[0]+2*sum c[k]*cos(k*kh)|，kh在[0,π]上取样
+	 * <p>
+	 * 泰勒系数的最大值在kh=π处，频散优化的系数不一定，因此逐点取样。
+	 * @param c 系数c[0...order/2]
+	 * @return 谱半径（以1/h^2为单位）
+	 */
+	static double spectralRadius(float[] c) {
+		double max = 0.0;
+		for(int j=0;j<=SAMPLES;j++) {
+			double x = Math.PI*j/SAMPLES;
+			double s = c[0];
+			for(int k=1;k<c.length;k++)
+				s += 2.0*c[k]*Math.cos(k*x);
+			max = Math.max(max, Math.abs(s));
+		}
+		return max;
+	}
+	/**
+	 * 交错网格一阶导数差分算子的谱半径 max|2*sum a[k]*sin((k-1/2)*kh)|，kh在[0,π]上取样
+	 * @param a 系数a[1...order/2]，a[0]不使用
+	 * @return 谱半径（以1/h为单位）
+	 */
+	static double staggeredSpectralRadius(float[] a) {
+		double max = 0.0;
+		for(int j=0;j<=SAMPLES;j++) {
+			double x = Math.PI*j/SAMPLES;
+			double s = 0.0;
+			for(int k=1;k<a.length;k++)
+				s += 2.0*a[k]*Math.sin((k-0.5)*x);
+			max = Math.max(max, Math.abs(s));
+		}
+		return max;
+	}
+	/**
+	 * 检查差分阶数并返回其一半
+	 * @param order 空间有限差分阶数，(2,4,6,8,10)
+	 * @return 差分算子的半宽度
+	 */
+	static int halfOrder(int order) {
+		if(order<2 || order>10 || order%2!=0)
+			throw new ArithmeticException("空间有限差分阶数必须为2、4、6、8或10");
+		return order/2;
+	}
+	/**
+	 * 私有构造器
+	 */
+	private FiniteDifferenceCoefficients() {
+
+	}
+}
@@ -1,5 +1,9 @@
 package com.qq.bbsunok;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.HashMap;
 import java.util.Map;
+import java.util.logging.Logger;
 /**
  * 二维有限差分模拟程序
  * @author bingbing sun
@@ -70,10 +74,10 @@ public class FiniteDifferenceModeling2D {
 	 * @param rz 接受点坐标（以网格点为单位）
 	 * @param npml 吸收边界的网格点数
 	 * @param order 空间有限差分阶数，(2,4,6,8,10)
-	 * @param sou  震源子波
-	 * @param rec  地震记录
+	 * @param sou  震源子波 [ns][nt]
+	 * @param rec  地震记录，压力记录为rec[0] [nr][nt]
 	 * @param free 是否采用自由表面边界条件
-	 * @param v    模型集合
+	 * @param v    模型集合，每个模型为[nx][nz]
 	 * @param dv   速度扰动集合
 	 * @param sourceType 震源类型
 	 * @param recordType 接受点类型
@@ -82,18 +86,10 @@ public class FiniteDifferenceModeling2D {
 	 */
 	public static void run(float dt, float dx, float dz, float [] sx, float [] sz, float [] rx, float [] rz, int npml, int order,
 			float [][] sou, float[][][] rec, boolean free, Map<String, float[][]> v, Map<String, float[][]> dv,SourceType sourceType, RecordType recordType, Mission mission, Model model) {	
-		
-		switch(model){
-			case SCALAR_VP_MODELING:
-				float[][] vp   =  v.get("VP");
-				float[][] dvp  = dv.get("D_VP");
-				float[][] r    = rec[0];
-				runAcousticVp(dt, dx, dz, sx, sz, rx, rz, npml, order, sou, r, free, vp, dvp);
-				break;
-		}
+		run(dt, dx, dz, sx, sz, rx, rz, npml, order, sou, rec, free, v, dv, sourceType, recordType, mission, model, 1);
 	}
 	/**
-	 * 有限差分方法标量波动方程模拟
+	 * 有限差分波动方程模拟
 	 * @param dt 时间采样
 	 * @param dx 水平空间采样
 	 * @param dz 深度空间采样
@@ -102,23 +98,261 @@ public class FiniteDifferenceModeling2D {
 	 * @param rx 接收点坐标（以网格点为单位）
 	 * @param rz 接受点坐标（以网格点为单位）
 	 * @param npml 吸收边界的网格点数
-	 * @param order 空间有限差分阶数，(4或8)
-	 * @param sou  震源子波
-	 * @param rec  地震记录
+	 * @param order 空间有限差分阶数，(2,4,6,8,10)
+	 * @param sou  震源子波 [ns][nt]
+	 * @param rec  地震记录，压力记录为rec[0] [nr][nt]
 	 * @param free 是否采用自由表面边界条件
-	 * @param v    模型集合
+	 * @param v    模型集合，每个模型为[nx][nz]
 	 * @param dv   速度扰动集合
+	 * @param sourceType 震源类型
+	 * @param recordType 接受点类型
+	 * @param mission    任务类型
+	 * @param model      模拟采用的模型
+	 * @param threads    一炮内部并行计算的线程数，计算网格按行分为同样多的条带
 	 */
-	private static void runAcousticVp(float dt, float dx, float dz, float [] sx, float [] sz, float [] rx, float [] rz, int npml, int order,
-			float [][] sou, float[][] rec, boolean free, float [][] v, float [][] dv) {
-		
+	public static void run(float dt, float dx, float dz, float [] sx, float [] sz, float [] rx, float [] rz, int npml, int order,
+			float [][] sou, float[][][] rec, boolean free, Map<String, float[][]> v, Map<String, float[][]> dv,SourceType sourceType, RecordType recordType, Mission mission, Model model, int threads) {	
+		run(dt, dx, dz, sx, sz, rx, rz, npml, order, sou, rec, free, v, dv, sourceType, recordType, mission, model, new ModelingOptions().setThreads(threads));
+	}
+	/**
+	 * 有限差分波动方程模拟
+	 * <p>
+	 * 伴随计算（{@link Mission#ADJOINT}）时rec[0]为检波点的残差，速度的梯度写入dv中的"D_VP"。
+	 * 波恩近似模拟（{@link Mission#BORN_MODELING}）时dv中的"D_VP"为速度扰动，rec[0]为散射波场的记录。
+	 * @param dt 时间采样
+	 * @param dx 水平空间采样
+	 * @param dz 深度空间采样
+	 * @param sx 震源位置坐标（以网格点为单位）
+	 * @param sz 震源位置坐标（以网格点为单位）
+	 * @param rx 接收点坐标（以网格点为单位）
+	 * @param rz 接受点坐标（以网格点为单位）
+	 * @param npml 吸收边界的网格点数
+	 * @param order 空间有限差分阶数，(2,4,6,8,10)
+	 * @param sou  震源子波 [ns][nt]
+	 * @param rec  地震记录，压力记录为rec[0] [nr][nt]
+	 * @param free 是否采用自由表面边界条件
+	 * @param v    模型集合，每个模型为[nx][nz]
+	 * @param dv   速度扰动集合
+	 * @param sourceType 震源类型
+	 * @param recordType 接受点类型
+	 * @param mission    任务类型
+	 * @param model      模拟采用的模型
+	 * @param options    计算选项
+	 */
+	public static void run(float dt, float dx, float dz, float [] sx, float [] sz, float [] rx, float [] rz, int npml, int order,
+			float [][] sou, float[][][] rec, boolean free, Map<String, float[][]> v, Map<String, float[][]> dv,SourceType sourceType, RecordType recordType, Mission mission, Model model, ModelingOptions options) {	
+		float[][] dvp = dv==null?null:dv.get("D_VP");
+		ModelGrid.Builder builder = new ModelGrid.Builder(dt, dx, dz, npml, order, free)
+				.velocity(v.get("VP"))
+				.maxFrequency(options.getMaxFrequency());
+		// 标量波动方程不使用密度，模型集合中即使有RHO也不复制到网格中
+		if(model==Model.ACOUSTIC_VP_RHO_FIRST_ORDER_PML_MODELING)
+			builder.density(v.get("RHO"));
+		if(mission==Mission.BORN_MODELING)
+			builder.perturbation(dvp);
+		run(sx, sz, rx, rz, sou, rec, builder.build(), mission==Mission.ADJOINT?dvp:null, sourceType, recordType, mission, model, options);
+	}
+	/**
+	 * 有限差分波动方程模拟
+	 * <p>
+	 * 模型参数和网格由{@link ModelGrid}给出，同一个模型网格可以在多个线程、多炮之间共享。
+	 * 伴随计算（{@link Mission#ADJOINT}）时rec[0]为检波点的残差，速度的梯度写入gradient。
+	 * @param sx 震源位置坐标（以网格点为单位）
+	 * @param sz 震源位置坐标（以网格点为单位）
+	 * @param rx 接收点坐标（以网格点为单位）
+	 * @param rz 接受点坐标（以网格点为单位）
+	 * @param sou  震源子波 [ns][nt]
+	 * @param rec  地震记录，压力记录为rec[0] [nr][nt]
+	 * @param grid 模型网格
+	 * @param gradient 伴随计算输出的速度梯度 [nx][nz]，其它任务类型可以为null
+	 * @param sourceType 震源类型
+	 * @param recordType 接受点类型
+	 * @param mission    任务类型
+	 * @param model      模拟采用的模型
+	 * @param options    计算选项
+	 */
+	public static void run(float [] sx, float [] sz, float [] rx, float [] rz, float [][] sou, float[][][] rec, ModelGrid grid, float[][] gradient,
+			SourceType sourceType, RecordType recordType, Mission mission, Model model, ModelingOptions options) {
+		run(sx, sz, rx, rz, sou, ReceiverSink.of(rec[0]), rec[0], grid, gradient, mission, model, options);
+	}
+	/**
+	 * 有限差分波动方程模拟，检波点记录在时间循环中按时间块交给输出，不在内存中保存整炮的记录
+	 * <p>
+	 * 例如{@link MappedReceiverSink}把记录按道异步写入内存映射文件，每一炮在堆中只占几个时间块。
+	 * 伴随计算需要整炮的残差，不能使用这个方法。
+	 * @param sx 震源位置坐标（以网格点为单位）
+	 * @param sz 震源位置坐标（以网格点为单位）
+	 * @param rx 接收点坐标（以网格点为单位）
+	 * @param rz 接受点坐标（以网格点为单位）
+	 * @param sou  震源子波 [ns][nt]
+	 * @param sink 压力记录的输出
+	 * @param grid 模型网格
+	 * @param sourceType 震源类型
+	 * @param recordType 接受点类型
+	 * @param mission    任务类型
+	 * @param model      模拟采用的模型
+	 * @param options    计算选项
+	 */
+	public static void run(float [] sx, float [] sz, float [] rx, float [] rz, float [][] sou, ReceiverSink sink, ModelGrid grid,
+			SourceType sourceType, RecordType recordType, Mission mission, Model model, ModelingOptions options) {
+		if(mission==Mission.ADJOINT)
+			throw new ArithmeticException("伴随计算需要整炮的残差，请使用地震记录数组");
+		run(sx, sz, rx, rz, sou, sink, null, grid, null, mission, model, options);
+	}
+	/**
+	 * 按模拟方法分派
+	 * @param sx 震源位置坐标（以网格点为单位）
+	 * @param sz 震源位置坐标（以网格点为单位）
+	 * @param rx 接收点坐标（以网格点为单位）
+	 * @param rz 接受点坐标（以网格点为单位）
+	 * @param sou  震源子波
+	 * @param sink 检波点记录的输出
+	 * @param res  伴随计算的残差，其它任务类型不使用
+	 * @param grid 模型网格
+	 * @param gradient 伴随计算输出的速度梯度
+	 * @param mission    任务类型
+	 * @param model      模拟采用的模型
+	 * @param options    计算选项
+	 */
+	private static void run(float [] sx, float [] sz, float [] rx, float [] rz, float [][] sou, ReceiverSink sink, float[][] res,
+			ModelGrid grid, float[][] gradient, Mission mission, Model model, ModelingOptions options) {
+		switch(model){
+			case SCALAR_VP_MODELING:
+				runAcousticVp(sx, sz, rx, rz, sou, sink, res, grid, gradient, mission, options);
+				break;
+			case ACOUSTIC_VP_RHO_FIRST_ORDER_PML_MODELING:
+				runAcousticVpRho(sx, sz, rx, rz, sou, sink, grid, mission, options);
+				break;
+		}
+	}
+	/**
+	 * 有限差分方法标量波动方程模拟
+	 * @param sx 震源位置坐标（以网格点为单位）
+	 * @param sz 震源位置坐标（以网格点为单位）
+	 * @param rx 接收点坐标（以网格点为单位）
+	 * @param rz 接受点坐标（以网格点为单位）
+	 * @param sou  震源子波
+	 * @param sink 检波点记录的输出
+	 * @param rec  伴随计算的残差
+	 * @param grid 模型网格
+	 * @param gradient 伴随计算输出的速度梯度
+	 * @param mission    任务类型
+	 * @param options    计算选项
+	 */
+	private static void runAcousticVp(float [] sx, float [] sz, float [] rx, float [] rz, float [][] sou, ReceiverSink sink, float[][] rec,
+			ModelGrid grid, float [][] gradient, Mission mission, ModelingOptions options) {
+		ScalarWavePropagator propagator = new ScalarWavePropagator(grid);
+		propagator.setSources(sx, sz);
+		propagator.setReceivers(rx, rz);
+		propagator.setThreads(options.getThreads());
+		switch(mission) {
+			case FORWARD_MODELING:
+				propagator.forward(sou, sink);
+				Logger.getGlobal().info(String.format("标量波动方程模拟：每秒更新%.3e个网格点", propagator.getCellsPerSecond()));
+				break;
+			case BORN_MODELING:
+				if(!grid.hasPerturbation())
+					throw new ArithmeticException("波恩近似模拟需要在速度扰动集合中提供D_VP");
+				propagator.born(sou, sink);
+				Logger.getGlobal().info(String.format("标量波动方程波恩近似模拟：每秒更新%.3e个网格点", propagator.getCellsPerSecond()));
+				break;
+			case ADJOINT:
+				if(gradient==null)
+					throw new ArithmeticException("伴随计算需要在速度扰动集合中提供D_VP作为梯度的输出");
+				switch(options.getReconstruction()) {
+					case BOUNDARY_SAVING:
+						propagator.adjointBoundary(sou, rec, gradient);
+						break;
+					case SNAPSHOT_STORE:
+						try(SnapshotStore store = SnapshotStore.temporary(options.getScratchDirectory(), propagator.regionLength(),
+								options.getCompression(), options.getMantissaBits())) {
+							propagator.adjointStored(sou, rec, gradient, store);
+							Logger.getGlobal().info(String.format("标量波动方程伴随计算：快照存储%d字节", store.getStoredBytes()));
+						} catch(IOException e) {
+							throw new UncheckedIOException(e);
+						}
+						break;
+					default:
+						long advances = propagator.adjoint(sou, rec, gradient, options.getSnapshots());
+						Logger.getGlobal().info(String.format("标量波动方程伴随计算：%d个检查点，正演%d步", options.getSnapshots(), advances));
+						break;
+				}
+				break;
+		}
+	}
+	/**
+	 * 交错网格一阶变密度声波方程模拟，采用卷积完全匹配层吸收边界
+	 * <p>
+	 * 只支持正演模拟，波恩近似模拟和伴随计算需要变密度方程的线性化，尚未实现。
+	 * @param sx 震源位置坐标（以网格点为单位）
+	 * @param sz 震源位置坐标（以网格点为单位）
+	 * @param rx 接收点坐标（以网格点为单位）
+	 * @param rz 接受点坐标（以网格点为单位）
+	 * @param sou  震源子波
+	 * @param sink 压力记录的输出
+	 * @param grid 模型网格，需要有密度
+	 * @param mission    任务类型
+	 * @param options    计算选项
+	 */
+	private static void runAcousticVpRho(float [] sx, float [] sz, float [] rx, float [] rz, float [][] sou, ReceiverSink sink,
+			ModelGrid grid, Mission mission, ModelingOptions options) {
+		if(mission!=Mission.FORWARD_MODELING)
+			throw new ArithmeticException("变密度声波方程只支持正演模拟");
+		AcousticStaggeredPropagator propagator = new AcousticStaggeredPropagator(grid, dominantFrequency(sou, grid.getDt()));
+		propagator.setSources(sx, sz);
+		propagator.setReceivers(rx, rz);
+		propagator.setThreads(options.getThreads());
+		propagator.forward(sou, sink);
+		Logger.getGlobal().info(String.format("变密度声波方程模拟：每秒更新%.3e个网格点", propagator.getCellsPerSecond()));
+	}
+	/**
+	 * 估计震源子波的主频（均方根频率）
+	 * @param sou 震源子波 [ns][nt]
+	 * @param dt 时间采样
+	 * @return 主频
+	 */
+	private static float dominantFrequency(float [][] sou, float dt) {
+		double e  = 0.0;
+		double ed = 0.0;
+		for(float[] s: sou) {
+			for(int it=1;it<s.length;it++) {
+				double d = (s[it]-s[it-1])/dt;
+				e  += s[it]*s[it];
+				ed += d*d;
+			}
+		}
+		return e>0.0?(float) (Math.sqrt(ed/e)/(2.0*Math.PI)):0.0f;
 	}
 	/**
 	 * 测试程序
 	 * @param args 参数
 	 */
 	public static void main(String[] args) {
-
+		int nx = 400;
+		int nz = 300;
+		int nt = 1000;
+		float dt = 0.001f;
+		float dx = 10.0f;
+		float[][] vp = new float[nx][nz];
+		for(int ix=0;ix<nx;ix++)
+			for(int iz=0;iz<nz;iz++)
+				vp[ix][iz] = iz<nz/2?2000.0f:3000.0f;
+		float[][] sou = new float[1][nt];
+		for(int it=0;it<nt;it++) {
+			double a = Math.PI*20.0*(it*dt-0.06);
+			sou[0][it] = (float) ((1.0-2.0*a*a)*Math.exp(-a*a));
+		}
+		float[] rx = new float[nx];
+		float[] rz = new float[nx];
+		for(int ix=0;ix<nx;ix++) {
+			rx[ix] = ix;
+			rz[ix] = 2;
+		}
+		float[][][] rec = new float[1][nx][nt];
+		Map<String, float[][]> v = new HashMap<>();
+		v.put("VP", vp);
+		run(dt, dx, dx, new float[] {nx/2}, new float[] {5}, rx, rz, 40, 8, sou, rec, true, v, new HashMap<>(),
+				SourceType.PRESSURE, RecordType.PRESSURE, Mission.FORWARD_MODELING, Model.SCALAR_VP_MODELING);
 	}
 	/**
 	 * 私有构造器
@@ -1,5 +1,6 @@
 package com.qq.bbsunok;
 import static edu.mines.jtk.util.ArrayMath.*;
+import java.util.concurrent.ConcurrentHashMap;
 import edu.mines.jtk.dsp.HilbertTransformFilter;
 import edu.mines.jtk.util.Cfloat;
 /**
@@ -11,6 +12,10 @@ import edu.mines.jtk.util.Cfloat;
  *
  */
 public class Kolmogoroff {
+	/**
+	 * 按长度缓存的傅里叶变换，逐道调用时共享同一个变换对象及其采样轴
+	 */
+	private static final ConcurrentHashMap<Integer, SimpleFftComplex> FFTS = new ConcurrentHashMap<>();
 	/**
 	 * Kolmogoroff谱分解
 	 * @param s 谱，由傅里叶变换计算得到的谱
@@ -19,7 +24,7 @@ public class Kolmogoroff {
 	 */
 	public static float [] run(float [] s) throws Exception {
 		int n = s.length;
-		SimpleFftComplex spFft = new SimpleFftComplex(SimpleFftComplex.nfftSmall(n));
+		SimpleFftComplex spFft = fft(SimpleFftComplex.nfftSmall(n));
 		float [] u = new float[n];
 		float [] v = new float[n];
 		float [] b = new float[n];
@@ -59,7 +64,7 @@ public class Kolmogoroff {
 	 */
 	public static float [] runApprox(float [] s) throws Exception {
 		int n = s.length;
-		SimpleFftComplex spFft = new SimpleFftComplex(SimpleFftComplex.nfftSmall(n));
+		SimpleFftComplex spFft = fft(SimpleFftComplex.nfftSmall(n));
 		float [] u = new float[n];
 		float [] v = new float[n];
 		float [] b = new float[n];
@@ -72,12 +77,12 @@ public class Kolmogoroff {
 		float emax = 0.0001f; // max error.
 		float fmin = 0.001f;  // min frequency.
 		float fmax = 0.499f;  // max frequency.
-		inputR = SimpleFftComplex.fftShift(inputR);
+		SimpleFftComplex.fftShiftInplace(inputR);
 		HilbertTransformFilter hlb = new HilbertTransformFilter();
 		hlb.apply(n, inputR, inputI);
 		inputI=mul(inputI,sqrt(sum(mul(inputR,inputR))/sum(mul(inputI,inputI))));
-		inputR = SimpleFftComplex.fftShiftInverse(inputR);
-		inputI = SimpleFftComplex.fftShiftInverse(inputI);
+		SimpleFftComplex.fftShiftInverseInplace(inputR);
+		SimpleFftComplex.fftShiftInverseInplace(inputI);
 		for(int i=0;i<n;i++) {
 			Cfloat cc   = new Cfloat(inputR[i],inputI[i]);
 			Cfloat cexp = cc.exp();
@@ -92,6 +97,21 @@ public class Kolmogoroff {
 		}
 		return inputR;
 	}
+	/**
+	 * 得到（缓存的）傅里叶变换
+	 * @param nfft 变换长度
+	 * @return 傅里叶变换
+	 */
+	private static SimpleFftComplex fft(int nfft) {
+		SimpleFftComplex fft = FFTS.get(nfft);
+		if(fft==null) {
+			fft = new SimpleFftComplex(nfft);
+			SimpleFftComplex old = FFTS.putIfAbsent(nfft, fft);
+			if(old!=null)
+				fft = old;
+		}
+		return fft;
+	}
 	/**
 	 * 私有构造器
 	 */
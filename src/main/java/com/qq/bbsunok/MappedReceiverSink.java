@@ -0,0 +1,247 @@
+package com.qq.bbsunok;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.FloatBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicReference;
+/**
+ * 写入内存映射文件的检波点记录输出。
+ * <p>
+ * 文件按道排列，第ir道第it个时间采样位于第(ir*nt+it)个浮点数（大端），与内存中的记录rec[ir][it]相同。
+ * 写入是异步的：时间块复制到环形缓冲区后立即返回，转置和写文件在后台线程中进行，
+ * 环形缓冲区只有{@value #DEPTH}块，后台线程落后时写入方等待，因此一炮在堆中只占几块的内存。
+ * 每次{@link #begin(int, int)}时文件按新的道数和时间采样点数重建，一个对象一次只能用于一炮。
+ * @author bbsun
+ *
+ */
+public final class MappedReceiverSink implements ReceiverSink, Closeable {
+	/**
+	 * 环形缓冲区的块数
+	 */
+	private static final int DEPTH = 4;
+	/**
+	 * 每次映射的最大文件长度
+	 */
+	private static final long SEGMENT = 1L<<26;
+	/**
+	 * 文件通道
+	 */
+	private final FileChannel channel;
+	/**
+	 * 写入线程
+	 */
+	private final ExecutorService writer;
+	/**
+	 * 空闲的块缓冲区
+	 */
+	private final BlockingQueue<float[]> buffers = new ArrayBlockingQueue<>(DEPTH);
+	/**
+	 * 已经映射的文件段，每段包含整数道
+	 */
+	private final List<FloatBuffer> segments = new ArrayList<>();
+	/**
+	 * 第一个失败的写入的异常
+	 */
+	private final AtomicReference<Exception> failure = new AtomicReference<>();
+	/**
+	 * 最后一次提交的写入
+	 */
+	private Future<?> lastWrite;
+	/**
+	 * 已经分配的块缓冲区个数
+	 */
+	private int allocated;
+	/**
+	 * 道数
+	 */
+	private int nr;
+	/**
+	 * 时间采样点数
+	 */
+	private int nt;
+	/**
+	 * 每个文件段的道数
+	 */
+	private int tracesPerSegment = 1;
+	/**
+	 * 写入线程转置用的一道数据
+	 */
+	private float[] trace = new float[0];
+	/**
+	 * 构造函数
+	 * @param file 文件，已有的内容被覆盖
+	 * @throws IOException 文件无法打开
+	 */
+	public MappedReceiverSink(Path file) throws IOException {
+		this.channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ,
+				StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+		this.writer  = Executors.newSingleThreadExecutor(r -> {
+			Thread t = new Thread(r, "receiver-writer");
+			t.setDaemon(true);
+			return t;
+		});
+	}
+	/**
+	 * 开始一炮，文件截断后按道数和时间采样点数映射
+	 * @param nr 道数
+	 * @param nt 时间采样点数
+	 */
+	@Override
+	public void begin(int nr, int nt) {
+		flush();
+		if(nr<0 || nt<0)
+			throw new ArithmeticException("道数和时间采样点数不能为负数");
+		segments.clear();
+		buffers.clear();
+		allocated = 0;
+		this.nr = nr;
+		this.nt = nt;
+		this.tracesPerSegment = (int) Math.max(1L, SEGMENT/Math.max(4L*nt, 1L));
+		try {
+			channel.truncate(0L);
+			for(int ir0=0;ir0<nr;ir0+=tracesPerSegment) {
+				int count = Math.min(tracesPerSegment, nr-ir0);
+				segments.add(channel.map(FileChannel.MapMode.READ_WRITE, 4L*ir0*nt, 4L*count*nt).asFloatBuffer());
+			}
+		} catch(IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+	/**
+	 * 异步写入一块时间采样
+	 * @param it0 第一个时间采样的下标
+	 * @param n 时间采样点数
+	 * @param block 数据，block[k*nr+ir]
+	 */
+	@Override
+	public void write(int it0, int n, float[] block) {
+		if(it0<0 || n<0 || it0+n>nt)
+			throw new ArithmeticException("时间采样超出了记录的长度");
+		checkFailure();
+		int length = n*nr;
+		float[] buffer = buffers.poll();
+		if(buffer==null && allocated<DEPTH) {
+			buffer = new float[length];
+			allocated++;
+		}
+		while(buffer==null) {
+			try {
+				buffer = buffers.take();
+			} catch(InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new IllegalStateException("写入检波点记录时被中断", e);
+			}
+		}
+		if(buffer.length<length)
+			buffer = new float[length];
+		System.arraycopy(block, 0, buffer, 0, length);
+		float[] data = buffer;
+		lastWrite = writer.submit(() -> {
+			try {
+				store(it0, n, data);
+			} catch(RuntimeException e) {
+				failure.compareAndSet(null, e);
+				throw e;
+			} finally {
+				buffers.offer(data);
+			}
+		});
+	}
+	/**
+	 * 结束一炮，等待所有写入完成
+	 */
+	@Override
+	public void end() {
+		flush();
+	}
+	/**
+	 * 读取一道（一炮结束后）
+	 * @param ir 道号
+	 * @param out 输出，长度至少为时间采样点数
+	 */
+	public void read(int ir, float[] out) {
+		flush();
+		if(ir<0 || ir>=nr)
+			throw new ArithmeticException("道号超出范围");
+		segments.get(ir/tracesPerSegment).get((ir%tracesPerSegment)*nt, out, 0, nt);
+	}
+	/**
+	 * 返回道数
+	 * @return 道数
+	 */
+	public int getTraceCount() {
+		return nr;
+	}
+	/**
+	 * 返回时间采样点数
+	 * @return 时间采样点数
+	 */
+	public int getSampleCount() {
+		return nt;
+	}
+	/**
+	 * 等待所有写入完成
+	 */
+	private void flush() {
+		if(lastWrite!=null) {
+			try {
+				lastWrite.get();
+			} catch(InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new IllegalStateException("写入检波点记录时被中断", e);
+			} catch(ExecutionException e) {
+				// 异常已经记录在failure中
+			}
+			lastWrite = null;
+		}
+		checkFailure();
+	}
+	/**
+	 * 有写入失败时抛出异常
+	 */
+	private void checkFailure() {
+		Exception e = failure.get();
+		if(e!=null)
+			throw (RuntimeException) e;
+	}
+	/**
+	 * 关闭文件
+	 * @throws IOException 文件无法关闭
+	 */
+	@Override
+	public void close() throws IOException {
+		try {
+			flush();
+		} finally {
+			writer.shutdownNow();
+			segments.clear();
+			channel.close();
+		}
+	}
+	/**
+	 * 把一块转置后写入各道（写入线程）
+	 * @param it0 第一个时间采样的下标
+	 * @param n 时间采样点数
+	 * @param data 数据，data[k*nr+ir]
+	 */
+	private void store(int it0, int n, float[] data) {
+		if(trace.length<n)
+			trace = new float[n];
+		for(int ir=0;ir<nr;ir++) {
+			for(int k=0;k<n;k++)
+				trace[k] = data[k*nr+ir];
+			segments.get(ir/tracesPerSegment).put((ir%tracesPerSegment)*nt+it0, trace, 0, n);
+		}
+	}
+}
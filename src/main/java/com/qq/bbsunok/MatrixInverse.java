@@ -1,6 +1,5 @@
 package com.qq.bbsunok;
 
-import edu.mines.jtk.dsp.Conv;
 import edu.mines.jtk.la.DMatrix;
 import edu.mines.jtk.mosaic.SimplePlot;
 
@@ -29,7 +28,7 @@ public class MatrixInverse {
 		double[][] r = new double[nFil][1];
 		float[] app = new float[nFil];
 		float[] tru = new float[nFil];
-		Conv.xcor(n, 0, a, n, 0, a, n, 0, z);
+		FftConvolution.xcor(n, 0, a, n, 0, a, n, 0, z);
 		SimplePlot.asSequence(z);
 		for (int i = 0; i < n; i++)
 			r[i][0] = z[i];
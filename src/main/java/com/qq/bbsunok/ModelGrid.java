@@ -0,0 +1,538 @@
+package com.qq.bbsunok;
+/**
+ * 有限差分模拟的模型网格。
+ * <p>
+ * 每个参数（速度、密度、速度扰动）保存在一个连续的一维数组中，数组覆盖整个计算网格：
+ * 模型四周（自由表面时上方除外）各加npml个吸收边界点，吸收边界中的值取最近的模型边界值，
+ * 外面再加order/2个零点作为差分算子的边界。z为快轴，每一列的长度补齐到{@value #ALIGN}的整数倍，
+ * 使得每一列在数组中的起始位置有相同的对齐。网格点(ix,iz)的下标为{@link #index(int, int)}。
+ * <p>
+ * 与时间采样和差分阶数有关的导出量在构造时计算一次：v^2*dt^2、波恩近似的散射系数、变密度声波方程的ρv^2*dt和dt/ρ、
+ * 差分系数以及吸收边界的归一化距离剖面。构造后所有数组都不再修改，
+ * 因此同一个模型可以被多个线程、多炮同时只读地使用。
+ * @author bbsun
+ *
+ */
+public final class ModelGrid {
+	/**
+	 * 每一列的长度补齐到的网格点数（64字节）
+	 */
+	static final int ALIGN = 16;
+	/**
+	 * 模型网格的构造器
+	 */
+	public static final class Builder {
+		/**
+		 * 时间采样
+		 */
+		private final float dt;
+		/**
+		 * 水平空间采样
+		 */
+		private final float dx;
+		/**
+		 * 深度空间采样
+		 */
+		private final float dz;
+		/**
+		 * 吸收边界的网格点数
+		 */
+		private final int npml;
+		/**
+		 * 空间有限差分阶数
+		 */
+		private final int order;
+		/**
+		 * 是否采用自由表面
+		 */
+		private final boolean free;
+		/**
+		 * 速度 [nx][nz]
+		 */
+		private float[][] velocity;
+		/**
+		 * 密度 [nx][nz]
+		 */
+		private float[][] density;
+		/**
+		 * 速度扰动 [nx][nz]
+		 */
+		private float[][] perturbation;
+		/**
+		 * 频散优化的最高频率，0为泰勒展开系数
+		 */
+		private float fmax;
+		/**
+		 * 构造函数
+		 * @param dt 时间采样
+		 * @param dx 水平空间采样
+		 * @param dz 深度空间采样
+		 * @param npml 吸收边界的网格点数
+		 * @param order 空间有限差分阶数，(2,4,6,8,10)
+		 * @param free 是否采用自由表面边界条件
+		 */
+		public Builder(float dt, float dx, float dz, int npml, int order, boolean free) {
+			FiniteDifferenceCoefficients.halfOrder(order);
+			if(npml<0)
+				throw new ArithmeticException("吸收边界的网格点数不能为负数");
+			this.dt    = dt;
+			this.dx    = dx;
+			this.dz    = dz;
+			this.npml  = npml;
+			this.order = order;
+			this.free  = free;
+		}
+		/**
+		 * 设置速度
+		 * @param velocity 速度 [nx][nz]
+		 * @return 本对象
+		 */
+		public Builder velocity(float[][] velocity) {
+			this.velocity = velocity;
+			return this;
+		}
+		/**
+		 * 设置密度
+		 * @param density 密度 [nx][nz]
+		 * @return 本对象
+		 */
+		public Builder density(float[][] density) {
+			this.density = density;
+			return this;
+		}
+		/**
+		 * 设置速度扰动（波恩近似模拟使用）
+		 * @param perturbation 速度扰动 [nx][nz]
+		 * @return 本对象
+		 */
+		public Builder perturbation(float[][] perturbation) {
+			this.perturbation = perturbation;
+			return this;
+		}
+		/**
+		 * 设置频散优化的最高频率。大于零时差分系数按这个频率和模型的速度范围做时间-空间域的频散优化
+		 * （{@link FiniteDifferenceCoefficients#optimized(int, float, float, float, float, float)}），
+		 * 同样的频散误差下可以使用更大的空间采样；为零时使用泰勒展开系数。
+		 * @param fmax 最高频率
+		 * @return 本对象
+		 */
+		public Builder maxFrequency(float fmax) {
+			if(!(fmax>=0.0f))
+				throw new ArithmeticException("最高频率不能为负数");
+			this.fmax = fmax;
+			return this;
+		}
+		/**
+		 * 构造模型网格，输入的二维数组被复制，之后修改它们不影响模型。
+		 * 最大速度和时间采样按选用的差分系数不满足稳定性条件时抛出{@link ArithmeticException}。
+		 * @return 模型网格
+		 */
+		public ModelGrid build() {
+			if(velocity==null)
+				throw new ArithmeticException("模型网格需要速度");
+			return new ModelGrid(this);
+		}
+	}
+	/**
+	 * 模型的水平网格点数
+	 */
+	final int nx;
+	/**
+	 * 模型的深度网格点数
+	 */
+	final int nz;
+	/**
+	 * 吸收边界的网格点数
+	 */
+	final int npml;
+	/**
+	 * 空间有限差分阶数
+	 */
+	final int order;
+	/**
+	 * 差分算子的半宽度
+	 */
+	final int m;
+	/**
+	 * 计算网格的水平网格点数（包括吸收边界）
+	 */
+	final int nxp;
+	/**
+	 * 计算网格的深度网格点数（包括吸收边界）
+	 */
+	final int nzp;
+	/**
+	 * 模型第一行在计算网格中的深度下标
+	 */
+	final int ztop;
+	/**
+	 * 一列的长度（包括两端的零点和对齐补齐的点）
+	 */
+	final int stride;
+	/**
+	 * 时间采样
+	 */
+	final float dt;
+	/**
+	 * 水平空间采样
+	 */
+	final float dx;
+	/**
+	 * 深度空间采样
+	 */
+	final float dz;
+	/**
+	 * 是否采用自由表面
+	 */
+	final boolean free;
+	/**
+	 * 最大速度
+	 */
+	final float vmax;
+	/**
+	 * 频散优化的最高频率，0为泰勒展开系数
+	 */
+	final float fmax;
+	/**
+	 * 速度
+	 */
+	final float[] velocity;
+	/**
+	 * 密度，没有时为null
+	 */
+	final float[] density;
+	/**
+	 * 速度扰动，吸收边界中为零，没有时为null
+	 */
+	final float[] perturbation;
+	/**
+	 * v^2*dt^2
+	 */
+	final float[] w;
+	/**
+	 * 波恩近似的散射系数2*v*dv*dt^2（即2*dv/v*v^2*dt^2），没有速度扰动时为null
+	 */
+	final float[] scatter;
+	/**
+	 * ρ*v^2*dt，没有密度时为null
+	 */
+	final float[] kappa;
+	/**
+	 * (x+dx/2,z)处的dt/ρ，没有密度时为null
+	 */
+	final float[] buoyancyX;
+	/**
+	 * (x,z+dz/2)处的dt/ρ，没有密度时为null
+	 */
+	final float[] buoyancyZ;
+	/**
+	 * 二阶导数中心点的系数c[0]/dx^2+c[0]/dz^2
+	 */
+	final float c0;
+	/**
+	 * 二阶导数水平方向的系数c[k]/dx^2
+	 */
+	final float[] cx;
+	/**
+	 * 二阶导数深度方向的系数c[k]/dz^2
+	 */
+	final float[] cz;
+	/**
+	 * 交错网格一阶导数水平方向的系数a[k]/dx
+	 */
+	final float[] ax;
+	/**
+	 * 交错网格一阶导数深度方向的系数a[k]/dz
+	 */
+	final float[] az;
+	/**
+	 * 整网格点到水平吸收边界内边缘的归一化距离的平方(距离/npml)^2
+	 */
+	final float[] profileX;
+	/**
+	 * 半网格点(ix+1/2)的水平归一化距离的平方，只有吸收边界条带中的点非零
+	 */
+	final float[] profileXHalf;
+	/**
+	 * 整网格点到深度吸收边界内边缘的归一化距离的平方
+	 */
+	final float[] profileZ;
+	/**
+	 * 半网格点(iz+1/2)的深度归一化距离的平方，只有吸收边界条带中的点非零
+	 */
+	final float[] profileZHalf;
+	/**
+	 * 构造函数
+	 * @param b 构造器
+	 */
+	private ModelGrid(Builder b) {
+		this.nx    = b.velocity.length;
+		this.nz    = b.velocity[0].length;
+		this.npml  = b.npml;
+		this.order = b.order;
+		this.m     = FiniteDifferenceCoefficients.halfOrder(b.order);
+		this.dt    = b.dt;
+		this.dx    = b.dx;
+		this.dz    = b.dz;
+		this.free  = b.free;
+		this.fmax  = b.fmax;
+		this.ztop  = free?0:npml;
+		this.nxp   = nx+2*npml;
+		this.nzp   = nz+ztop+npml;
+		this.stride = (nzp+2*m+ALIGN-1)/ALIGN*ALIGN;
+		velocity     = pad(b.velocity);
+		density      = b.density==null?null:pad(b.density);
+		perturbation = b.perturbation==null?null:embed(b.perturbation);
+		int size = (nxp+2*m)*stride;
+		w = new float[size];
+		float max = 0.0f;
+		for(int i=0;i<size;i++) {
+			w[i] = velocity[i]*velocity[i]*dt*dt;
+			max  = Math.max(max, velocity[i]);
+		}
+		vmax = max;
+		if(perturbation!=null) {
+			scatter = new float[size];
+			for(int i=0;i<size;i++)
+				scatter[i] = 2.0f*velocity[i]*perturbation[i]*dt*dt;
+		} else {
+			scatter = null;
+		}
+		if(density!=null) {
+			kappa     = new float[size];
+			buoyancyX = new float[size];
+			buoyancyZ = new float[size];
+			for(int ix=0;ix<nxp;ix++) {
+				for(int iz=0;iz<nzp;iz++) {
+					int i = index(ix, iz);
+					float r = density[i];
+					if(r<=0.0f)
+						throw new ArithmeticException("密度必须为正数。");
+					// 计算网格以外取边界上的值
+					int ir = ix+1<nxp?i+stride:i;
+					int id = iz+1<nzp?i+1:i;
+					kappa[i]     = r*velocity[i]*velocity[i]*dt;
+					buoyancyX[i] = 2.0f*dt/(r+density[ir]);
+					buoyancyZ[i] = 2.0f*dt/(r+density[id]);
+				}
+			}
+		} else {
+			kappa     = null;
+			buoyancyX = null;
+			buoyancyZ = null;
+		}
+		// 频散优化的系数与空间采样有关，两个方向分别计算
+		float[] c1, c2, a1, a2;
+		if(fmax>0.0f) {
+			float vmin = Float.MAX_VALUE;
+			for(float[] vx : b.velocity)
+				for(float v : vx)
+					vmin = Math.min(vmin, v);
+			c1 = FiniteDifferenceCoefficients.optimized(order, fmax, vmin, vmax, dx, dt);
+			c2 = FiniteDifferenceCoefficients.optimized(order, fmax, vmin, vmax, dz, dt);
+			a1 = FiniteDifferenceCoefficients.optimizedStaggered(order, fmax, vmin, vmax, dx, dt);
+			a2 = FiniteDifferenceCoefficients.optimizedStaggered(order, fmax, vmin, vmax, dz, dt);
+		} else {
+			c1 = c2 = FiniteDifferenceCoefficients.taylor(order);
+			a1 = a2 = FiniteDifferenceCoefficients.staggered(order);
+		}
+		cx = new float[m+1];
+		cz = new float[m+1];
+		ax = new float[m+1];
+		az = new float[m+1];
+		for(int k=0;k<=m;k++) {
+			cx[k] = c1[k]/(dx*dx);
+			cz[k] = c2[k]/(dz*dz);
+			ax[k] = a1[k]/dx;
+			az[k] = a2[k]/dz;
+		}
+		c0 = cx[0]+cz[0];
+		// 稳定性条件按实际使用的系数检查：频散优化的系数谱半径更大，允许的时间采样比泰勒系数小
+		double r = vmax*dt;
+		double scalar = r*r*(FiniteDifferenceCoefficients.spectralRadius(c1)/(dx*dx)
+				+FiniteDifferenceCoefficients.spectralRadius(c2)/(dz*dz));
+		if(!(scalar<=4.0))
+			throw new ArithmeticException(String.format("不满足稳定性条件：最大速度%g、时间采样%g时，"
+					+ "v^2*dt^2*ρ(L) = %.4f > 4，请减小时间采样或降低差分阶数。", vmax, dt, scalar));
+		if(density!=null) {
+			double sx = FiniteDifferenceCoefficients.staggeredSpectralRadius(a1)/dx;
+			double sz = FiniteDifferenceCoefficients.staggeredSpectralRadius(a2)/dz;
+			double staggered = r*r*(sx*sx+sz*sz);
+			if(!(staggered<=4.0))
+				throw new ArithmeticException(String.format("不满足交错网格的稳定性条件：最大速度%g、时间采样%g时，"
+						+ "v^2*dt^2*(ρ(Dx)^2+ρ(Dz)^2) = %.4f > 4，请减小时间采样或降低差分阶数。", vmax, dt, staggered));
+		}
+		profileX     = profile(nxp, npml, npml, 0.0);
+		profileXHalf = profile(nxp, npml, npml, 0.5);
+		profileZ     = profile(nzp, ztop, npml, 0.0);
+		profileZHalf = profile(nzp, ztop, npml, 0.5);
+	}
+	/**
+	 * 把[nx][nz]的模型复制到计算网格，吸收边界中取最近的模型边界值
+	 * @param v 模型 [nx][nz]
+	 * @return 一维数组
+	 */
+	private float[] pad(float[][] v) {
+		if(v.length!=nx)
+			throw new ArithmeticException("模型参数的大小应该与速度一致。");
+		float[] f = new float[(nxp+2*m)*stride];
+		for(int ix=0;ix<nxp;ix++) {
+			float[] vx = v[Math.min(Math.max(ix-npml,0),nx-1)];
+			if(vx.length!=nz)
+				throw new ArithmeticException("模型每一行的长度应该一致。");
+			int base = index(ix, 0);
+			for(int iz=0;iz<nzp;iz++)
+				f[base+iz] = vx[Math.min(Math.max(iz-ztop,0),nz-1)];
+		}
+		return f;
+	}
+	/**
+	 * 把[nx][nz]的模型复制到计算网格，吸收边界中取零
+	 * <p>
+	 * 速度扰动只定义在模型内部：梯度只在模型内部计算，吸收边界中的扰动没有对应的伴随，
+	 * 延拓到吸收边界会使波恩近似算子与梯度不再互为转置。
+	 * @param v 模型 [nx][nz]
+	 * @return 一维数组
+	 */
+	private float[] embed(float[][] v) {
+		if(v.length!=nx)
+			throw new ArithmeticException("模型参数的大小应该与速度一致。");
+		float[] f = new float[(nxp+2*m)*stride];
+		for(int ix=0;ix<nx;ix++) {
+			if(v[ix].length!=nz)
+				throw new ArithmeticException("模型每一行的长度应该一致。");
+			System.arraycopy(v[ix], 0, f, index(ix+npml, ztop), nz);
+		}
+		return f;
+	}
+	/**
+	 * 计算吸收边界的归一化距离的平方
+	 * <p>
+	 * 半网格点只在吸收边界的条带中取非零值，模型边界上的半网格点不吸收。
+	 * @param n 网格点数
+	 * @param begin 起始端吸收边界的网格点数
+	 * @param end 结束端吸收边界的网格点数
+	 * @param shift 网格点相对整网格点的偏移（0或0.5）
+	 * @return 归一化距离的平方
+	 */
+	private float[] profile(int n, int begin, int end, double shift) {
+		float[] d = new float[n];
+		if(npml==0)
+			return d;
+		for(int i=0;i<n;i++) {
+			if(i>=begin && i<n-end)
+				continue;
+			double x = i+shift;
+			double dist = Math.max(Math.max(begin-x, x-(n-end-1)), 0.0);
+			double r = Math.min(dist/npml, 1.0);
+			d[i] = (float) (r*r);
+		}
+		return d;
+	}
+	/**
+	 * 计算网格中一点的数组下标
+	 * @param ix 水平下标（计算网格）
+	 * @param iz 深度下标（计算网格）
+	 * @return 数组下标
+	 */
+	int index(int ix, int iz) {
+		return (ix+m)*stride+iz+m;
+	}
+	/**
+	 * 模型中一点（四舍五入到最近的网格点）的数组下标
+	 * @param x 水平坐标（以网格点为单位）
+	 * @param z 深度坐标（以网格点为单位）
+	 * @return 数组下标
+	 */
+	int modelIndex(float x, float z) {
+		int ix = Math.round(x);
+		int iz = Math.round(z);
+		if(ix<0 || ix>=nx || iz<0 || iz>=nz)
+			throw new ArithmeticException("震源或检波点的位置超出了模型范围。");
+		return index(ix+npml, iz+ztop);
+	}
+	/**
+	 * 返回数组的长度
+	 * @return 每个参数数组的长度
+	 */
+	int size() {
+		return w.length;
+	}
+	/**
+	 * 返回模型的水平网格点数
+	 * @return 网格点数
+	 */
+	public int getNx() {
+		return nx;
+	}
+	/**
+	 * 返回模型的深度网格点数
+	 * @return 网格点数
+	 */
+	public int getNz() {
+		return nz;
+	}
+	/**
+	 * 返回时间采样
+	 * @return 时间采样
+	 */
+	public float getDt() {
+		return dt;
+	}
+	/**
+	 * 返回水平空间采样
+	 * @return 水平空间采样
+	 */
+	public float getDx() {
+		return dx;
+	}
+	/**
+	 * 返回深度空间采样
+	 * @return 深度空间采样
+	 */
+	public float getDz() {
+		return dz;
+	}
+	/**
+	 * 返回吸收边界的网格点数
+	 * @return 网格点数
+	 */
+	public int getNpml() {
+		return npml;
+	}
+	/**
+	 * 返回空间有限差分阶数
+	 * @return 阶数
+	 */
+	public int getOrder() {
+		return order;
+	}
+	/**
+	 * 是否采用自由表面
+	 * @return 是否采用自由表面
+	 */
+	public boolean isFreeSurface() {
+		return free;
+	}
+	/**
+	 * 是否有密度
+	 * @return 是否有密度
+	 */
+	public boolean hasDensity() {
+		return density!=null;
+	}
+	/**
+	 * 是否有速度扰动
+	 * @return 是否有速度扰动
+	 */
+	public boolean hasPerturbation() {
+		return perturbation!=null;
+	}
+	/**
+	 * 返回频散优化的最高频率
+	 * @return 最高频率，0表示使用泰勒展开系数
+	 */
+	public float getMaxFrequency() {
+		return fmax;
+	}
+}
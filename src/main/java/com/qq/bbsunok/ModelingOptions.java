@@ -0,0 +1,179 @@
+package com.qq.bbsunok;
+import java.nio.file.Path;
+/**
+ * 有限差分模拟的计算选项。
+ * <p>
+ * 这些选项只影响计算的方式（并行、内存和重复计算之间的取舍），除有损压缩的快照存储和频散优化的差分系数外不影响模拟的结果。
+ * @author bbsun
+ *
+ */
+public final class ModelingOptions {
+	/**
+	 * 伴随计算中按时间倒序得到正演波场的方法
+	 */
+	public enum Reconstruction {
+		/**
+		 * 二项式检查点：保存若干个完整的波场，其余时刻重新正演
+		 */
+		CHECKPOINTING,
+		/**
+		 * 边界保存：每个时间步只保存模型边界的条带，伴随时倒推正演波场
+		 */
+		BOUNDARY_SAVING,
+		/**
+		 * 快照存储：每个时间步的波场压缩后保存在内存映射文件中，伴随时倒序预读
+		 */
+		SNAPSHOT_STORE
+	}
+	/**
+	 * 伴随计算默认的检查点个数
+	 */
+	public static final int DEFAULT_SNAPSHOTS = 20;
+	/**
+	 * 一炮内部并行计算的线程数
+	 */
+	private int threads = 1;
+	/**
+	 * 伴随计算时内存中保存的正演波场检查点个数
+	 */
+	private int snapshots = DEFAULT_SNAPSHOTS;
+	/**
+	 * 伴随计算中正演波场的重建方法
+	 */
+	private Reconstruction reconstruction = Reconstruction.CHECKPOINTING;
+	/**
+	 * 快照存储的压缩方式
+	 */
+	private SnapshotStore.Compression compression = SnapshotStore.Compression.LOSSLESS;
+	/**
+	 * 位平面截断时保留的尾数位数
+	 */
+	private int mantissaBits = 23;
+	/**
+	 * 快照存储的临时目录，null为系统的临时目录
+	 */
+	private Path scratchDirectory;
+	/**
+	 * 频散优化的最高频率，0为泰勒展开系数
+	 */
+	private float maxFrequency;
+	/**
+	 * 设置一炮内部并行计算的线程数，计算网格按行分为同样多的条带
+	 * @param threads 线程数
+	 * @return 本对象
+	 */
+	public ModelingOptions setThreads(int threads) {
+		if(threads<1)
+			throw new ArithmeticException("线程数必须为正整数");
+		this.threads = threads;
+		return this;
+	}
+	/**
+	 * 设置伴随计算时内存中保存的正演波场检查点个数。
+	 * 每个检查点保存两个时刻的波场；检查点越少，需要重新正演的步数越多。
+	 * @param snapshots 检查点个数
+	 * @return 本对象
+	 */
+	public ModelingOptions setSnapshots(int snapshots) {
+		if(snapshots<0)
+			throw new ArithmeticException("检查点个数不能为负数");
+		this.snapshots = snapshots;
+		return this;
+	}
+	/**
+	 * 设置伴随计算中正演波场的重建方法。
+	 * 边界保存不需要重新正演，内存与模型的周长和时间采样点数成正比，适用于模型内部没有衰减的标量波动方程。
+	 * @param reconstruction 重建方法
+	 * @return 本对象
+	 */
+	public ModelingOptions setReconstruction(Reconstruction reconstruction) {
+		if(reconstruction==null)
+			throw new ArithmeticException("重建方法不能为空");
+		this.reconstruction = reconstruction;
+		return this;
+	}
+	/**
+	 * 设置快照存储的压缩方式
+	 * @param compression 压缩方式
+	 * @param mantissaBits {@link SnapshotStore.Compression#BIT_PLANE}时保留的尾数位数（0...23）
+	 * @return 本对象
+	 */
+	public ModelingOptions setCompression(SnapshotStore.Compression compression, int mantissaBits) {
+		if(compression==null)
+			throw new ArithmeticException("压缩方式不能为空");
+		if(mantissaBits<0 || mantissaBits>23)
+			throw new ArithmeticException("保留的尾数位数必须在0到23之间");
+		this.compression  = compression;
+		this.mantissaBits = mantissaBits;
+		return this;
+	}
+	/**
+	 * 设置快照存储的临时目录
+	 * @param scratchDirectory 目录，null为系统的临时目录
+	 * @return 本对象
+	 */
+	public ModelingOptions setScratchDirectory(Path scratchDirectory) {
+		this.scratchDirectory = scratchDirectory;
+		return this;
+	}
+	/**
+	 * 设置频散优化的最高频率，只用于由模型集合构造模型网格的模拟，见{@link ModelGrid.Builder#maxFrequency(float)}
+	 * @param maxFrequency 最高频率，0为泰勒展开系数
+	 * @return 本对象
+	 */
+	public ModelingOptions setMaxFrequency(float maxFrequency) {
+		if(!(maxFrequency>=0.0f))
+			throw new ArithmeticException("最高频率不能为负数");
+		this.maxFrequency = maxFrequency;
+		return this;
+	}
+	/**
+	 * 返回一炮内部并行计算的线程数
+	 * @return 线程数
+	 */
+	public int getThreads() {
+		return threads;
+	}
+	/**
+	 * 返回伴随计算时内存中保存的正演波场检查点个数
+	 * @return 检查点个数
+	 */
+	public int getSnapshots() {
+		return snapshots;
+	}
+	/**
+	 * 返回伴随计算中正演波场的重建方法
+	 * @return 重建方法
+	 */
+	public Reconstruction getReconstruction() {
+		return reconstruction;
+	}
+	/**
+	 * 返回快照存储的压缩方式
+	 * @return 压缩方式
+	 */
+	public SnapshotStore.Compression getCompression() {
+		return compression;
+	}
+	/**
+	 * 返回位平面截断时保留的尾数位数
+	 * @return 尾数位数
+	 */
+	public int getMantissaBits() {
+		return mantissaBits;
+	}
+	/**
+	 * 返回快照存储的临时目录
+	 * @return 目录，null为系统的临时目录
+	 */
+	public Path getScratchDirectory() {
+		return scratchDirectory;
+	}
+	/**
+	 * 返回频散优化的最高频率
+	 * @return 最高频率，0为泰勒展开系数
+	 */
+	public float getMaxFrequency() {
+		return maxFrequency;
+	}
+}
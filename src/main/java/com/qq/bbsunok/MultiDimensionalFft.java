@@ -0,0 +1,157 @@
+package com.qq.bbsunok;
+import java.util.concurrent.ForkJoinPool;
+import com.qq.bbsunok.FastFourierTransform.Type;
+/**
+ * 二维和三维快速傅里叶变换，用于f-k和f-kx-ky域处理。
+ * <p>
+ * 复数数据按行交错存放，二维为[n2][2*n1]，三维为[n3][n2][2*n1]，第一维（快轴）连续。
+ * 快轴上的变换直接按行并行计算；慢轴上的变换每次取相邻的若干列，
+ * 按块转置到每个线程自己的连续缓冲区中变换后再写回，避免跨行的跳跃访问。
+ * 行和列块都在公共的ForkJoinPool中并行计算。
+ * @author bbsun
+ *
+ */
+public final class MultiDimensionalFft {
+	/**
+	 * 慢轴变换时每块的列数（复数个数）
+	 */
+	private static final int BLOCK = 16;
+	/**
+	 * 快轴变换时每个子任务至少处理的样点数
+	 */
+	private static final int MIN_SAMPLES_PER_TASK = 1<<15;
+	/**
+	 * 每个线程的转置缓冲区
+	 */
+	private static final ThreadLocal<float[]> BUFFER = ThreadLocal.withInitial(() -> new float[0]);
+	/**
+	 * 二维复数原位变换
+	 * @param c 输入(输出）数组 [n2][2*n1]
+	 * @param type 变换类型
+	 */
+	public static void run2D(float[][] c, Type type) {
+		int n1 = c[0].length/2;
+		rows(c, FftPlan.get(n1, type));
+		columns(new float[][][] {c}, n1, FftPlan.get(c.length, type));
+	}
+	/**
+	 * 三维复数原位变换
+	 * @param c 输入(输出）数组 [n3][n2][2*n1]
+	 * @param type 变换类型
+	 */
+	public static void run3D(float[][][] c, Type type) {
+		int n3 = c.length;
+		int n2 = c[0].length;
+		int n1 = c[0][0].length/2;
+		float[][] all = new float[n3*n2][];
+		for(int i3=0;i3<n3;i3++)
+			System.arraycopy(c[i3], 0, all, i3*n2, n2);
+		rows(all, FftPlan.get(n1, type));
+		columns(c, n1, FftPlan.get(n2, type));
+		// 第三维的“行”为c[i3][i2]，i2固定时按i3排列
+		float[][][] slabs = new float[n2][n3][];
+		for(int i2=0;i2<n2;i2++)
+			for(int i3=0;i3<n3;i3++)
+				slabs[i2][i3] = c[i3][i2];
+		columns(slabs, n1, FftPlan.get(n3, type));
+	}
+	/**
+	 * 二维实数对复数正变换，快轴只保留n1/2+1个非负频率
+	 * @param x 实数输入数组 [n2][n1]，例如[nx][nt]的炮集
+	 * @return 复数频谱 [n2][2*(n1/2+1)]
+	 */
+	public static float[][] realToComplex2D(float[][] x) {
+		int n1 = x[0].length;
+		RealFftPlan plan = RealFftPlan.get(n1);
+		float[][] c = new float[x.length][2*plan.getSpectrumLength()];
+		BatchFft.parallelFor(ForkJoinPool.commonPool(), x.length, grain(n1), i -> plan.forward(x[i], 0, c[i], 0));
+		columns(new float[][][] {c}, plan.getSpectrumLength(), FftPlan.get(x.length, Type.FORWARD));
+		return c;
+	}
+	/**
+	 * 二维复数对实数反变换，是{@link #realToComplex2D(float[][])}的逆运算
+	 * @param c 复数频谱 [n2][2*(n1/2+1)]，计算中会被修改
+	 * @param x 实数输出数组 [n2][n1]
+	 */
+	public static void complexToReal2D(float[][] c, float[][] x) {
+		int n1 = x[0].length;
+		RealFftPlan plan = RealFftPlan.get(n1);
+		columns(new float[][][] {c}, plan.getSpectrumLength(), FftPlan.get(c.length, Type.BACKWARD));
+		BatchFft.parallelFor(ForkJoinPool.commonPool(), x.length, grain(n1), i -> plan.inverse(c[i], 0, x[i], 0));
+	}
+	/**
+	 * 沿快轴并行变换每一行
+	 * @param rows 行数组，每行交错存放n1个复数
+	 * @param plan 变换计划
+	 */
+	private static void rows(float[][] rows, FftPlan plan) {
+		BatchFft.parallelFor(ForkJoinPool.commonPool(), rows.length, grain(plan.getLength()), i -> plan.execute(rows[i], 0, 1));
+	}
+	/**
+	 * 沿慢轴变换，每个任务处理一个片中的一个列块
+	 * @param slabs 片数组，每片的行数等于变换长度
+	 * @param n1 每行的复数个数
+	 * @param plan 变换计划
+	 */
+	private static void columns(float[][][] slabs, int n1, FftPlan plan) {
+		int nb = (n1+BLOCK-1)/BLOCK;
+		BatchFft.parallelFor(ForkJoinPool.commonPool(), slabs.length*nb, 1, t -> {
+			int i0 = (t%nb)*BLOCK;
+			columnBlock(slabs[t/nb], i0, Math.min(BLOCK, n1-i0), plan);
+		});
+	}
+	/**
+	 * 将一个列块转置到连续缓冲区中变换后再写回
+	 * @param rows 行数组
+	 * @param i0 第一列的下标（以复数为单位）
+	 * @param nb 列数
+	 * @param plan 变换计划
+	 */
+	private static void columnBlock(float[][] rows, int i0, int nb, FftPlan plan) {
+		int n  = rows.length;
+		float[] b = buffer(2*n*nb);
+		for(int j=0;j<n;j++) {
+			float[] r = rows[j];
+			for(int k=0,i=2*i0,d=2*j;k<nb;k++,i+=2,d+=2*n) {
+				b[d]   = r[i];
+				b[d+1] = r[i+1];
+			}
+		}
+		for(int k=0;k<nb;k++)
+			plan.execute(b, 2*k*n, 1);
+		for(int j=0;j<n;j++) {
+			float[] r = rows[j];
+			for(int k=0,i=2*i0,d=2*j;k<nb;k++,i+=2,d+=2*n) {
+				r[i]   = b[d];
+				r[i+1] = b[d+1];
+			}
+		}
+	}
+	/**
+	 * 快轴变换每个子任务处理的行数
+	 * @param n1 每行的样点数
+	 * @return 行数
+	 */
+	private static int grain(int n1) {
+		return Math.max(1, MIN_SAMPLES_PER_TASK/Math.max(n1,1));
+	}
+	/**
+	 * 返回当前线程的转置缓冲区
+	 * @param size 需要的最小长度
+	 * @return 缓冲区
+	 */
+	private static float[] buffer(int size) {
+		float[] b = BUFFER.get();
+		if(b.length<size) {
+			b = new float[size];
+			BUFFER.set(b);
+		}
+		return b;
+	}
+	/**
+	 * 私有构造器
+	 */
+	private MultiDimensionalFft() {
+
+	}
+}
@@ -0,0 +1,229 @@
+package com.qq.bbsunok;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+/**
+ * 多炮并行的标量波动方程正演模拟。
+ * <p>
+ * 各炮之间只共享速度模型。模型（{@link ModelGrid}中的v^2*dt^2和差分系数，以及吸收边界系数）只构造一次，
+ * 所有线程只读地共享；每个工作线程使用自己的波场，波场用完后放回池中供下一炮使用。
+ * 同时模拟的炮数不超过线程数，也不超过内存预算能容纳的波场个数。
+ * 长记录、密集检波点时各炮的记录可以写入{@link ReceiverSink}，不在内存中保存。
+ * @author bbsun
+ *
+ */
+public final class MultiShotModeling {
+	/**
+	 * 一炮的观测系统、震源子波和地震记录
+	 */
+	public static final class Shot {
+		/**
+		 * 震源位置坐标（以网格点为单位）
+		 */
+		private final float[] sx;
+		/**
+		 * 震源位置坐标（以网格点为单位）
+		 */
+		private final float[] sz;
+		/**
+		 * 接收点坐标（以网格点为单位）
+		 */
+		private final float[] rx;
+		/**
+		 * 接收点坐标（以网格点为单位）
+		 */
+		private final float[] rz;
+		/**
+		 * 震源子波 [ns][nt]
+		 */
+		private final float[][] sou;
+		/**
+		 * 地震记录 [nr][nt]，记录写入输出时为null
+		 */
+		private final float[][] rec;
+		/**
+		 * 检波点记录的输出
+		 */
+		private final ReceiverSink sink;
+		/**
+		 * 构造函数
+		 * @param sx 震源位置坐标（以网格点为单位）
+		 * @param sz 震源位置坐标（以网格点为单位）
+		 * @param rx 接收点坐标（以网格点为单位）
+		 * @param rz 接收点坐标（以网格点为单位）
+		 * @param sou 震源子波 [ns][nt]
+		 * @param rec 地震记录 [nr][nt]，模拟结果写入其中
+		 */
+		public Shot(float[] sx, float[] sz, float[] rx, float[] rz, float[][] sou, float[][] rec) {
+			this.sx   = sx;
+			this.sz   = sz;
+			this.rx   = rx;
+			this.rz   = rz;
+			this.sou  = sou;
+			this.rec  = rec;
+			this.sink = ReceiverSink.of(rec);
+		}
+		/**
+		 * 构造函数，记录在时间循环中按时间块写入输出（例如{@link MappedReceiverSink}），
+		 * 不在内存中保存整炮的记录。同时模拟的各炮必须使用不同的输出。
+		 * @param sx 震源位置坐标（以网格点为单位）
+		 * @param sz 震源位置坐标（以网格点为单位）
+		 * @param rx 接收点坐标（以网格点为单位）
+		 * @param rz 接收点坐标（以网格点为单位）
+		 * @param sou 震源子波 [ns][nt]
+		 * @param sink 检波点记录的输出
+		 */
+		public Shot(float[] sx, float[] sz, float[] rx, float[] rz, float[][] sou, ReceiverSink sink) {
+			this.sx   = sx;
+			this.sz   = sz;
+			this.rx   = rx;
+			this.rz   = rz;
+			this.sou  = sou;
+			this.rec  = null;
+			this.sink = sink;
+		}
+		/**
+		 * 返回地震记录
+		 * @return 地震记录 [nr][nt]，记录写入输出时为null
+		 */
+		public float[][] getRecord() {
+			return rec;
+		}
+	}
+	/**
+	 * 共享的模型，同时也是池中的第一个传播器
+	 */
+	private final ScalarWavePropagator model;
+	/**
+	 * 空闲的传播器
+	 */
+	private final ConcurrentLinkedQueue<ScalarWavePropagator> idle = new ConcurrentLinkedQueue<>();
+	/**
+	 * 最多使用的线程数
+	 */
+	private final int threads;
+	/**
+	 * 波场可以使用的内存（字节）
+	 */
+	private final long memoryBudget;
+	/**
+	 * 最近一次模拟的网格点更新速度
+	 */
+	private volatile double cellsPerSecond;
+	/**
+	 * 构造函数，线程数为处理器个数，内存预算为最大堆内存的一半
+	 * @param dt 时间采样
+	 * @param dx 水平空间采样
+	 * @param dz 深度空间采样
+	 * @param npml 吸收边界的网格点数
+	 * @param order 空间有限差分阶数，(2,4,6,8,10)
+	 * @param free 是否采用自由表面边界条件
+	 * @param v 速度 [nx][nz]
+	 */
+	public MultiShotModeling(float dt, float dx, float dz, int npml, int order, boolean free, float[][] v) {
+		this(dt, dx, dz, npml, order, free, v, Runtime.getRuntime().availableProcessors(), Runtime.getRuntime().maxMemory()/2);
+	}
+	/**
+	 * 构造函数
+	 * @param dt 时间采样
+	 * @param dx 水平空间采样
+	 * @param dz 深度空间采样
+	 * @param npml 吸收边界的网格点数
+	 * @param order 空间有限差分阶数，(2,4,6,8,10)
+	 * @param free 是否采用自由表面边界条件
+	 * @param v 速度 [nx][nz]
+	 * @param threads 最多使用的线程数
+	 * @param memoryBudget 所有波场可以使用的内存（字节），不包括共享的模型
+	 */
+	public MultiShotModeling(float dt, float dx, float dz, int npml, int order, boolean free, float[][] v, int threads, long memoryBudget) {
+		this(new ModelGrid.Builder(dt, dx, dz, npml, order, free).velocity(v).build(), threads, memoryBudget);
+	}
+	/**
+	 * 构造函数
+	 * @param grid 模型网格，所有炮只读地共享
+	 * @param threads 最多使用的线程数
+	 * @param memoryBudget 所有波场可以使用的内存（字节），不包括共享的模型
+	 */
+	public MultiShotModeling(ModelGrid grid, int threads, long memoryBudget) {
+		if(threads<1)
+			throw new ArithmeticException("线程数必须为正整数");
+		this.model        = new ScalarWavePropagator(grid);
+		this.threads      = threads;
+		this.memoryBudget = memoryBudget;
+		if(memoryBudget<model.getWavefieldBytes())
+			throw new ArithmeticException("内存预算不足以模拟一炮");
+		idle.add(model);
+	}
+	/**
+	 * 返回同时模拟的炮数
+	 * @param nshots 总炮数
+	 * @return 同时模拟的炮数
+	 */
+	public int getConcurrency(int nshots) {
+		long byMemory = memoryBudget/model.getWavefieldBytes();
+		return (int) Math.max(1, Math.min(Math.min(threads, byMemory), nshots));
+	}
+	/**
+	 * 返回最近一次模拟所有炮合计的网格点更新速度
+	 * @return 每秒更新的网格点数
+	 */
+	public double getCellsPerSecond() {
+		return cellsPerSecond;
+	}
+	/**
+	 * 模拟所有炮，结果写入每一炮的地震记录
+	 * <p>
+	 * 某一炮失败时抛出它的异常，尚未开始的炮被取消，正在模拟的炮被中断，在下一个记录块处中止。
+	 * @param shots 炮集
+	 */
+	public void run(List<Shot> shots) {
+		int concurrency = getConcurrency(shots.size());
+		// 池中多余的波场超出了本次的并发数时释放
+		while(idle.size()>concurrency)
+			idle.poll();
+		ExecutorService pool = Executors.newFixedThreadPool(concurrency);
+		long start = System.nanoTime();
+		long cells = 0;
+		try {
+			List<Future<?>> futures = new ArrayList<>(shots.size());
+			for(Shot shot: shots) {
+				futures.add(pool.submit(() -> runShot(shot)));
+				cells += model.getCellCount()*(shot.sou.length>0?shot.sou[0].length:0);
+			}
+			for(Future<?> f: futures)
+				f.get();
+		} catch(InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IllegalStateException("多炮模拟被中断", e);
+		} catch(ExecutionException e) {
+			Throwable cause = e.getCause();
+			if(cause instanceof RuntimeException)
+				throw (RuntimeException) cause;
+			throw new IllegalStateException(cause);
+		} finally {
+			pool.shutdownNow();
+		}
+		long elapsed = Math.max(System.nanoTime()-start, 1L);
+		cellsPerSecond = cells/(elapsed*1.0e-9);
+	}
+	/**
+	 * 使用池中的一个传播器模拟一炮
+	 * @param shot 一炮
+	 */
+	private void runShot(Shot shot) {
+		ScalarWavePropagator propagator = idle.poll();
+		if(propagator==null)
+			propagator = new ScalarWavePropagator(model);
+		try {
+			propagator.setSources(shot.sx, shot.sz);
+			propagator.setReceivers(shot.rx, shot.rz);
+			propagator.forward(shot.sou, shot.sink);
+		} finally {
+			idle.offer(propagator);
+		}
+	}
+}
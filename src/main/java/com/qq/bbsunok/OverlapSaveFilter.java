@@ -0,0 +1,180 @@
+package com.qq.bbsunok;
+/**
+ * 长数据流的因果FIR滤波，y[i] = sum h[j]*x[i-j]，j=0...lh-1。
+ * <p>
+ * 使用重叠保留（overlap-save）算法：每次变换的前lh-1个样点是上一块留下的输入，
+ * 后面是新的输入，反变换后丢掉受循环卷积影响的前lh-1个样点，其余就是这一块的输出。
+ * 滤波器的频谱、变换计划和缓冲区在构造时分配一次，输入可以分成任意长度的块依次送入，
+ * 占用的内存只与滤波器长度有关。流开始之前的输入看作零。
+ * 对象保存了流的状态，不能被多个线程同时使用。
+ * @author bbsun
+ *
+ */
+public final class OverlapSaveFilter {
+	/**
+	 * 输出样点的处理
+	 */
+	public interface OutputConsumer {
+		/**
+		 * 处理一段输出
+		 * @param first 第一个输出样点的序号
+		 * @param y 输出数组，在下一次输出时会被重用
+		 * @param offset 第一个输出样点在y中的下标
+		 * @param n 输出的样点数
+		 */
+		void accept(long first, float[] y, int offset, int n);
+	}
+	/**
+	 * 滤波器的长度
+	 */
+	private final int lh;
+	/**
+	 * 变换长度
+	 */
+	private final int nfft;
+	/**
+	 * 每块新输入的样点数
+	 */
+	private final int block;
+	/**
+	 * 实数变换计划
+	 */
+	private final RealFftPlan plan;
+	/**
+	 * 滤波器的频谱，交错存放
+	 */
+	private final float[] h;
+	/**
+	 * 输入缓冲区，前lh-1个样点为上一块留下的输入
+	 */
+	private final float[] input;
+	/**
+	 * 变换的工作数组，前nfft个样点为输出
+	 */
+	private final float[] work;
+	/**
+	 * 缓冲区中新输入的样点数
+	 */
+	private int count;
+	/**
+	 * 已经输入的样点数
+	 */
+	private long received;
+	/**
+	 * 已经输出的样点数
+	 */
+	private long emitted;
+	/**
+	 * 构造函数，变换长度约为滤波器长度的4倍
+	 * @param h 滤波器
+	 */
+	public OverlapSaveFilter(float[] h) {
+		this(h, FftPlan.fastLength(Math.max(4*h.length, 64)));
+	}
+	/**
+	 * 构造函数
+	 * @param h 滤波器
+	 * @param nfft 变换长度，不小于滤波器长度
+	 */
+	public OverlapSaveFilter(float[] h, int nfft) {
+		if(h.length<1 || nfft<h.length)
+			throw new ArithmeticException("变换长度不能小于滤波器的长度");
+		this.lh    = h.length;
+		this.nfft  = nfft;
+		this.block = nfft-lh+1;
+		this.plan  = RealFftPlan.get(nfft);
+		int nc = 2*plan.getSpectrumLength();
+		this.h     = new float[nc];
+		this.input = new float[nfft];
+		this.work  = new float[nfft+nc];
+		System.arraycopy(h, 0, work, 0, lh);
+		plan.forward(work, 0, this.h, 0);
+		reset();
+	}
+	/**
+	 * 返回滤波器的长度
+	 * @return 滤波器的长度
+	 */
+	public int getFilterLength() {
+		return lh;
+	}
+	/**
+	 * 返回变换长度
+	 * @return 变换长度
+	 */
+	public int getNfft() {
+		return nfft;
+	}
+	/**
+	 * 输入一块样点
+	 * @param x 样点
+	 * @param consumer 输出样点的处理
+	 */
+	public void process(float[] x, OutputConsumer consumer) {
+		process(x, 0, x.length, consumer);
+	}
+	/**
+	 * 输入一块样点，每凑满一块就输出对应的滤波结果
+	 * @param x 样点数组
+	 * @param offset 第一个样点的下标
+	 * @param length 样点数
+	 * @param consumer 输出样点的处理
+	 */
+	public void process(float[] x, int offset, int length, OutputConsumer consumer) {
+		if(offset<0 || length<0 || offset+(long)length>x.length)
+			throw new ArithmeticException("数组的长度或偏移不正确");
+		received += length;
+		while(length>0) {
+			int m = Math.min(length, block-count);
+			System.arraycopy(x, offset, input, lh-1+count, m);
+			count  += m;
+			offset += m;
+			length -= m;
+			if(count==block)
+				emit(block, consumer);
+		}
+	}
+	/**
+	 * 结束输入，输出剩余的结果（包括长度为lh-1的尾部），然后重置流的状态
+	 * @param consumer 输出样点的处理
+	 */
+	public void flush(OutputConsumer consumer) {
+		long total = received>0?received+lh-1:0;
+		while(emitted<total) {
+			for(int i=lh-1+count;i<nfft;i++)
+				input[i] = 0.0f;
+			emit((int) Math.min(block, total-emitted), consumer);
+		}
+		reset();
+	}
+	/**
+	 * 丢弃保存的样点，重新开始一个新的流
+	 */
+	public void reset() {
+		for(int i=0;i<lh-1;i++)
+			input[i] = 0.0f;
+		count    = 0;
+		received = 0;
+		emitted  = 0;
+	}
+	/**
+	 * 滤波缓冲区中的一块并保留最后lh-1个输入
+	 * @param n 输出的样点数
+	 * @param consumer 输出样点的处理
+	 */
+	private void emit(int n, OutputConsumer consumer) {
+		int nc = 2*plan.getSpectrumLength();
+		plan.forward(input, 0, work, nfft);
+		for(int k=nfft,j=0;j<nc;k+=2,j+=2) {
+			float br = work[k];
+			float bi = work[k+1];
+			work[k]   = br*h[j]-bi*h[j+1];
+			work[k+1] = br*h[j+1]+bi*h[j];
+		}
+		plan.inverse(work, nfft, work, 0);
+		consumer.accept(emitted, work, lh-1, n);
+		emitted += n;
+		System.arraycopy(input, block, input, 0, lh-1);
+		count = 0;
+	}
+}
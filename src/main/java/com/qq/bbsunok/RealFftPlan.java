@@ -0,0 +1,279 @@
+package com.qq.bbsunok;
+import java.nio.FloatBuffer;
+import java.util.concurrent.ConcurrentHashMap;
+import com.qq.bbsunok.FastFourierTransform.Type;
+/**
+ * 实数快速傅里叶变换计划。
+ * <p>
+ * 实信号的频谱满足共轭对称，只需保存n/2+1个频率样点（交错存放的实部和虚部）。
+ * 长度为偶数时，将实信号的偶数点和奇数点看作一个长度为n/2的复信号，
+ * 调用{@link FftPlan}计算后再用旋转因子分离出实信号的频谱，计算量约为复数变换的一半；
+ * 长度为奇数时直接使用长度为n的复数变换。
+ * <p>
+ * 正变换不归一化，反变换乘以1/n，与{@link FastFourierTransform}一致。
+ * 数据既可以在Java数组中，也可以在{@link FloatBuffer}（包括内存映射文件）中，
+ * 缓冲区中的数据经当前线程的工作数组复制后计算。
+ * 计划对象创建后不再修改，可被多个线程共享。
+ * @author bbsun
+ *
+ */
+public final class RealFftPlan {
+	/**
+	 * 计划缓存，键为变换长度
+	 */
+	private static final ConcurrentHashMap<Integer, RealFftPlan> CACHE = new ConcurrentHashMap<>();
+	/**
+	 * 变换长度
+	 */
+	private final int n;
+	/**
+	 * 复数变换的正变换计划，偶数长度时为n/2，奇数长度时为n
+	 */
+	private final FftPlan forward;
+	/**
+	 * 复数变换的反变换计划
+	 */
+	private final FftPlan backward;
+	/**
+	 * 分离频谱使用的旋转因子exp(-2πik/n)，交错存放，k=0...n/2-1
+	 */
+	private final float[] w;
+	/**
+	 * 除数据之外变换需要的工作数组长度
+	 */
+	private final int work;
+	/**
+	 * 得到（缓存的）实数快速傅里叶变换计划
+	 * @param n 变换长度
+	 * @return 变换计划
+	 */
+	public static RealFftPlan get(int n) {
+		RealFftPlan plan = CACHE.get(n);
+		if(plan==null) {
+			plan = new RealFftPlan(n);
+			RealFftPlan old = CACHE.putIfAbsent(n, plan);
+			if(old!=null)
+				plan = old;
+		}
+		return plan;
+	}
+	/**
+	 * 构造函数
+	 * @param n 变换长度
+	 */
+	private RealFftPlan(int n) {
+		if(n<1)
+			throw new ArithmeticException("数组的长度必须为正整数");
+		this.n = n;
+		int nc = n%2==0?n/2:n;
+		forward  = FftPlan.get(nc, Type.FORWARD);
+		backward = FftPlan.get(nc, Type.BACKWARD);
+		if(n%2==0) {
+			w = new float[n];
+			for(int k=0;k<n/2;k++) {
+				double a = -2.0*Math.PI*k/n;
+				w[2*k]   = (float) Math.cos(a);
+				w[2*k+1] = (float) Math.sin(a);
+			}
+			work = forward.getWorkLength();
+		} else {
+			w = null;
+			work = 2*n+forward.getWorkLength();
+		}
+	}
+	/**
+	 * 返回变换长度
+	 * @return 变换长度
+	 */
+	public int getLength() {
+		return n;
+	}
+	/**
+	 * 返回频率样点数n/2+1
+	 * @return 频率样点数
+	 */
+	public int getSpectrumLength() {
+		return n/2+1;
+	}
+	/**
+	 * 返回除数据之外变换需要的工作数组长度
+	 * @return 工作数组长度
+	 */
+	int getWorkLength() {
+		return work;
+	}
+	/**
+	 * 实数对复数的正变换
+	 * @param x 实数输入数组
+	 * @param xOffset 第一个样点的下标
+	 * @param c 输出的频谱，交错存放n/2+1个复数
+	 * @param cOffset 第一个频率样点实部的下标
+	 */
+	public void forward(float[] x, int xOffset, float[] c, int cOffset) {
+		checkRange(x.length, xOffset, n);
+		checkRange(c.length, cOffset, 2*getSpectrumLength());
+		forward(x, xOffset, c, cOffset, FftPlan.workspace(work), 0);
+	}
+	/**
+	 * 实数对复数的正变换，数据在缓冲区（例如内存映射文件）中
+	 * <p>
+	 * 变换只在数组上实现：输入整块读入当前线程的工作数组，频谱整块写回，不分配新的数组，
+	 * 代价是每道多读写一遍缓冲区。
+	 * @param x 实数输入缓冲区
+	 * @param xOffset 第一个样点的下标
+	 * @param c 输出的频谱缓冲区，交错存放n/2+1个复数，可以与x相同
+	 * @param cOffset 第一个频率样点实部的下标
+	 */
+	public void forward(FloatBuffer x, int xOffset, FloatBuffer c, int cOffset) {
+		int nc = 2*getSpectrumLength();
+		checkRange(x.limit(), xOffset, n);
+		checkRange(c.limit(), cOffset, nc);
+		float[] s = FftPlan.workspace(nc+work);
+		x.get(xOffset, s, 0, n);
+		forward(s, 0, s, 0, s, nc);
+		c.put(cOffset, s, 0, nc);
+	}
+	/**
+	 * 实数对复数的正变换
+	 * @param x 实数输入数组
+	 * @param xOffset 第一个样点的下标
+	 * @param c 输出的频谱
+	 * @param cOffset 第一个频率样点实部的下标
+	 * @param t 工作数组，长度至少为{@link #getWorkLength()}
+	 * @param to 工作数组的起始下标
+	 */
+	private void forward(float[] x, int xOffset, float[] c, int cOffset, float[] t, int to) {
+		if(n%2!=0) {
+			for(int i=0;i<n;i++) {
+				t[to+2*i]   = x[xOffset+i];
+				t[to+2*i+1] = 0.0f;
+			}
+			forward.transform(t, to, t, to+2*n);
+			System.arraycopy(t, to, c, cOffset, 2*getSpectrumLength());
+			return;
+		}
+		int h = n/2;
+		// 偶数点作为实部、奇数点作为虚部，正好是交错存放的复数
+		System.arraycopy(x, xOffset, c, cOffset, n);
+		forward.transform(c, cOffset, t, to);
+		float z0r = c[cOffset];
+		float z0i = c[cOffset+1];
+		c[cOffset]     = z0r+z0i;
+		c[cOffset+1]   = 0.0f;
+		c[cOffset+n]   = z0r-z0i;
+		c[cOffset+n+1] = 0.0f;
+		for(int k=1;k<=h/2;k++) {
+			int i = cOffset+2*k;
+			int j = cOffset+2*(h-k);
+			float ar = c[i];
+			float ai = c[i+1];
+			float br = c[j];
+			float bi = c[j+1];
+			// E=(Z[k]+conj(Z[h-k]))/2, O=(Z[k]-conj(Z[h-k]))/(2i)
+			float er = 0.5f*(ar+br);
+			float ei = 0.5f*(ai-bi);
+			float or = 0.5f*(ai+bi);
+			float oi = -0.5f*(ar-br);
+			float wr = w[2*k];
+			float wi = w[2*k+1];
+			float tr = wr*or-wi*oi;
+			float ti = wr*oi+wi*or;
+			// X[k]=E+W*O, X[h-k]=conj(E-W*O)
+			c[i]   = er+tr;
+			c[i+1] = ei+ti;
+			c[j]   = er-tr;
+			c[j+1] = -(ei-ti);
+		}
+	}
+	/**
+	 * 复数对实数的反变换
+	 * @param c 输入的频谱，交错存放n/2+1个复数
+	 * @param cOffset 第一个频率样点实部的下标
+	 * @param x 实数输出数组
+	 * @param xOffset 第一个样点的下标
+	 */
+	public void inverse(float[] c, int cOffset, float[] x, int xOffset) {
+		checkRange(c.length, cOffset, 2*getSpectrumLength());
+		checkRange(x.length, xOffset, n);
+		inverse(c, cOffset, x, xOffset, FftPlan.workspace(work), 0);
+	}
+	/**
+	 * 复数对实数的反变换，数据在缓冲区（例如内存映射文件）中
+	 * <p>
+	 * 与{@link #forward(FloatBuffer, int, FloatBuffer, int)}相同，数据经工作数组复制，不直接在缓冲区上计算。
+	 * @param c 输入的频谱缓冲区，交错存放n/2+1个复数
+	 * @param cOffset 第一个频率样点实部的下标
+	 * @param x 实数输出缓冲区，可以与c相同
+	 * @param xOffset 第一个样点的下标
+	 */
+	public void inverse(FloatBuffer c, int cOffset, FloatBuffer x, int xOffset) {
+		int nc = 2*getSpectrumLength();
+		checkRange(c.limit(), cOffset, nc);
+		checkRange(x.limit(), xOffset, n);
+		float[] s = FftPlan.workspace(nc+n+work);
+		c.get(cOffset, s, 0, nc);
+		inverse(s, 0, s, nc, s, nc+n);
+		x.put(xOffset, s, nc, n);
+	}
+	/**
+	 * 复数对实数的反变换
+	 * @param c 输入的频谱
+	 * @param cOffset 第一个频率样点实部的下标
+	 * @param x 实数输出数组
+	 * @param xOffset 第一个样点的下标
+	 * @param t 工作数组，长度至少为{@link #getWorkLength()}
+	 * @param to 工作数组的起始下标
+	 */
+	private void inverse(float[] c, int cOffset, float[] x, int xOffset, float[] t, int to) {
+		if(n%2!=0) {
+			System.arraycopy(c, cOffset, t, to, 2*getSpectrumLength());
+			t[to+1] = 0.0f;
+			for(int k=1;k<=n/2;k++) {
+				t[to+2*(n-k)]   =  c[cOffset+2*k];
+				t[to+2*(n-k)+1] = -c[cOffset+2*k+1];
+			}
+			backward.transform(t, to, t, to+2*n);
+			for(int i=0;i<n;i++)
+				x[xOffset+i] = t[to+2*i];
+			return;
+		}
+		int h = n/2;
+		float x0 = c[cOffset];
+		float xh = c[cOffset+n];
+		x[xOffset]   = 0.5f*(x0+xh);
+		x[xOffset+1] = 0.5f*(x0-xh);
+		for(int k=1;k<=h/2;k++) {
+			int i = cOffset+2*k;
+			int j = cOffset+2*(h-k);
+			float ar = c[i];
+			float ai = c[i+1];
+			float br = c[j];
+			float bi = c[j+1];
+			// E=(X[k]+conj(X[h-k]))/2, O=(X[k]-conj(X[h-k]))/(2W)
+			float er = 0.5f*(ar+br);
+			float ei = 0.5f*(ai-bi);
+			float dr = 0.5f*(ar-br);
+			float di = 0.5f*(ai+bi);
+			float wr = w[2*k];
+			float wi = w[2*k+1];
+			float or = dr*wr+di*wi;
+			float oi = di*wr-dr*wi;
+			// Z[k]=E+iO, Z[h-k]=conj(E)+i*conj(O)
+			x[xOffset+2*k]       = er-oi;
+			x[xOffset+2*k+1]     = ei+or;
+			x[xOffset+2*(h-k)]   = er+oi;
+			x[xOffset+2*(h-k)+1] = or-ei;
+		}
+		backward.transform(x, xOffset, t, to);
+	}
+	/**
+	 * 检查数组下标范围
+	 * @param length 数组长度
+	 * @param offset 起始下标
+	 * @param size 需要的长度
+	 */
+	private static void checkRange(int length, int offset, int size) {
+		if(offset<0 || offset+(long)size>length)
+			throw new ArithmeticException("数组的长度或偏移与变换计划的长度不一致");
+	}
+}
@@ -0,0 +1,61 @@
+package com.qq.bbsunok;
+/**
+ * 检波点记录的输出。
+ * <p>
+ * 时间循环不再把整炮的记录保存在内存中，而是每积累若干个时间采样就把这一块交给输出。
+ * 块按时间顺序到达，块内按时间采样排列：block[k*nr+ir]为第it0+k个时间采样、第ir道的值。
+ * 一炮的调用顺序为{@link #begin(int, int)}、若干次{@link #write(int, int, float[])}、{@link #end()}。
+ * <p>
+ * 实现：{@link #of(float[][])}写入内存中的数组 [nr][nt]，{@link MappedReceiverSink}异步写入内存映射文件。
+ * @author bbsun
+ *
+ */
+public interface ReceiverSink {
+	/**
+	 * 开始一炮
+	 * @param nr 道数
+	 * @param nt 时间采样点数
+	 */
+	void begin(int nr, int nt);
+	/**
+	 * 写入一块时间采样，返回后调用方可以立即修改block
+	 * @param it0 第一个时间采样的下标
+	 * @param n 时间采样点数
+	 * @param block 数据，block[k*nr+ir]
+	 */
+	void write(int it0, int n, float[] block);
+	/**
+	 * 结束一炮，返回时所有数据已经写出
+	 */
+	void end();
+	/**
+	 * 写入内存中数组的输出
+	 * @param rec 地震记录 [nr][nt]
+	 * @return 输出
+	 */
+	static ReceiverSink of(float[][] rec) {
+		return new ReceiverSink() {
+			@Override
+			public void begin(int nr, int nt) {
+				if(rec.length!=nr)
+					throw new ArithmeticException("地震记录的道数应该与坐标个数一致。");
+				for(float[] trace: rec)
+					if(trace.length<nt)
+						throw new ArithmeticException("地震记录的时间采样点数不足。");
+			}
+			@Override
+			public void write(int it0, int n, float[] block) {
+				int nr = rec.length;
+				for(int ir=0;ir<nr;ir++) {
+					float[] trace = rec[ir];
+					for(int k=0;k<n;k++)
+						trace[it0+k] = block[k*nr+ir];
+				}
+			}
+			@Override
+			public void end() {
+
+			}
+		};
+	}
+}
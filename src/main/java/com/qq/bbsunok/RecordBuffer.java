@@ -0,0 +1,77 @@
+package com.qq.bbsunok;
+/**
+ * 时间循环中检波点记录的缓冲区。
+ * <p>
+ * 每个时间步把检波点处的波场值写入当前块，积累{@value #SAMPLES}个时间采样后交给{@link ReceiverSink}，
+ * 因此一炮的记录在内存中只占一块的大小。
+ * 每写出一块之前检查线程的中断状态，被中断时抛出异常中止时间循环（例如多炮模拟的线程池被关闭时）。
+ * @author bbsun
+ *
+ */
+final class RecordBuffer {
+	/**
+	 * 每块的时间采样点数
+	 */
+	static final int SAMPLES = 64;
+	/**
+	 * 输出
+	 */
+	private final ReceiverSink sink;
+	/**
+	 * 检波点的数组下标
+	 */
+	private final int[] receivers;
+	/**
+	 * 当前块，block[k*nr+ir]
+	 */
+	private final float[] block;
+	/**
+	 * 当前块第一个时间采样的下标
+	 */
+	private int it0;
+	/**
+	 * 当前块已有的时间采样点数
+	 */
+	private int n;
+	/**
+	 * 构造函数，同时开始一炮
+	 * @param sink 输出
+	 * @param receivers 检波点的数组下标
+	 * @param nt 时间采样点数
+	 */
+	RecordBuffer(ReceiverSink sink, int[] receivers, int nt) {
+		this.sink      = sink;
+		this.receivers = receivers;
+		this.block     = new float[Math.max(Math.min(SAMPLES, nt), 1)*receivers.length];
+		sink.begin(receivers.length, nt);
+	}
+	/**
+	 * 记录一个时间采样，时间采样必须按顺序记录
+	 * @param u 波场
+	 */
+	void record(float[] u) {
+		int base = n*receivers.length;
+		for(int ir=0;ir<receivers.length;ir++)
+			block[base+ir] = u[receivers[ir]];
+		if(++n*receivers.length==block.length)
+			flush();
+	}
+	/**
+	 * 写出不足一块的剩余数据并结束一炮
+	 */
+	void end() {
+		flush();
+		sink.end();
+	}
+	/**
+	 * 写出当前块，线程已被中断时中止
+	 */
+	private void flush() {
+		if(Thread.currentThread().isInterrupted())
+			throw new IllegalStateException("模拟被中断");
+		if(n>0)
+			sink.write(it0, n, block);
+		it0 += n;
+		n = 0;
+	}
+}
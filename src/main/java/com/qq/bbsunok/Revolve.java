@@ -0,0 +1,171 @@
+package com.qq.bbsunok;
+/**
+ * 二项式检查点（Griewank的revolve算法）调度。
+ * <p>
+ * 伴随计算需要按时间倒序访问正演的每一个状态。内存中只能保存snapshots个检查点时，
+ * 从最近的检查点重新正演得到需要的状态。对长度为n的区间，取最小的r使得C(s+r,s)&gt;=n，
+ * 第一个检查点的位置按revolve算法选取，左右两侧再递归处理，
+ * 这样每个时间步最多被重复正演r次，总的正演次数在给定检查点个数下最少。
+ * @author bbsun
+ *
+ */
+final class Revolve {
+	/**
+	 * 调度的执行对象
+	 */
+	interface Target {
+		/**
+		 * 回到初始状态（第0步）
+		 */
+		void initial();
+		/**
+		 * 从当前状态正演一步
+		 * @param step 当前状态的步数，正演后为step+1
+		 */
+		void advance(int step);
+		/**
+		 * 将当前状态保存到检查点
+		 * @param slot 检查点编号
+		 */
+		void store(int slot);
+		/**
+		 * 从检查点恢复状态
+		 * @param slot 检查点编号
+		 */
+		void restore(int slot);
+		/**
+		 * 伴随计算一步，当前状态为第step步
+		 * @param step 步数，从steps到1依次调用
+		 */
+		void adjoint(int step);
+	}
+	/**
+	 * 正演的总步数
+	 */
+	private final int steps;
+	/**
+	 * 检查点个数（不包括初始状态）
+	 */
+	private final int snapshots;
+	/**
+	 * 执行对象
+	 */
+	private Target target;
+	/**
+	 * 执行过的正演步数
+	 */
+	private long advances;
+	/**
+	 * 执行对象当前状态的步数，-1表示未知
+	 */
+	private int current;
+	/**
+	 * 构造函数
+	 * @param steps 正演的总步数
+	 * @param snapshots 内存中检查点的个数（不包括初始状态）
+	 */
+	Revolve(int steps, int snapshots) {
+		if(steps<0 || snapshots<0)
+			throw new ArithmeticException("步数和检查点个数不能为负数");
+		this.steps     = steps;
+		this.snapshots = snapshots;
+	}
+	/**
+	 * 按调度执行，依次对第steps...1步调用{@link Target#adjoint(int)}
+	 * @param target 执行对象
+	 * @return 执行的正演步数
+	 */
+	long run(Target target) {
+		this.target   = target;
+		this.advances = 0;
+		this.current  = -1;
+		reverse(0, steps, -1, snapshots);
+		this.target   = null;
+		return advances;
+	}
+	/**
+	 * 最优的第一个检查点位置（revolve算法中的numforw）
+	 * <p>
+	 * 取最小的r使得C(s+r,s)&gt;=n，在满足左右两侧都能在r次重复内完成的位置中选取总正演次数最少的一个。
+	 * @param n 区间的步数，至少为2
+	 * @param s 检查点个数（包括区间起点的检查点）
+	 * @return 第一个检查点与区间起点的距离，1...n-1
+	 */
+	static int split(int n, int s) {
+		long reps  = 0;
+		long range = 1;
+		while(range<n) {
+			reps++;
+			range = range*(reps+s)/reps;
+		}
+		// bino1=C(s+r-1,s), bino2=C(s+r-2,s-1), bino3=C(s+r-3,s-2), bino4=C(s+r-3,s-1), bino5=C(s+r-4,s-2)
+		long bino1 = range*reps/(s+reps);
+		long bino2 = s>1?bino1*s/(s+reps-1):1;
+		long bino3 = s==1?0:(s>2?bino2*(s-1)/(s+reps-2):1);
+		long bino4 = bino2*(reps-1)/s;
+		long bino5 = s<3?0:(s>3?bino3*(s-2)/reps:1);
+		long m;
+		if(n<=bino1+bino3)
+			m = bino4;
+		else if(n>=range-bino5)
+			m = bino1;
+		else
+			m = n-bino2-bino3;
+		return (int) Math.min(Math.max(m, 1), n-1);
+	}
+	/**
+	 * 倒序访问第b...a+1步，第a步的状态可以从检查点slot恢复
+	 * @param a 起始步数
+	 * @param b 结束步数
+	 * @param slot 第a步的检查点，-1为初始状态
+	 * @param free 可以使用的检查点个数
+	 */
+	private void reverse(int a, int b, int slot, int free) {
+		while(b>a) {
+			int n = b-a;
+			int m = b;
+			// 第a步的状态已知、需要第b...a+1步的状态，相当于经典revolve中倒序n+1步
+			if(n>1 && free>0)
+				m = a+split(n+1, free+1);
+			load(a, slot);
+			for(int i=a;i<m;i++)
+				advance(i);
+			if(m==b) {
+				target.adjoint(b);
+				b--;
+				continue;
+			}
+			int s = snapshots-free;
+			target.store(s);
+			reverse(m, b, s, free-1);
+			// 第m步的状态就在检查点中，直接恢复后做伴随，不需要重新正演
+			load(m, s);
+			target.adjoint(m);
+			b = m-1;
+		}
+	}
+	/**
+	 * 恢复第a步的状态
+	 * @param a 步数
+	 * @param slot 检查点，-1为初始状态
+	 */
+	private void load(int a, int slot) {
+		// 刚保存的检查点就是当前状态时不需要恢复
+		if(current==a)
+			return;
+		current = a;
+		if(slot<0)
+			target.initial();
+		else
+			target.restore(slot);
+	}
+	/**
+	 * 正演一步并计数
+	 * @param step 当前状态的步数
+	 */
+	private void advance(int step) {
+		target.advance(step);
+		advances++;
+		current = step+1;
+	}
+}
@@ -0,0 +1,1037 @@
+package com.qq.bbsunok;
+import java.util.Arrays;
+/**
+ * 二维标量波动方程的有限差分传播器，时间二阶、空间order阶。
+ * <p>
+ * u(t+dt) = 2u(t) - u(t-dt) + v^2*dt^2*Laplace(u(t))，吸收边界区域加阻尼项。
+ * 模型和计算网格由{@link ModelGrid}给出：模型四周（自由表面时上方除外）各加npml个吸收边界点，
+ * 外面再加order/2个恒为零的网格点，所有波场与模型参数采用相同的排列，按行连续存放在一维数组中。
+ * <p>
+ * 两个波场数组在构造时分配，时间循环中原位更新（新波场直接覆盖前一时刻的波场），不再分配内存。
+ * 更新时按z方向的块（每块{@value #BLOCK}个网格点）遍历所有行，块内先按系数逐项累加Laplace算子，
+ * 使得相邻的2*order/2+1行都留在缓存中。Vector API可用时Laplace算子和内部区域的更新使用{@link VectorStencilKernel}。
+ * 震源和检波点的位置在设置时转换为数组下标。
+ * 对象保存了波场，不能被多个线程同时使用。
+ * @author bbsun
+ *
+ */
+final class ScalarWavePropagator {
+	/**
+	 * z方向每块的网格点数
+	 */
+	static final int BLOCK = 512;
+	/**
+	 * 吸收边界的理论反射系数
+	 */
+	private static final double REFLECTION = 1.0e-3;
+	/**
+	 * 是否使用{@link VectorStencilKernel}，Vector API可用时使用
+	 */
+	static final boolean VECTOR = VectorSupport.ENABLED;
+	/**
+	 * 模型网格
+	 */
+	private final ModelGrid model;
+	/**
+	 * 模型的水平网格点数
+	 */
+	private final int nx;
+	/**
+	 * 模型的深度网格点数
+	 */
+	private final int nz;
+	/**
+	 * 差分算子的半宽度
+	 */
+	private final int m;
+	/**
+	 * 计算网格的水平网格点数（包括吸收边界）
+	 */
+	private final int nxp;
+	/**
+	 * 计算网格的深度网格点数（包括吸收边界）
+	 */
+	private final int nzp;
+	/**
+	 * 模型第一行在计算网格中的深度下标
+	 */
+	private final int ztop;
+	/**
+	 * 一行的长度（包括两端的零点和对齐补齐的点）
+	 */
+	private final int stride;
+	/**
+	 * 时间采样
+	 */
+	private final float dt;
+	/**
+	 * 水平空间采样
+	 */
+	private final float dx;
+	/**
+	 * 深度空间采样
+	 */
+	private final float dz;
+	/**
+	 * 是否采用自由表面
+	 */
+	private final boolean free;
+	/**
+	 * 中心点的系数
+	 */
+	private final float c0;
+	/**
+	 * 水平方向的系数c[k]/dx^2
+	 */
+	private final float[] cx;
+	/**
+	 * 深度方向的系数c[k]/dz^2
+	 */
+	private final float[] cz;
+	/**
+	 * v^2*dt^2
+	 */
+	private final float[] w;
+	/**
+	 * 水平方向的阻尼系数
+	 */
+	private final float[] dampX;
+	/**
+	 * 深度方向的阻尼系数
+	 */
+	private final float[] dampZ;
+	/**
+	 * 当前时刻的波场
+	 */
+	private float[] u;
+	/**
+	 * 前一时刻的波场，更新后为下一时刻的波场
+	 */
+	private float[] p;
+	/**
+	 * 每个线程的Laplace算子缓冲区
+	 */
+	private float[][] laps = new float[1][BLOCK];
+	/**
+	 * 一个行条带的时间更新
+	 */
+	private final StripWorkers.Strip stepStrip = (a, b, t) -> step(a, b, laps[t]);
+	/**
+	 * 本次模拟的条带工作线程，模拟之外为null（串行计算）
+	 */
+	private StripWorkers workers;
+	/**
+	 * 当前时刻的散射波场，只在波恩近似模拟时分配
+	 */
+	private float[] du;
+	/**
+	 * 前一时刻的散射波场，更新后为下一时刻的散射波场
+	 */
+	private float[] dp;
+	/**
+	 * 每个线程的散射波场Laplace算子缓冲区
+	 */
+	private float[][] scatteredLaps;
+	/**
+	 * 震源的数组下标
+	 */
+	private int[] sources = new int[0];
+	/**
+	 * 震源的加载系数v^2*dt^2/(dx*dz)
+	 */
+	private float[] sourceScale = new float[0];
+	/**
+	 * 检波点的数组下标
+	 */
+	private int[] receivers = new int[0];
+	/**
+	 * 最近一次模拟的网格点更新速度
+	 */
+	private double cellsPerSecond;
+	/**
+	 * 构造函数
+	 * @param dt 时间采样
+	 * @param dx 水平空间采样
+	 * @param dz 深度空间采样
+	 * @param npml 吸收边界的网格点数
+	 * @param order 空间有限差分阶数，(2,4,6,8,10)
+	 * @param free 是否采用自由表面边界条件
+	 * @param v 速度 [nx][nz]
+	 */
+	ScalarWavePropagator(float dt, float dx, float dz, int npml, int order, boolean free, float[][] v) {
+		this(new ModelGrid.Builder(dt, dx, dz, npml, order, free).velocity(v).build());
+	}
+	/**
+	 * 构造函数，网格、v^2*dt^2和差分系数直接使用模型网格中的数组
+	 * @param model 模型网格
+	 */
+	ScalarWavePropagator(ModelGrid model) {
+		this.model  = model;
+		this.m      = model.m;
+		this.nx     = model.nx;
+		this.nz     = model.nz;
+		this.dt     = model.dt;
+		this.dx     = model.dx;
+		this.dz     = model.dz;
+		this.free   = model.free;
+		this.ztop   = model.ztop;
+		this.nxp    = model.nxp;
+		this.nzp    = model.nzp;
+		this.stride = model.stride;
+		this.cx     = model.cx;
+		this.cz     = model.cz;
+		this.c0     = model.c0;
+		this.w      = model.w;
+		this.dampX  = damping(model.profileX, model.vmax, dx, model.npml);
+		this.dampZ  = damping(model.profileZ, model.vmax, dz, model.npml);
+		this.u      = new float[w.length];
+		this.p      = new float[w.length];
+	}
+	/**
+	 * 构造函数，与另一个传播器共享模型和差分系数，只分配自己的波场
+	 * <p>
+	 * 模型数组在构造后不再修改，因此多个传播器可以在不同的线程中同时使用同一个模型。
+	 * @param shared 共享模型的传播器
+	 */
+	ScalarWavePropagator(ScalarWavePropagator shared) {
+		this.model  = shared.model;
+		this.m      = shared.m;
+		this.nx     = shared.nx;
+		this.nz     = shared.nz;
+		this.dt     = shared.dt;
+		this.dx     = shared.dx;
+		this.dz     = shared.dz;
+		this.free   = shared.free;
+		this.ztop   = shared.ztop;
+		this.nxp    = shared.nxp;
+		this.nzp    = shared.nzp;
+		this.stride = shared.stride;
+		this.cx     = shared.cx;
+		this.cz     = shared.cz;
+		this.c0     = shared.c0;
+		this.w      = shared.w;
+		this.dampX  = shared.dampX;
+		this.dampZ  = shared.dampZ;
+		this.u      = new float[w.length];
+		this.p      = new float[w.length];
+	}
+	/**
+	 * 返回计算网格（包括吸收边界）的网格点数
+	 * @return 网格点数
+	 */
+	long getCellCount() {
+		return (long) nxp*nzp;
+	}
+	/**
+	 * 返回波场占用的字节数，即每个传播器除共享模型外需要的内存
+	 * @return 字节数
+	 */
+	long getWavefieldBytes() {
+		return 2L*4L*w.length+4L*BLOCK*laps.length;
+	}
+	/**
+	 * 计算吸收边界的阻尼系数 d = d0*(距离/宽度)^2
+	 * @param profile 归一化距离的平方(距离/宽度)^2
+	 * @param vmax 最大速度
+	 * @param h 空间采样
+	 * @param npml 吸收边界的宽度
+	 * @return 阻尼系数
+	 */
+	private static float[] damping(float[] profile, float vmax, float h, int npml) {
+		float[] d = new float[profile.length];
+		if(npml==0)
+			return d;
+		double d0 = 3.0*vmax*Math.log(1.0/REFLECTION)/(2.0*npml*h);
+		for(int i=0;i<d.length;i++)
+			d[i] = (float) (d0*profile[i]);
+		return d;
+	}
+	/**
+	 * 设置震源位置
+	 * @param sx 震源位置坐标（以网格点为单位）
+	 * @param sz 震源位置坐标（以网格点为单位）
+	 */
+	void setSources(float[] sx, float[] sz) {
+		if(sx.length!=sz.length)
+			throw new ArithmeticException("震源的坐标个数应该一致。");
+		sources     = new int[sx.length];
+		sourceScale = new float[sx.length];
+		for(int i=0;i<sx.length;i++) {
+			sources[i]     = modelIndex(sx[i], sz[i]);
+			sourceScale[i] = w[sources[i]]/(dx*dz);
+		}
+	}
+	/**
+	 * 设置检波点位置
+	 * @param rx 接收点坐标（以网格点为单位）
+	 * @param rz 接收点坐标（以网格点为单位）
+	 */
+	void setReceivers(float[] rx, float[] rz) {
+		if(rx.length!=rz.length)
+			throw new ArithmeticException("检波点的坐标个数应该一致。");
+		receivers = new int[rx.length];
+		for(int i=0;i<rx.length;i++)
+			receivers[i] = modelIndex(rx[i], rz[i]);
+	}
+	/**
+	 * 设置一炮内部并行计算的线程数
+	 * <p>
+	 * 计算网格按行分为线程数个连续的条带，每个线程更新一个条带。
+	 * 更新只读当前时刻的波场、只写自己条带内下一时刻的波场，因此条带之间不需要交换边界。
+	 * 每次模拟启动一组常驻的{@link StripWorkers}，正演、伴随、倒推和成像都按条带并行，
+	 * 每个时间步的条带计算完成后由调用线程加载震源、交换波场并记录检波点。
+	 * @param threads 线程数，1为串行计算
+	 */
+	void setThreads(int threads) {
+		if(threads<1)
+			throw new ArithmeticException("线程数必须为正整数");
+		threads = Math.min(threads, nxp);
+		if(laps.length!=threads)
+			laps = new float[threads][BLOCK];
+	}
+	/**
+	 * 正演模拟
+	 * @param sou 震源子波 [ns][nt]
+	 * @param rec 地震记录 [nr][nt]
+	 */
+	void forward(float[][] sou, float[][] rec) {
+		forward(sou, ReceiverSink.of(rec));
+	}
+	/**
+	 * 正演模拟，检波点记录按时间块交给输出
+	 * @param sou 震源子波 [ns][nt]
+	 * @param sink 检波点记录的输出
+	 */
+	void forward(float[][] sou, ReceiverSink sink) {
+		if(sou.length!=sources.length)
+			throw new ArithmeticException("震源子波的道数应该与坐标个数一致。");
+		int nt = sou.length>0?sou[0].length:0;
+		RecordBuffer rec = new RecordBuffer(sink, receivers, nt);
+		reset();
+		long start = System.nanoTime();
+		startWorkers();
+		try {
+			for(int it=0;it<nt;it++) {
+				strips(0, nxp, stepStrip);
+				finishStep(sou, rec, it);
+			}
+		} finally {
+			stopWorkers();
+		}
+		rec.end();
+		long elapsed = Math.max(System.nanoTime()-start, 1L);
+		cellsPerSecond = (double) getCellCount()*nt/(elapsed*1.0e-9);
+	}
+	/**
+	 * 波恩近似模拟：背景波场和散射波场在同一个时间循环中推进，检波点记录散射波场
+	 * <p>
+	 * 对离散波动方程关于速度线性化，散射波场满足同样的差分格式，附加的震源为
+	 * 2*dv/v*v^2*dt^2*(Laplace(u)+震源项)，即速度扰动加权的背景波场的二阶时间差分（吸收边界中同样除以阻尼项）。
+	 * 速度扰动只在模型内部非零，因此本算子与{@link #adjoint(float[][], float[][], float[][], int)}的梯度互为转置。
+	 * 每个网格块中两个波场的Laplace算子连续计算，背景波场的Laplace算子同时用于两个波场的更新，
+	 * 因此每个时间步只遍历一次网格，不需要保存背景波场的快照，也不需要第二次正演。
+	 * @param sou 震源子波 [ns][nt]
+	 * @param sink 散射波场记录的输出
+	 */
+	void born(float[][] sou, ReceiverSink sink) {
+		float[] scatter = model.scatter;
+		if(scatter==null)
+			throw new ArithmeticException("波恩近似模拟需要速度扰动。");
+		if(sou.length!=sources.length)
+			throw new ArithmeticException("震源子波的道数应该与坐标个数一致。");
+		int nt = sou.length>0?sou[0].length:0;
+		if(du==null) {
+			du = new float[w.length];
+			dp = new float[w.length];
+		}
+		if(scatteredLaps==null || scatteredLaps.length!=laps.length)
+			scatteredLaps = new float[laps.length][BLOCK];
+		float[] scatterScale = new float[sources.length];
+		for(int is=0;is<sources.length;is++)
+			scatterScale[is] = scatter[sources[is]]/(dx*dz);
+		RecordBuffer rec = new RecordBuffer(sink, receivers, nt);
+		reset();
+		Arrays.fill(du, 0.0f);
+		Arrays.fill(dp, 0.0f);
+		StripWorkers.Strip strip = (a, b, t) -> bornStep(a, b, laps[t], scatteredLaps[t]);
+		long start = System.nanoTime();
+		startWorkers();
+		try {
+			for(int it=0;it<nt;it++) {
+				strips(0, nxp, strip);
+				for(int is=0;is<sources.length;is++) {
+					p[sources[is]]  += sourceScale[is]*sou[is][it];
+					dp[sources[is]] += scatterScale[is]*sou[is][it];
+				}
+				swap();
+				float[] t = du;
+				du = dp;
+				dp = t;
+				rec.record(du);
+			}
+		} finally {
+			stopWorkers();
+		}
+		rec.end();
+		long elapsed = Math.max(System.nanoTime()-start, 1L);
+		cellsPerSecond = (double) getCellCount()*nt/(elapsed*1.0e-9);
+	}
+	/**
+	 * 启动本次模拟的条带工作线程
+	 */
+	private void startWorkers() {
+		workers = new StripWorkers(laps.length);
+	}
+	/**
+	 * 结束本次模拟的条带工作线程
+	 */
+	private void stopWorkers() {
+		StripWorkers team = workers;
+		workers = null;
+		team.close();
+	}
+	/**
+	 * 对行区间按条带并行计算，没有工作线程时串行
+	 * @param begin 起始行号
+	 * @param end 结束行号（不包含）
+	 * @param strip 条带的计算
+	 */
+	private void strips(int begin, int end, StripWorkers.Strip strip) {
+		if(workers==null)
+			strip.run(begin, end, 0);
+		else
+			workers.run(begin, end, strip);
+	}
+	/**
+	 * 一个时间步的收尾：加载震源、交换波场并记录检波点
+	 * @param sou 震源子波 [ns][nt]
+	 * @param rec 检波点记录的缓冲区
+	 * @param it 时间下标
+	 */
+	private void finishStep(float[][] sou, RecordBuffer rec, int it) {
+		for(int is=0;is<sources.length;is++)
+			p[sources[is]] += sourceScale[is]*sou[is][it];
+		swap();
+		rec.record(u);
+	}
+	/**
+	 * 返回最近一次模拟的网格点更新速度
+	 * @return 每秒更新的网格点数
+	 */
+	double getCellsPerSecond() {
+		return cellsPerSecond;
+	}
+	/**
+	 * 伴随计算：由检波点的残差计算速度的梯度
+	 * <p>
+	 * 梯度为 g(x) = sum_t λ(x,t)*(2/v(x))*(Laplace(u(x,t))+震源项)，即波恩近似算子（速度扰动到地震记录）的伴随，
+	 * 震源项只在震源所在的网格点非零。
+	 * 伴随波场λ满足离散波动方程的转置，由时间反转的残差乘以v^2*dt^2在检波点处加载后传播得到。
+	 * 正演波场需要按时间倒序访问，内存中只保存snapshots个检查点，其余状态按二项式检查点调度重新正演得到；
+	 * 检查点越少内存越小，重新正演的步数越多。
+	 * @param sou 震源子波 [ns][nt]
+	 * @param res 检波点的残差 [nr][nt]
+	 * @param g 输出的梯度 [nx][nz]
+	 * @param snapshots 内存中保存的检查点个数
+	 * @return 执行的正演步数（不包括伴随波场）
+	 */
+	long adjoint(float[][] sou, float[][] res, float[][] g, int snapshots) {
+		if(sou.length!=sources.length || res.length!=receivers.length)
+			throw new ArithmeticException("震源子波和地震记录的道数应该与坐标个数一致。");
+		if(g.length!=nx || g[0].length!=nz)
+			throw new ArithmeticException("梯度数组的大小应该与模型一致。");
+		int nt = sou.length>0?sou[0].length:0;
+		long advances;
+		startWorkers();
+		try {
+			ScalarWavePropagator adj = adjointPropagator(sou, res, g);
+			float[][] snaps = new float[snapshots][];
+			// 第k步的梯度由u^k与λ^{k+1}相乘得到，u^0=0只有震源项，最后一步的正演波场也不需要
+			advances = new Revolve(Math.max(nt-1, 0), snapshots).run(new Revolve.Target() {
+				@Override
+				public void initial() {
+					reset();
+				}
+				@Override
+				public void advance(int step) {
+					ScalarWavePropagator.this.advance(sou, step);
+				}
+				@Override
+				public void store(int slot) {
+					if(snaps[slot]==null)
+						snaps[slot] = new float[2*w.length];
+					System.arraycopy(u, 0, snaps[slot], 0, w.length);
+					System.arraycopy(p, 0, snaps[slot], w.length, w.length);
+				}
+				@Override
+				public void restore(int slot) {
+					System.arraycopy(snaps[slot], 0, u, 0, w.length);
+					System.arraycopy(snaps[slot], w.length, p, 0, w.length);
+				}
+				@Override
+				public void adjoint(int step) {
+					// λ^{step+1}由第step个时间采样的残差加载得到
+					adj.advance(res, step);
+					image(adj.u, g, sou, step);
+				}
+			});
+			imageFirst(adj, sou, res, g);
+			scaleGradient(g);
+		} finally {
+			stopWorkers();
+		}
+		return advances;
+	}
+	/**
+	 * 伴随计算：由检波点的残差计算速度的梯度，正演波场由边界值倒推重建
+	 * <p>
+	 * 模型内部没有阻尼项，时间二阶的格式在时间上可逆：u(t-dt) = 2u(t) - u(t+dt) + v^2*dt^2*Laplace(u(t))。
+	 * 正演时每一步只保存模型边界内外各order/2个网格点宽的条带，伴随时与伴随波场同步地倒推正演波场，
+	 * 模型内部由上式计算，边界条带（其中的差分算子需要吸收边界中的值）从保存的值恢复。
+	 * 内存从O(nx*nz*nt)降为O((nx+nz)*order*nt)，且不需要重新正演；代价是倒推的波场与正演的波场有舍入误差量级的差别。
+	 * 梯度的定义与{@link #adjoint(float[][], float[][], float[][], int)}相同。
+	 * @param sou 震源子波 [ns][nt]
+	 * @param res 检波点的残差 [nr][nt]
+	 * @param g 输出的梯度 [nx][nz]
+	 */
+	void adjointBoundary(float[][] sou, float[][] res, float[][] g) {
+		int nt = sou.length>0?sou[0].length:0;
+		startWorkers();
+		try {
+			ScalarWavePropagator adj = adjointPropagator(sou, res, g);
+			int steps = Math.max(nt-1, 0);
+			// bands[k]保存u^k的边界条带，倒推到u^k时使用；u^{steps}和u^{steps-1}在正演结束时仍在内存中
+			float[][] bands = new float[Math.max(steps-1, 0)][];
+			reset();
+			for(int it=0;it<steps;it++) {
+				advance(sou, it);
+				if(it+1<bands.length)
+					bands[it+1] = saveBoundary(u);
+			}
+			if(bands.length>0)
+				bands[0] = new float[boundaryLength()];
+			for(int k=steps;k>=1;k--) {
+				adj.advance(res, k);
+				image(adj.u, g, sou, k);
+				if(k>1) {
+					backward(sou, k-1, bands[k-2]);
+					bands[k-2] = null;
+				}
+			}
+			imageFirst(adj, sou, res, g);
+			scaleGradient(g);
+		} finally {
+			stopWorkers();
+		}
+	}
+	/**
+	 * 伴随计算：由检波点的残差计算速度的梯度，正演波场保存在快照存储中
+	 * <p>
+	 * 正演时把每一步模型范围（四周各加order/2个网格点，成像时的差分算子需要）的波场异步写入存储，
+	 * 伴随时按时间倒序读回，存储在后台预读和解压。有损压缩时梯度的误差由压缩的误差决定。
+	 * 梯度的定义与{@link #adjoint(float[][], float[][], float[][], int)}相同。
+	 * @param sou 震源子波 [ns][nt]
+	 * @param res 检波点的残差 [nr][nt]
+	 * @param g 输出的梯度 [nx][nz]
+	 * @param store 快照存储，长度为{@link #regionLength()}
+	 */
+	void adjointStored(float[][] sou, float[][] res, float[][] g, SnapshotStore store) {
+		if(store.getLength()!=regionLength())
+			throw new ArithmeticException("快照存储的长度应该与模型范围一致。");
+		int nt = sou.length>0?sou[0].length:0;
+		startWorkers();
+		try {
+			ScalarWavePropagator adj = adjointPropagator(sou, res, g);
+			int steps = Math.max(nt-1, 0);
+			float[] region = new float[regionLength()];
+			reset();
+			for(int it=0;it<steps;it++) {
+				advance(sou, it);
+				copyRegion(u, region, true);
+				store.write(it, region);
+			}
+			for(int k=steps;k>=1;k--) {
+				store.read(k-1, region);
+				copyRegion(u, region, false);
+				adj.advance(res, k);
+				image(adj.u, g, sou, k);
+			}
+			imageFirst(adj, sou, res, g);
+			scaleGradient(g);
+		} finally {
+			stopWorkers();
+		}
+	}
+	/**
+	 * 模型范围（四周各加order/2个网格点）的网格点数
+	 * @return 网格点数
+	 */
+	int regionLength() {
+		return (nx+2*m)*(nz+2*m);
+	}
+	/**
+	 * 在波场和模型范围的数组之间复制
+	 * @param field 波场
+	 * @param region 模型范围（四周各加order/2个网格点）的数组
+	 * @param save true从波场复制到数组，false从数组复制到波场
+	 */
+	private void copyRegion(float[] field, float[] region, boolean save) {
+		int x0 = (nxp-nx)/2;
+		int n  = nz+2*m;
+		for(int ix=x0-m,off=0;ix<x0+nx+m;ix++,off+=n)
+			copySegment(field, index(ix, ztop-m), region, off, n, save);
+	}
+	/**
+	 * 检查参数、清零梯度并构造伴随波场的传播器
+	 * <p>
+	 * 伴随波场的震源位于检波点，加载系数为v^2*dt^2（离散波动方程转置中的系数）。
+	 * @param sou 震源子波 [ns][nt]
+	 * @param res 检波点的残差 [nr][nt]
+	 * @param g 梯度 [nx][nz]
+	 * @return 伴随波场的传播器
+	 */
+	private ScalarWavePropagator adjointPropagator(float[][] sou, float[][] res, float[][] g) {
+		if(sou.length!=sources.length || res.length!=receivers.length)
+			throw new ArithmeticException("震源子波和地震记录的道数应该与坐标个数一致。");
+		if(g.length!=nx || g[0].length!=nz)
+			throw new ArithmeticException("梯度数组的大小应该与模型一致。");
+		ScalarWavePropagator adj = new ScalarWavePropagator(this);
+		adj.setThreads(laps.length);
+		adj.workers     = workers;
+		adj.sources     = receivers;
+		adj.sourceScale = new float[receivers.length];
+		for(int i=0;i<receivers.length;i++)
+			adj.sourceScale[i] = w[receivers[i]];
+		for(float[] gx: g)
+			Arrays.fill(gx, 0.0f);
+		return adj;
+	}
+	/**
+	 * 梯度乘以2/v
+	 * @param g 梯度 [nx][nz]
+	 */
+	private void scaleGradient(float[][] g) {
+		for(int ix=0;ix<nx;ix++) {
+			int base = index(ix+(nxp-nx)/2, ztop);
+			for(int iz=0;iz<nz;iz++)
+				g[ix][iz] *= 2.0f*dt/(float) Math.sqrt(w[base+iz]);
+		}
+	}
+	/**
+	 * 倒推一步：由(u^k, u^{k-1})计算(u^{k-1}, u^{k-2})
+	 * <p>
+	 * 模型内部距边界order/2以上的网格点由时间反转的差分格式计算，边界条带从保存的值恢复。
+	 * @param sou 震源子波 [ns][nt]
+	 * @param it 正演由u^{k-1}计算u^k时加载的时间下标，即k-1
+	 * @param band u^{k-2}的边界条带
+	 */
+	private void backward(float[][] sou, int it, float[] band) {
+		swap();
+		int x0 = (nxp-nx)/2;
+		int ix0 = x0+m;
+		int ix1 = Math.max(x0+nx-m, ix0);
+		strips(ix0, ix1, (a, b, t) -> interior(a, b, laps[t]));
+		for(int is=0;is<sources.length;is++)
+			p[sources[is]] += sourceScale[is]*sou[is][it];
+		copyBoundary(p, band, false);
+	}
+	/**
+	 * 不带阻尼项地更新模型内部距边界order/2以上的网格点
+	 * @param ix0 起始行号
+	 * @param ix1 结束行号（不包含）
+	 * @param lap Laplace算子缓冲区
+	 */
+	private void interior(int ix0, int ix1, float[] lap) {
+		int za = ztop+m;
+		int zb = Math.max(ztop+nz-m, za);
+		for(int z0=za;z0<zb;z0+=BLOCK) {
+			int n = Math.min(BLOCK, zb-z0);
+			for(int ix=ix0;ix<ix1;ix++) {
+				int i0 = index(ix, z0);
+				laplacian(u, i0, n, lap);
+				update(i0, n, lap, 0);
+			}
+		}
+	}
+	/**
+	 * 边界条带的网格点数：模型边界内外各order/2个网格点宽
+	 * @return 网格点数
+	 */
+	int boundaryLength() {
+		int inner = Math.max(nx-2*m, 0);
+		int depth = Math.max(nz-2*m, 0);
+		return (nx+2*m)*(nz+2*m)-inner*depth;
+	}
+	/**
+	 * 保存波场的边界条带
+	 * @param field 波场
+	 * @return 边界条带
+	 */
+	private float[] saveBoundary(float[] field) {
+		float[] band = new float[boundaryLength()];
+		copyBoundary(field, band, true);
+		return band;
+	}
+	/**
+	 * 在波场和边界条带之间复制
+	 * @param field 波场
+	 * @param band 边界条带
+	 * @param save true从波场复制到条带，false从条带复制到波场
+	 */
+	private void copyBoundary(float[] field, float[] band, boolean save) {
+		int x0 = (nxp-nx)/2;
+		int za = ztop-m;
+		int zb = ztop+nz+m;
+		int ia = ztop+m;
+		int ib = Math.max(ztop+nz-m, ia);
+		int off = 0;
+		for(int ix=x0-m;ix<x0+nx+m;ix++) {
+			boolean inner = ix>=x0+m && ix<x0+nx-m;
+			// 内部的行只有上下两段，其余的行整行都在条带中
+			int a = inner?ia:zb;
+			int b = inner?ib:zb;
+			off = copySegment(field, index(ix, za), band, off, a-za, save);
+			off = copySegment(field, index(ix, b), band, off, zb-b, save);
+		}
+	}
+	/**
+	 * 复制一段连续的网格点
+	 * @param field 波场
+	 * @param i 波场中的起始下标
+	 * @param band 边界条带
+	 * @param off 条带中的起始下标
+	 * @param n 网格点数
+	 * @param save true从波场复制到条带，false从条带复制到波场
+	 * @return 条带中下一段的起始下标
+	 */
+	private static int copySegment(float[] field, int i, float[] band, int off, int n, boolean save) {
+		if(save)
+			System.arraycopy(field, i, band, off, n);
+		else
+			System.arraycopy(band, off, field, i, n);
+		return off+n;
+	}
+	/**
+	 * 正演一步：计算下一时刻的波场、加载震源并交换波场
+	 * @param sou 震源子波 [ns][nt]
+	 * @param it 时间下标
+	 */
+	void advance(float[][] sou, int it) {
+		strips(0, nxp, stepStrip);
+		for(int is=0;is<sources.length;is++)
+			p[sources[is]] += sourceScale[is]*sou[is][it];
+		swap();
+	}
+	/**
+	 * 成像：在模型范围内累加 λ*Laplace(u)，在震源处累加 λ*sou/(dx*dz)
+	 * <p>
+	 * 震源的加载系数v^2*dt^2/(dx*dz)同样与速度有关，震源项与{@link #born(float[][], ReceiverSink)}中散射波场的震源对应。
+	 * @param lambda 伴随波场，网格与本传播器相同
+	 * @param g 累加的结果 [nx][nz]
+	 * @param sou 震源子波 [ns][nt]
+	 * @param it 正演由u计算下一时刻的波场时加载的时间下标
+	 */
+	private void image(float[] lambda, float[][] g, float[][] sou, int it) {
+		strips(0, nx, (a, b, t) -> image(lambda, g, a, b, laps[t]));
+		imageSources(lambda, g, sou, it);
+	}
+	/**
+	 * 成像的第0步：u^0=0，只有第0个时间采样的震源项
+	 * @param adj 伴随波场的传播器，已经倒推到λ^2
+	 * @param sou 震源子波 [ns][nt]
+	 * @param res 检波点的残差 [nr][nt]
+	 * @param g 累加的结果 [nx][nz]
+	 */
+	private void imageFirst(ScalarWavePropagator adj, float[][] sou, float[][] res, float[][] g) {
+		if(sou.length==0 || sou[0].length==0)
+			return;
+		adj.advance(res, 0);
+		imageSources(adj.u, g, sou, 0);
+	}
+	/**
+	 * 成像的震源项：在震源处累加 λ*sou/(dx*dz)
+	 * @param lambda 伴随波场
+	 * @param g 累加的结果 [nx][nz]
+	 * @param sou 震源子波 [ns][nt]
+	 * @param it 时间下标
+	 */
+	private void imageSources(float[] lambda, float[][] g, float[][] sou, int it) {
+		int x0 = (nxp-nx)/2;
+		for(int is=0;is<sources.length;is++) {
+			int i = sources[is];
+			g[i/stride-m-x0][i%stride-m-ztop] += lambda[i]*sou[is][it]/(dx*dz);
+		}
+	}
+	/**
+	 * 成像一个行条带
+	 * @param lambda 伴随波场
+	 * @param g 累加的结果 [nx][nz]
+	 * @param ix0 起始行号（模型中的下标）
+	 * @param ix1 结束行号（不包含）
+	 * @param lap Laplace算子缓冲区
+	 */
+	private void image(float[] lambda, float[][] g, int ix0, int ix1, float[] lap) {
+		int x0 = (nxp-nx)/2;
+		for(int ix=ix0;ix<ix1;ix++) {
+			float[] gx = g[ix];
+			for(int z0=0;z0<nz;z0+=BLOCK) {
+				int n = Math.min(BLOCK, nz-z0);
+				int i0 = index(ix+x0, ztop+z0);
+				laplacian(u, i0, n, lap);
+				for(int j=0;j<n;j++)
+					gx[z0+j] += lambda[i0+j]*lap[j];
+			}
+		}
+	}
+	/**
+	 * 波场清零
+	 */
+	void reset() {
+		Arrays.fill(u, 0.0f);
+		Arrays.fill(p, 0.0f);
+	}
+	/**
+	 * 计算一个行条带下一时刻的波场，结果在p中
+	 * @param ix0 起始行号
+	 * @param ix1 结束行号（不包含）
+	 * @param lap Laplace算子缓冲区
+	 */
+	private void step(int ix0, int ix1, float[] lap) {
+		for(int z0=0;z0<nzp;z0+=BLOCK) {
+			int z1 = Math.min(z0+BLOCK, nzp);
+			for(int ix=ix0;ix<ix1;ix++)
+				updateRow(ix, z0, z1, lap);
+		}
+	}
+	/**
+	 * 更新一行中的一段
+	 * @param ix 行号
+	 * @param z0 起始深度下标
+	 * @param z1 结束深度下标（不包含）
+	 * @param lap Laplace算子缓冲区
+	 */
+	private void updateRow(int ix, int z0, int z1, float[] lap) {
+		int i0 = index(ix, z0);
+		laplacian(u, i0, z1-z0, lap);
+		// 吸收边界以外的内部区域不需要阻尼项
+		int a = z1;
+		int b = z1;
+		if(dampX[ix]==0.0f) {
+			a = Math.min(Math.max(ztop, z0), z1);
+			b = Math.max(Math.min(ztop+nz, z1), a);
+			update(i0+a-z0, b-a, lap, a-z0);
+		}
+		damped(ix, z0, z0, a, lap);
+		damped(ix, z0, b, z1, lap);
+		if(free && z0==0)
+			freeSurface(p, ix);
+	}
+	/**
+	 * 计算一个行条带下一时刻的背景波场和散射波场，结果在p和dp中
+	 * @param ix0 起始行号
+	 * @param ix1 结束行号（不包含）
+	 * @param lap 背景波场的Laplace算子缓冲区
+	 * @param lapD 散射波场的Laplace算子缓冲区
+	 */
+	private void bornStep(int ix0, int ix1, float[] lap, float[] lapD) {
+		for(int z0=0;z0<nzp;z0+=BLOCK) {
+			int z1 = Math.min(z0+BLOCK, nzp);
+			for(int ix=ix0;ix<ix1;ix++)
+				bornRow(ix, z0, z1, lap, lapD);
+		}
+	}
+	/**
+	 * 更新一行中一段的背景波场和散射波场
+	 * @param ix 行号
+	 * @param z0 起始深度下标
+	 * @param z1 结束深度下标（不包含）
+	 * @param lap 背景波场的Laplace算子缓冲区
+	 * @param lapD 散射波场的Laplace算子缓冲区
+	 */
+	private void bornRow(int ix, int z0, int z1, float[] lap, float[] lapD) {
+		int i0 = index(ix, z0);
+		laplacian(u, i0, z1-z0, lap);
+		laplacian(du, i0, z1-z0, lapD);
+		int a = z1;
+		int b = z1;
+		if(dampX[ix]==0.0f) {
+			a = Math.min(Math.max(ztop, z0), z1);
+			b = Math.max(Math.min(ztop+nz, z1), a);
+			update(i0+a-z0, b-a, lap, a-z0);
+			scattered(i0+a-z0, b-a, lap, lapD, a-z0);
+		}
+		damped(ix, z0, z0, a, lap);
+		damped(ix, z0, b, z1, lap);
+		dampedScattered(ix, z0, z0, a, lap, lapD);
+		dampedScattered(ix, z0, b, z1, lap, lapD);
+		if(free && z0==0) {
+			freeSurface(p, ix);
+			freeSurface(dp, ix);
+		}
+	}
+	/**
+	 * 计算一行中一段的Laplace算子（乘以dx^2、dz^2之前的系数已经包含在系数中）
+	 * @param u 波场
+	 * @param i0 第一个网格点的数组下标
+	 * @param n 网格点数
+	 * @param lap 输出的Laplace算子
+	 */
+	private void laplacian(float[] u, int i0, int n, float[] lap) {
+		if(VECTOR)
+			VectorStencilKernel.laplacian(u, i0, n, lap, c0, cx, cz, stride);
+		else
+			laplacian(u, i0, n, lap, c0, cx, cz, stride);
+	}
+	/**
+	 * 不带阻尼项的时间更新 p = 2u-p+w*lap
+	 * @param i0 第一个网格点的数组下标
+	 * @param n 网格点数
+	 * @param lap Laplace算子
+	 * @param l0 第一个网格点在Laplace算子中的下标
+	 */
+	private void update(int i0, int n, float[] lap, int l0) {
+		if(VECTOR)
+			VectorStencilKernel.update(u, p, w, i0, n, lap, l0);
+		else
+			update(u, p, w, i0, n, lap, l0);
+	}
+	/**
+	 * 不带阻尼项的散射波场时间更新 dp = 2du-dp+w*lapD+s*lap
+	 * @param i0 第一个网格点的数组下标
+	 * @param n 网格点数
+	 * @param lap 背景波场的Laplace算子
+	 * @param lapD 散射波场的Laplace算子
+	 * @param l0 第一个网格点在Laplace算子中的下标
+	 */
+	private void scattered(int i0, int n, float[] lap, float[] lapD, int l0) {
+		if(VECTOR)
+			VectorStencilKernel.scattered(du, dp, w, model.scatter, i0, n, lap, lapD, l0);
+		else
+			scattered(du, dp, w, model.scatter, i0, n, lap, lapD, l0);
+	}
+	/**
+	 * 标量计算核：计算一段网格点的Laplace算子
+	 * @param u 波场
+	 * @param i0 第一个网格点的数组下标
+	 * @param n 网格点数
+	 * @param lap 输出的Laplace算子
+	 * @param c0 中心点的系数
+	 * @param cx 水平方向的系数c[k]/dx^2
+	 * @param cz 深度方向的系数c[k]/dz^2
+	 * @param stride 一行的长度
+	 */
+	static void laplacian(float[] u, int i0, int n, float[] lap, float c0, float[] cx, float[] cz, int stride) {
+		int m = cx.length-1;
+		for(int j=0;j<n;j++)
+			lap[j] = c0*u[i0+j];
+		for(int k=1;k<=m;k++) {
+			float ax = cx[k];
+			float az = cz[k];
+			int up = i0-k;
+			int dn = i0+k;
+			int lf = i0-k*stride;
+			int rt = i0+k*stride;
+			for(int j=0;j<n;j++)
+				lap[j] += az*(u[up+j]+u[dn+j])+ax*(u[lf+j]+u[rt+j]);
+		}
+	}
+	/**
+	 * 标量计算核：不带阻尼项的时间更新 p = 2u-p+w*lap
+	 * @param u 当前时刻的波场
+	 * @param p 前一时刻的波场，更新为下一时刻的波场
+	 * @param w v^2*dt^2
+	 * @param i0 第一个网格点的数组下标
+	 * @param n 网格点数
+	 * @param lap Laplace算子
+	 * @param l0 第一个网格点在Laplace算子中的下标
+	 */
+	static void update(float[] u, float[] p, float[] w, int i0, int n, float[] lap, int l0) {
+		for(int j=0;j<n;j++)
+			p[i0+j] = 2.0f*u[i0+j]-p[i0+j]+w[i0+j]*lap[l0+j];
+	}
+	/**
+	 * 标量计算核：不带阻尼项的散射波场时间更新 dp = 2du-dp+w*lapD+s*lap
+	 * @param du 当前时刻的散射波场
+	 * @param dp 前一时刻的散射波场，更新为下一时刻的散射波场
+	 * @param w v^2*dt^2
+	 * @param s 散射系数2*v*dv*dt^2
+	 * @param i0 第一个网格点的数组下标
+	 * @param n 网格点数
+	 * @param lap 背景波场的Laplace算子
+	 * @param lapD 散射波场的Laplace算子
+	 * @param l0 第一个网格点在Laplace算子中的下标
+	 */
+	static void scattered(float[] du, float[] dp, float[] w, float[] s, int i0, int n, float[] lap, float[] lapD, int l0) {
+		for(int j=0;j<n;j++)
+			dp[i0+j] = 2.0f*du[i0+j]-dp[i0+j]+w[i0+j]*lapD[l0+j]+s[i0+j]*lap[l0+j];
+	}
+	/**
+	 * 带阻尼项的更新
+	 * @param ix 行号
+	 * @param z0 Laplace缓冲区对应的起始深度下标
+	 * @param a 起始深度下标
+	 * @param b 结束深度下标（不包含）
+	 * @param lap Laplace算子缓冲区
+	 */
+	private void damped(int ix, int z0, int a, int b, float[] lap) {
+		float ddx = dampX[ix];
+		for(int iz=a,j=a-z0,i=index(ix, a);iz<b;iz++,j++,i++) {
+			float d = (ddx+dampZ[iz])*dt;
+			p[i] = (2.0f*u[i]-(1.0f-d)*p[i]+w[i]*lap[j])/(1.0f+d);
+		}
+	}
+	/**
+	 * 带阻尼项的散射波场更新
+	 * @param ix 行号
+	 * @param z0 Laplace缓冲区对应的起始深度下标
+	 * @param a 起始深度下标
+	 * @param b 结束深度下标（不包含）
+	 * @param lap 背景波场的Laplace算子缓冲区
+	 * @param lapD 散射波场的Laplace算子缓冲区
+	 */
+	private void dampedScattered(int ix, int z0, int a, int b, float[] lap, float[] lapD) {
+		float[] s = model.scatter;
+		float ddx = dampX[ix];
+		for(int iz=a,j=a-z0,i=index(ix, a);iz<b;iz++,j++,i++) {
+			float d = (ddx+dampZ[iz])*dt;
+			dp[i] = (2.0f*du[i]-(1.0f-d)*dp[i]+w[i]*lapD[j]+s[i]*lap[j])/(1.0f+d);
+		}
+	}
+	/**
+	 * 自由表面：地表波场为零，地表以上为地表以下的反对称映像
+	 * @param f 下一时刻的波场
+	 * @param ix 行号
+	 */
+	private void freeSurface(float[] f, int ix) {
+		int i = index(ix, 0);
+		f[i] = 0.0f;
+		for(int k=1;k<=m;k++)
+			f[i-k] = -f[i+k];
+	}
+	/**
+	 * 交换当前时刻和下一时刻的波场
+	 */
+	private void swap() {
+		float[] t = u;
+		u = p;
+		p = t;
+	}
+	/**
+	 * 计算网格中一点的数组下标
+	 * @param ix 水平下标
+	 * @param iz 深度下标
+	 * @return 数组下标
+	 */
+	private int index(int ix, int iz) {
+		return (ix+m)*stride+iz+m;
+	}
+	/**
+	 * 模型中一点（四舍五入到最近的网格点）的数组下标
+	 * @param x 水平坐标（以网格点为单位）
+	 * @param z 深度坐标（以网格点为单位）
+	 * @return 数组下标
+	 */
+	private int modelIndex(float x, float z) {
+		return model.modelIndex(x, z);
+	}
+}
@@ -1,7 +1,6 @@
 package com.qq.bbsunok;
 import static edu.mines.jtk.util.ArrayMath.*;
 import static com.qq.bbsunok.ArrayPlot.*;
-import edu.mines.jtk.dsp.Conv;
 import edu.mines.jtk.dsp.FftComplex;
 import edu.mines.jtk.dsp.HilbertTransformFilter;
 import edu.mines.jtk.mosaic.SimplePlot;
@@ -120,7 +119,7 @@ public class Seismic {
 		}
 		SimplePlot.asSequence(x);
 		float [] y = new float[nt*2+1];
-		Conv.xcor(nt,0,x,nt,0,x,nt*2+1,-nt,y);
+		FftConvolution.xcor(nt,0,x,nt,0,x,nt*2+1,-nt,y);
 		float [] r = copy(nt,nt,y);
 		//r[0] = (float) (r[0]+max(r));
 		SimplePlot.asSequence(r);
@@ -131,7 +130,7 @@ public class Seismic {
 		float[] out = FeedBackFiltering.run(a, del);
 		SimplePlot.asSequence(out);
 		float [] rr = new float[nt];
-		Conv.xcor(nt,0,out,nt,0,out,nt,0,rr);
+		FftConvolution.xcor(nt,0,out,nt,0,out,nt,0,rr);
 		SimplePlot.asSequence(rr);
 		SimplePlot sp = new SimplePlot();
 		ArrayPlot.plot(rr,  "b-o", sp);
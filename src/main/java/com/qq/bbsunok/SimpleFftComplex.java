@@ -8,6 +8,22 @@ import static edu.mines.jtk.util.ArrayMath.*;
  *
  */
 public class SimpleFftComplex extends FftComplex{
+	/**
+	 * 每个线程的工作数组，交错存放实部和虚部
+	 */
+	private static final ThreadLocal<float[]> WORKSPACE = ThreadLocal.withInitial(() -> new float[0]);
+	/**
+	 * 缓存的频率采样（弧度）
+	 */
+	private volatile Axis frequency;
+	/**
+	 * 缓存的频率采样（Hz）
+	 */
+	private volatile Axis frequencyInCircle;
+	/**
+	 * 缓存的时间采样
+	 */
+	private volatile Axis time;
 	/**
 	 * 构造函数
 	 * @param nfft FFT实际计算的长度。有效的长度
@@ -18,6 +34,8 @@ public class SimpleFftComplex extends FftComplex{
 	}
 	/**
 	 * 复数对复数FFT
+	 * <p>
+	 * 使用当前线程的工作数组交错存放数据，重复调用时不再分配内存。
 	 * @param sign  FFT符号，+1或者-1
 	 * @param inputR 输入数组的实部
 	 * @param inputI 输入数组的虚步
@@ -26,61 +44,135 @@ public class SimpleFftComplex extends FftComplex{
 	 * @exception Exception 输入数组和输出数组的长度需要与实际计算使用的长度nfft一致.
 	 */
 	public void complexToComplex(int sign, float [] inputR, float [] inputI, float[] outputR, float[] outputI) throws Exception {
-		if (inputR.length!=this.getNfft() || inputI.length !=this.getNfft() || outputR.length!=this.getNfft()|| outputI.length!=this.getNfft())
+		complexToComplex(sign, inputR, inputI, outputR, outputI, workspace(2*this.getNfft()));
+	}
+	/**
+	 * 复数对复数FFT，原位计算
+	 * @param sign  FFT符号，+1或者-1
+	 * @param re 输入（输出）数组的实部
+	 * @param im 输入（输出）数组的虚部
+	 * @exception Exception 数组的长度需要与实际计算使用的长度nfft一致.
+	 */
+	public void complexToComplexInplace(int sign, float [] re, float [] im) throws Exception {
+		complexToComplex(sign, re, im, re, im);
+	}
+	/**
+	 * 复数对复数FFT，使用调用者提供的工作数组
+	 * @param sign  FFT符号，+1或者-1
+	 * @param inputR 输入数组的实部
+	 * @param inputI 输入数组的虚步
+	 * @param outputR 输出数组的实部，可以与inputR相同
+	 * @param outputI 输出数组的虚步，可以与inputI相同
+	 * @param work 工作数组，长度至少为2*nfft
+	 * @exception Exception 输入数组和输出数组的长度需要与实际计算使用的长度nfft一致.
+	 */
+	public void complexToComplex(int sign, float [] inputR, float [] inputI, float[] outputR, float[] outputI, float[] work) throws Exception {
+		int nfft = this.getNfft();
+		if (inputR.length!=nfft || inputI.length !=nfft || outputR.length!=nfft|| outputI.length!=nfft)
 			throw new Exception("The length of input and output array should be equal to nfft \n!");
-		int n = inputR.length*2;
-		float [] in = new float[n];
-		float [] out= new float[n];
-		for(int i=0;i<n/2;i++) {
-			in[2*i]   = inputR[i];
-			in[2*i+1] = inputI[i];
+		if (work.length<2*nfft)
+			throw new Exception("The length of work array should be at least 2*nfft \n!");
+		for(int i=0;i<nfft;i++) {
+			work[2*i]   = inputR[i];
+			work[2*i+1] = inputI[i];
 		}
 		//使得其输入输出和MATLAB的结果一致
-		complexToComplex(sign, in, out);
-		float scale = (sign==-1)?1.0f/this.getNfft():1.0f;
-		for(int i=0;i<n/2;i++) {
-			outputR[i]= out[2*i]*scale;
-			outputI[i]= out[2*i+1]*scale;
+		complexToComplex(sign, work, work);
+		float scale = (sign==-1)?1.0f/nfft:1.0f;
+		for(int i=0;i<nfft;i++) {
+			outputR[i]= work[2*i]*scale;
+			outputI[i]= work[2*i+1]*scale;
+		}
+	}
+	/**
+	 * 复数对复数FFT，输出时将零频率放置于中间
+	 * <p>
+	 * 相当于变换后再调用{@link #fftShift(float[], float[])}，但移位在写出结果时完成，不需要额外的数组。
+	 * @param sign  FFT符号，+1或者-1
+	 * @param inputR 输入数组的实部
+	 * @param inputI 输入数组的虚步
+	 * @param outputR 输出数组的实部，可以与inputR相同
+	 * @param outputI 输出数组的虚步，可以与inputI相同
+	 * @exception Exception 输入数组和输出数组的长度需要与实际计算使用的长度nfft一致.
+	 */
+	public void complexToComplexShift(int sign, float [] inputR, float [] inputI, float[] outputR, float[] outputI) throws Exception {
+		int nfft = this.getNfft();
+		if (inputR.length!=nfft || inputI.length !=nfft || outputR.length!=nfft|| outputI.length!=nfft)
+			throw new Exception("The length of input and output array should be equal to nfft \n!");
+		float [] work = workspace(2*nfft);
+		for(int i=0;i<nfft;i++) {
+			work[2*i]   = inputR[i];
+			work[2*i+1] = inputI[i];
+		}
+		complexToComplex(sign, work, work);
+		float scale = (sign==-1)?1.0f/nfft:1.0f;
+		int h = nfft/2;
+		for(int i=0,j=h;i<nfft;i++,j++) {
+			if(j==nfft)
+				j = 0;
+			outputR[j]= work[2*i]*scale;
+			outputI[j]= work[2*i+1]*scale;
 		}
 	}
 	/**
 	 * 返回频率采样（以弧度为单位）
+	 * <p>
+	 * 结果按时间采样缓存，返回的数组不能修改。
 	 * @param dt 时间采样
 	 * @return 频率采样
 	 */
 	public float [] getFrequencySampling(float dt) {
-		int nfft = getNfft();
-		float [] s = new float[getNfft()];
-		for(int i=0;i<nfft;i++) {
-			float v = 2.0f*FLT_PI*i/nfft;
-			v = (v>=FLT_PI)?(v-2*FLT_PI):v;
-			s[i] = v/dt;
+		Axis axis = frequency;
+		if(axis==null || axis.dt!=dt) {
+			int nfft = getNfft();
+			float [] s = new float[nfft];
+			for(int i=0;i<nfft;i++) {
+				float v = 2.0f*FLT_PI*i/nfft;
+				v = (v>=FLT_PI)?(v-2*FLT_PI):v;
+				s[i] = v/dt;
+			}
+			axis = new Axis(dt, s);
+			frequency = axis;
 		}
-		return s;
+		return axis.values;
 	}
 	/**
 	 * 返回频率采样（以Hz为单位）
+	 * <p>
+	 * 结果按时间采样缓存，返回的数组不能修改。
 	 * @param dt 时间采样
 	 * @return 频率采用
 	 */
 	public float [] getFrequencySamplingInCircle(float dt) {
-		float [] s= getFrequencySampling(dt);
-		return mul(s,1.0f/(FLT_PI*2.f));
+		Axis axis = frequencyInCircle;
+		if(axis==null || axis.dt!=dt) {
+			float [] s= getFrequencySampling(dt);
+			axis = new Axis(dt, mul(s,1.0f/(FLT_PI*2.f)));
+			frequencyInCircle = axis;
+		}
+		return axis.values;
 	}
 	/**
 	 * 返回时间采样
+	 * <p>
+	 * 结果按时间采样缓存，返回的数组不能修改。
 	 * @param dt 时间采样
 	 * @return 时间采样
 	 */
 	public float [] getTimeSampling(float dt) {
-		int nfft = getNfft();
-		float [] s = new float[nfft];
-		for(int i=0;i<nfft;i++) {
-			float v = i;
-			v = (v>=(nfft*1.0f/2))?(v-nfft):v;
-			s[i] = v*dt;
+		Axis axis = time;
+		if(axis==null || axis.dt!=dt) {
+			int nfft = getNfft();
+			float [] s = new float[nfft];
+			for(int i=0;i<nfft;i++) {
+				float v = i;
+				v = (v>=(nfft*1.0f/2))?(v-nfft):v;
+				s[i] = v*dt;
+			}
+			axis = new Axis(dt, s);
+			time = axis;
 		}
-		return s;
+		return axis.values;
 	}
 	/**
 	 * 将零频率放置于中间
@@ -89,16 +181,27 @@ public class SimpleFftComplex extends FftComplex{
 	 * @see #fftShiftInverse(float[])
 	 */
 	public static float [] fftShift(float [] a) {
-		int n=a.length;
-		float [] b = new float[n];
-		for(int i=0;i<n;i++) {
-			int j=i+(n/2);
-			if(i>=(n*1.0f/2.0f))
-				j = (int) (i- Math.ceil(n*1.0f/2));
-			b[j] = a[i];
-		}
+		float [] b = new float[a.length];
+		fftShift(a, b);
 		return b;
 	}
+	/**
+	 * 将零频率放置于中间，结果写入给定的数组
+	 * @param a 频率采样
+	 * @param b 输出的频率采样，长度与a相同，可以就是a
+	 * @see #fftShiftInverse(float[], float[])
+	 */
+	public static void fftShift(float [] a, float [] b) {
+		rotate(a, b, a.length/2);
+	}
+	/**
+	 * 将零频率放置于中间，原位计算
+	 * @param a 频率采样
+	 * @see #fftShiftInverseInplace(float[])
+	 */
+	public static void fftShiftInplace(float [] a) {
+		rotate(a, a, a.length/2);
+	}
 	/**
 	 * 将零频放置开始位置
 	 * @param a 频率采样
@@ -106,14 +209,94 @@ public class SimpleFftComplex extends FftComplex{
 	 * @see #fftShift(float[])
 	 */
 	public static float[] fftShiftInverse(float [] a) {
-		int n=a.length;
-		float [] b = new float[n];
-		for(int i=0;i<n;i++) {
-			int j=i+(n/2);
-			if(i>=(n*1.0f/2.0f))
-				j = (int) (i- Math.ceil(n*1.0f/2));
-			b[i] = a[j];
-		}
+		float [] b = new float[a.length];
+		fftShiftInverse(a, b);
 		return b;
 	}
+	/**
+	 * 将零频放置开始位置，结果写入给定的数组
+	 * @param a 频率采样
+	 * @param b 输出的频率采样，长度与a相同，可以就是a
+	 * @see #fftShift(float[], float[])
+	 */
+	public static void fftShiftInverse(float [] a, float [] b) {
+		rotate(a, b, a.length-a.length/2);
+	}
+	/**
+	 * 将零频放置开始位置，原位计算
+	 * @param a 频率采样
+	 * @see #fftShiftInplace(float[])
+	 */
+	public static void fftShiftInverseInplace(float [] a) {
+		rotate(a, a, a.length-a.length/2);
+	}
+	/**
+	 * 循环右移，b[(i+k)%n] = a[i]
+	 * <p>
+	 * a和b相同时用三次反转原位完成，不分配新的数组。
+	 * @param a 输入数组
+	 * @param b 输出数组
+	 * @param k 右移的位数，0&lt;=k&lt;=n
+	 */
+	private static void rotate(float [] a, float [] b, int k) {
+		int n = a.length;
+		if(b.length!=n)
+			throw new ArithmeticException("输入和输出数组的长度应该一致。");
+		if(a!=b) {
+			System.arraycopy(a, 0, b, k, n-k);
+			System.arraycopy(a, n-k, b, 0, k);
+			return;
+		}
+		reverse(a, 0, n);
+		reverse(a, 0, k);
+		reverse(a, k, n);
+	}
+	/**
+	 * 反转数组的一段
+	 * @param a 数组
+	 * @param begin 起始下标
+	 * @param end 结束下标（不包含）
+	 */
+	private static void reverse(float [] a, int begin, int end) {
+		for(int i=begin,j=end-1;i<j;i++,j--) {
+			float t = a[i];
+			a[i] = a[j];
+			a[j] = t;
+		}
+	}
+	/**
+	 * 返回当前线程的工作数组
+	 * @param size 需要的最小长度
+	 * @return 工作数组
+	 */
+	private static float[] workspace(int size) {
+		float[] w = WORKSPACE.get();
+		if(w.length<size) {
+			w = new float[size];
+			WORKSPACE.set(w);
+		}
+		return w;
+	}
+	/**
+	 * 缓存的采样轴，对象创建后不再修改
+	 */
+	private static final class Axis {
+		/**
+		 * 时间采样
+		 */
+		final float dt;
+		/**
+		 * 采样值
+		 */
+		final float[] values;
+		/**
+		 * 构造函数
+		 * @param dt 时间采样
+		 * @param values 采样值
+		 */
+		Axis(float dt, float[] values) {
+			this.dt     = dt;
+			this.values = values;
+		}
+	}
 }
@@ -0,0 +1,620 @@
+package com.qq.bbsunok;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+/**
+ * 压缩的波场快照存储，数据保存在内存映射文件中。
+ * <p>
+ * 所有快照的长度相同，按编号读写。写入是异步的：快照复制到缓冲区后立即返回，
+ * 压缩和写文件在后台线程中进行，未完成的写入最多{@value #DEPTH}个，超过时写入方等待。
+ * 读取时在后台线程中预先解压前面{@value #DEPTH}个编号的快照，
+ * 因此按编号倒序读取（伴随计算按时间倒序访问正演波场）时解压和计算重叠进行。
+ * <p>
+ * 压缩方式：
+ * <ul>
+ * <li>{@link Compression#LOSSLESS} 无损，按字节平面重排后用Deflate压缩；</li>
+ * <li>{@link Compression#BIT_PLANE} 每个值只保留尾数的高若干位，相对误差小于2^-bits，其余同无损压缩；</li>
+ * <li>{@link Compression#FLOAT16} 以快照的最大绝对值归一化后存为半精度浮点数，误差小于最大绝对值的2^-11。</li>
+ * </ul>
+ * 对象只能由一个线程使用。
+ * @author bbsun
+ *
+ */
+public final class SnapshotStore implements Closeable {
+	/**
+	 * 压缩方式
+	 */
+	public enum Compression {
+		/**
+		 * 无损压缩
+		 */
+		LOSSLESS,
+		/**
+		 * 截断尾数的低位后无损压缩
+		 */
+		BIT_PLANE,
+		/**
+		 * 归一化的半精度浮点数
+		 */
+		FLOAT16
+	}
+	/**
+	 * 异步写入和预读的快照个数
+	 */
+	private static final int DEPTH = 4;
+	/**
+	 * 每次映射的文件长度
+	 */
+	private static final long SEGMENT = 1L<<26;
+	/**
+	 * 记录的类型：未压缩的字节平面
+	 */
+	private static final byte RAW = 0;
+	/**
+	 * 记录的类型：Deflate压缩的字节平面
+	 */
+	private static final byte DEFLATED = 1;
+	/**
+	 * 记录的类型：半精度浮点数
+	 */
+	private static final byte HALF = 2;
+	/**
+	 * 快照的长度
+	 */
+	private final int length;
+	/**
+	 * 压缩方式
+	 */
+	private final Compression compression;
+	/**
+	 * 截断时保留的尾数位数之外的掩码
+	 */
+	private final int mask;
+	/**
+	 * 文件
+	 */
+	private final Path file;
+	/**
+	 * 关闭时是否删除文件
+	 */
+	private final boolean temporary;
+	/**
+	 * 文件通道
+	 */
+	private final FileChannel channel;
+	/**
+	 * 已经映射的文件段
+	 */
+	private final List<MappedByteBuffer> segments = new CopyOnWriteArrayList<>();
+	/**
+	 * 每个快照在文件中的位置，-1表示没有写入
+	 */
+	private long[] offsets = new long[0];
+	/**
+	 * 每个快照在文件中的字节数
+	 */
+	private int[] sizes = new int[0];
+	/**
+	 * 文件的有效长度
+	 */
+	private long end;
+	/**
+	 * 写入线程
+	 */
+	private final ExecutorService writer;
+	/**
+	 * 读取线程
+	 */
+	private final ExecutorService reader;
+	/**
+	 * 空闲的写入缓冲区，个数限制了未完成的写入
+	 */
+	private final BlockingQueue<float[]> writeBuffers = new ArrayBlockingQueue<>(DEPTH);
+	/**
+	 * 空闲的读取缓冲区
+	 */
+	private final ConcurrentLinkedQueue<float[]> readBuffers = new ConcurrentLinkedQueue<>();
+	/**
+	 * 已经提交的预读
+	 */
+	private final Map<Integer, Future<float[]>> prefetched = new HashMap<>();
+	/**
+	 * 最后一次提交的写入
+	 */
+	private Future<?> lastWrite;
+	/**
+	 * 第一个失败的写入的异常
+	 */
+	private final AtomicReference<Exception> failure = new AtomicReference<>();
+	/**
+	 * 已经分配的写入缓冲区个数
+	 */
+	private int allocated;
+	/**
+	 * 写入线程的压缩器
+	 */
+	private final Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+	/**
+	 * 读取线程的解压器
+	 */
+	private final Inflater inflater = new Inflater();
+	/**
+	 * 写入线程的字节缓冲区
+	 */
+	private byte[] encoded;
+	/**
+	 * 写入线程的字节平面缓冲区
+	 */
+	private byte[] planes;
+	/**
+	 * 读取线程的字节缓冲区
+	 */
+	private byte[] decoded;
+	/**
+	 * 读取线程的字节平面缓冲区
+	 */
+	private byte[] inflated;
+	/**
+	 * 构造函数，无损压缩
+	 * @param file 文件，已有的内容被覆盖
+	 * @param length 快照的长度
+	 * @throws IOException 文件无法打开
+	 */
+	public SnapshotStore(Path file, int length) throws IOException {
+		this(file, length, Compression.LOSSLESS, 23, false);
+	}
+	/**
+	 * 构造函数
+	 * @param file 文件，已有的内容被覆盖
+	 * @param length 快照的长度
+	 * @param compression 压缩方式
+	 * @param bits {@link Compression#BIT_PLANE}时保留的尾数位数（0...23），其它压缩方式忽略
+	 * @throws IOException 文件无法打开
+	 */
+	public SnapshotStore(Path file, int length, Compression compression, int bits) throws IOException {
+		this(file, length, compression, bits, false);
+	}
+	/**
+	 * 构造函数
+	 * @param file 文件
+	 * @param length 快照的长度
+	 * @param compression 压缩方式
+	 * @param bits 保留的尾数位数
+	 * @param temporary 关闭时是否删除文件
+	 * @throws IOException 文件无法打开
+	 */
+	private SnapshotStore(Path file, int length, Compression compression, int bits, boolean temporary) throws IOException {
+		if(length<1)
+			throw new ArithmeticException("快照的长度必须为正整数");
+		if(bits<0 || bits>23)
+			throw new ArithmeticException("保留的尾数位数必须在0到23之间");
+		this.file        = file;
+		this.length      = length;
+		this.compression = compression;
+		this.mask        = compression==Compression.BIT_PLANE?-(1<<(23-bits)):-1;
+		this.temporary   = temporary;
+		this.channel     = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ,
+				StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+		this.writer      = Executors.newSingleThreadExecutor(r -> daemon(r, "snapshot-writer"));
+		this.reader      = Executors.newSingleThreadExecutor(r -> daemon(r, "snapshot-reader"));
+	}
+	/**
+	 * 在临时目录中创建存储，关闭时删除文件
+	 * @param directory 临时目录，null为系统的临时目录
+	 * @param length 快照的长度
+	 * @param compression 压缩方式
+	 * @param bits {@link Compression#BIT_PLANE}时保留的尾数位数（0...23），其它压缩方式忽略
+	 * @return 快照存储
+	 * @throws IOException 文件无法创建
+	 */
+	public static SnapshotStore temporary(Path directory, int length, Compression compression, int bits) throws IOException {
+		Path file = directory==null?Files.createTempFile("snapshot", ".bin"):Files.createTempFile(directory, "snapshot", ".bin");
+		try {
+			return new SnapshotStore(file, length, compression, bits, true);
+		} catch(IOException|RuntimeException e) {
+			Files.deleteIfExists(file);
+			throw e;
+		}
+	}
+	/**
+	 * 创建后台线程
+	 * @param r 任务
+	 * @param name 线程名
+	 * @return 线程
+	 */
+	private static Thread daemon(Runnable r, String name) {
+		Thread t = new Thread(r, name);
+		t.setDaemon(true);
+		return t;
+	}
+	/**
+	 * 返回快照的长度
+	 * @return 快照的长度
+	 */
+	public int getLength() {
+		return length;
+	}
+	/**
+	 * 返回已经写入文件的字节数
+	 * @return 字节数
+	 */
+	public long getStoredBytes() {
+		flush();
+		return end;
+	}
+	/**
+	 * 异步写入一个快照，数据在返回前已经复制，调用后可以立即修改
+	 * @param index 编号
+	 * @param snapshot 快照
+	 */
+	public void write(int index, float[] snapshot) {
+		if(index<0)
+			throw new ArithmeticException("快照编号不能为负数");
+		if(snapshot.length<length)
+			throw new ArithmeticException("快照的长度不足");
+		float[] buffer = writeBuffers.poll();
+		if(buffer==null && allocated<DEPTH) {
+			buffer = new float[length];
+			allocated++;
+		}
+		while(buffer==null) {
+			try {
+				buffer = writeBuffers.take();
+			} catch(InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new IllegalStateException("写入快照时被中断", e);
+			}
+		}
+		System.arraycopy(snapshot, 0, buffer, 0, length);
+		float[] data = buffer;
+		// 写入可能覆盖已经预读的快照，所有预读作废
+		for(Future<float[]> f: prefetched.values())
+			discard(f);
+		prefetched.clear();
+		lastWrite = writer.submit(() -> {
+			try {
+				store(index, data);
+			} catch(IOException|RuntimeException e) {
+				failure.compareAndSet(null, e);
+				throw e;
+			} finally {
+				writeBuffers.offer(data);
+			}
+			return null;
+		});
+	}
+	/**
+	 * 等待所有写入完成
+	 */
+	public void flush() {
+		if(lastWrite!=null) {
+			await(lastWrite);
+			lastWrite = null;
+		}
+		Exception e = failure.get();
+		if(e instanceof IOException)
+			throw new UncheckedIOException((IOException) e);
+		if(e!=null)
+			throw (RuntimeException) e;
+	}
+	/**
+	 * 读取一个快照，并在后台预读编号较小的快照
+	 * @param index 编号
+	 * @param snapshot 输出的快照
+	 */
+	public void read(int index, float[] snapshot) {
+		if(snapshot.length<length)
+			throw new ArithmeticException("快照的长度不足");
+		flush();
+		if(index<0 || index>=offsets.length || offsets[index]<0)
+			throw new ArithmeticException("快照"+index+"没有写入");
+		Future<float[]> f = prefetched.remove(index);
+		if(f==null)
+			f = prefetch(index);
+		// 倒序读取时编号更大的预读不会再用到
+		for(Iterator<Map.Entry<Integer, Future<float[]>>> i=prefetched.entrySet().iterator();i.hasNext();) {
+			Map.Entry<Integer, Future<float[]>> e = i.next();
+			if(e.getKey()>index) {
+				discard(e.getValue());
+				i.remove();
+			}
+		}
+		for(int k=index-1;k>=Math.max(index-DEPTH, 0);k--) {
+			int next = k;
+			if(offsets[next]>=0 && !prefetched.containsKey(next))
+				prefetched.put(next, prefetch(next));
+		}
+		float[] data = await(f);
+		System.arraycopy(data, 0, snapshot, 0, length);
+		readBuffers.offer(data);
+	}
+	/**
+	 * 提交一个快照的读取
+	 * <p>
+	 * 文件中的位置在调用线程中取出，读取线程不访问写入线程修改的索引。
+	 * @param index 编号
+	 * @return 读取任务
+	 */
+	private Future<float[]> prefetch(int index) {
+		long pos = offsets[index];
+		int n    = sizes[index];
+		return reader.submit(() -> load(pos, n));
+	}
+	/**
+	 * 放弃一个预读：尚未完成的取消，已经完成的缓冲区放回空闲的读取缓冲区
+	 * @param f 读取任务
+	 */
+	private void discard(Future<float[]> f) {
+		if(f.cancel(false) || f.isCancelled())
+			return;
+		try {
+			readBuffers.offer(f.get());
+		} catch(InterruptedException|ExecutionException e) {
+			// 已经完成的任务不会等待；失败的预读不再需要，异常在重新读取时抛出
+		}
+	}
+	/**
+	 * 等待后台任务完成
+	 * @param <T> 结果的类型
+	 * @param f 任务
+	 * @return 结果
+	 */
+	private static <T> T await(Future<T> f) {
+		try {
+			return f.get();
+		} catch(InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IllegalStateException("快照读写被中断", e);
+		} catch(ExecutionException e) {
+			Throwable cause = e.getCause();
+			if(cause instanceof IOException)
+				throw new UncheckedIOException((IOException) cause);
+			if(cause instanceof RuntimeException)
+				throw (RuntimeException) cause;
+			throw new IllegalStateException(cause);
+		}
+	}
+	/**
+	 * 关闭存储，临时文件同时删除
+	 * @throws IOException 文件无法关闭或删除
+	 */
+	@Override
+	public void close() throws IOException {
+		try {
+			if(!temporary)
+				flush();
+		} finally {
+			writer.shutdownNow();
+			reader.shutdownNow();
+			prefetched.clear();
+			segments.clear();
+			channel.close();
+			if(temporary)
+				Files.deleteIfExists(file);
+		}
+	}
+	/**
+	 * 压缩并写入一个快照（写入线程）
+	 * @param index 编号
+	 * @param data 快照
+	 * @throws IOException 文件无法映射
+	 */
+	private void store(int index, float[] data) throws IOException {
+		int n;
+		if(compression==Compression.FLOAT16)
+			n = encodeHalf(data);
+		else
+			n = encodePlanes(data);
+		if(index>=offsets.length) {
+			int size = Math.max(index+1, 2*offsets.length);
+			int old  = offsets.length;
+			offsets  = Arrays.copyOf(offsets, size);
+			sizes    = Arrays.copyOf(sizes, size);
+			Arrays.fill(offsets, old, size, -1L);
+		}
+		offsets[index] = end;
+		sizes[index]   = n;
+		for(int done=0;done<n;) {
+			MappedByteBuffer segment = segment(end/SEGMENT);
+			int pos = (int) (end%SEGMENT);
+			int count = (int) Math.min(n-done, SEGMENT-pos);
+			segment.put(pos, encoded, done, count);
+			done += count;
+			end  += count;
+		}
+	}
+	/**
+	 * 读取并解压一个快照（读取线程）
+	 * @param pos 在文件中的位置
+	 * @param n 字节数
+	 * @return 快照
+	 * @throws DataFormatException 数据损坏
+	 */
+	private float[] load(long pos, int n) throws DataFormatException {
+		if(decoded==null || decoded.length<n)
+			decoded = new byte[Math.max(n, 4*length+1)];
+		for(int done=0;done<n;) {
+			MappedByteBuffer segment = segments.get((int) (pos/SEGMENT));
+			int off = (int) (pos%SEGMENT);
+			int count = (int) Math.min(n-done, SEGMENT-off);
+			segment.get(off, decoded, done, count);
+			done += count;
+			pos  += count;
+		}
+		float[] data = readBuffers.poll();
+		if(data==null)
+			data = new float[length];
+		switch(decoded[0]) {
+			case HALF:
+				decodeHalf(data);
+				break;
+			case DEFLATED:
+				if(inflated==null)
+					inflated = new byte[4*length];
+				inflater.reset();
+				inflater.setInput(decoded, 1, n-1);
+				if(inflater.inflate(inflated, 0, 4*length)!=4*length)
+					throw new DataFormatException("快照数据不完整");
+				unshuffle(inflated, 0, data);
+				break;
+			default:
+				unshuffle(decoded, 1, data);
+				break;
+		}
+		return data;
+	}
+	/**
+	 * 返回第i个文件段，需要时映射
+	 * @param i 文件段编号
+	 * @return 文件段
+	 * @throws IOException 文件无法映射
+	 */
+	private MappedByteBuffer segment(long i) throws IOException {
+		while(segments.size()<=i)
+			segments.add(channel.map(FileChannel.MapMode.READ_WRITE, segments.size()*SEGMENT, SEGMENT));
+		return segments.get((int) i);
+	}
+	/**
+	 * 按字节平面重排（截断尾数后）并压缩，结果在encoded中，压缩后更长时保存重排后的原始字节
+	 * @param data 快照
+	 * @return 字节数
+	 */
+	private int encodePlanes(float[] data) {
+		int n = 4*length;
+		if(planes==null)
+			planes = new byte[n];
+		if(encoded==null)
+			encoded = new byte[n+1];
+		// 高位字节在前，指数和符号集中在第一个平面，截断后的低位平面全部为零
+		for(int i=0;i<length;i++) {
+			int bits = Float.floatToRawIntBits(data[i])&mask;
+			planes[i]          = (byte) (bits>>>24);
+			planes[i+length]   = (byte) (bits>>>16);
+			planes[i+2*length] = (byte) (bits>>>8);
+			planes[i+3*length] = (byte) bits;
+		}
+		deflater.reset();
+		deflater.setInput(planes, 0, n);
+		deflater.finish();
+		int size = 1;
+		while(!deflater.finished() && size<n+1)
+			size += deflater.deflate(encoded, size, n+1-size);
+		if(deflater.finished() && size<n+1) {
+			encoded[0] = DEFLATED;
+			return size;
+		}
+		encoded[0] = RAW;
+		System.arraycopy(planes, 0, encoded, 1, n);
+		return n+1;
+	}
+	/**
+	 * 恢复字节平面重排的数据
+	 * @param b 字节
+	 * @param off 起始位置
+	 * @param data 快照
+	 */
+	private void unshuffle(byte[] b, int off, float[] data) {
+		for(int i=0;i<length;i++) {
+			int bits = (b[off+i]&0xff)<<24|(b[off+i+length]&0xff)<<16|(b[off+i+2*length]&0xff)<<8|(b[off+i+3*length]&0xff);
+			data[i] = Float.intBitsToFloat(bits);
+		}
+	}
+	/**
+	 * 归一化后存为半精度浮点数，结果在encoded中
+	 * @param data 快照
+	 * @return 字节数
+	 */
+	private int encodeHalf(float[] data) {
+		int n = 5+2*length;
+		if(encoded==null)
+			encoded = new byte[n];
+		float scale = 0.0f;
+		for(int i=0;i<length;i++)
+			scale = Math.max(scale, Math.abs(data[i]));
+		float inv = scale>0.0f?1.0f/scale:0.0f;
+		encoded[0] = HALF;
+		putInt(encoded, 1, Float.floatToRawIntBits(scale));
+		for(int i=0,j=5;i<length;i++,j+=2) {
+			int h = toHalf(data[i]*inv);
+			encoded[j]   = (byte) (h>>>8);
+			encoded[j+1] = (byte) h;
+		}
+		return n;
+	}
+	/**
+	 * 由半精度浮点数恢复快照
+	 * @param data 快照
+	 */
+	private void decodeHalf(float[] data) {
+		byte[] b = decoded;
+		float scale = Float.intBitsToFloat((b[1]&0xff)<<24|(b[2]&0xff)<<16|(b[3]&0xff)<<8|(b[4]&0xff));
+		for(int i=0,j=5;i<length;i++,j+=2)
+			data[i] = fromHalf((b[j]&0xff)<<8|(b[j+1]&0xff))*scale;
+	}
+	/**
+	 * 写入一个整数（高位字节在前）
+	 * @param b 字节数组
+	 * @param off 位置
+	 * @param v 整数
+	 */
+	private static void putInt(byte[] b, int off, int v) {
+		b[off]   = (byte) (v>>>24);
+		b[off+1] = (byte) (v>>>16);
+		b[off+2] = (byte) (v>>>8);
+		b[off+3] = (byte) v;
+	}
+	/**
+	 * 单精度转换为半精度（四舍五入）
+	 * @param f 单精度浮点数
+	 * @return 半精度浮点数的16位
+	 */
+	static int toHalf(float f) {
+		int b = Float.floatToRawIntBits(f);
+		int s = (b>>>16)&0x8000;
+		int a = b&0x7fffffff;
+		if(a>=0x477ff000)
+			return s|0x7c00;
+		if(a<0x38800000)
+			return s|Math.round(Float.intBitsToFloat(a)*0x1p24f);
+		return s|((a-0x38000000+0xfff+((a>>>13)&1))>>>13);
+	}
+	/**
+	 * 半精度转换为单精度
+	 * @param h 半精度浮点数的16位
+	 * @return 单精度浮点数
+	 */
+	static float fromHalf(int h) {
+		int s = (h&0x8000)<<16;
+		int e = (h>>>10)&0x1f;
+		int m = h&0x3ff;
+		if(e==0) {
+			float v = m*0x1p-24f;
+			return s==0?v:-v;
+		}
+		if(e==31)
+			return Float.intBitsToFloat(s|0x7f800000|m<<13);
+		return Float.intBitsToFloat(s|(e+112)<<23|m<<13);
+	}
+}
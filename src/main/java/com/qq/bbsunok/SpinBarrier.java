@@ -0,0 +1,73 @@
+package com.qq.bbsunok;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+/**
+ * 轻量级的线程屏障，用于每个时间步之间的同步。
+ * <p>
+ * 采用反转标志的算法：最后到达的线程执行屏障动作并翻转标志，其余线程先自旋等待，
+ * 自旋一定次数后登记到等待队列并挂起，由最后到达的线程在翻转标志后唤醒，
+ * 避免线程数多于处理器或两次同步之间的串行部分很长时空转。
+ * @author bbsun
+ *
+ */
+final class SpinBarrier {
+	/**
+	 * 挂起之前的自旋次数
+	 */
+	private static final int SPINS = 1<<12;
+	/**
+	 * 参与的线程数
+	 */
+	private final int parties;
+	/**
+	 * 尚未到达的线程数
+	 */
+	private final AtomicInteger remaining;
+	/**
+	 * 当前的标志
+	 */
+	private volatile boolean sense;
+	/**
+	 * 已经挂起或准备挂起的线程
+	 */
+	private final Queue<Thread> parked = new ConcurrentLinkedQueue<>();
+	/**
+	 * 构造函数
+	 * @param parties 参与的线程数
+	 */
+	SpinBarrier(int parties) {
+		this.parties   = parties;
+		this.remaining = new AtomicInteger(parties);
+	}
+	/**
+	 * 等待所有线程到达，最后到达的线程在放行前执行屏障动作
+	 * @param action 屏障动作，可以为null
+	 */
+	void await(Runnable action) {
+		boolean local = !sense;
+		if(remaining.decrementAndGet()==0) {
+			if(action!=null)
+				action.run();
+			remaining.set(parties);
+			sense = local;
+			// 先翻转标志再唤醒：登记晚于此处的线程在挂起前一定能看到新的标志
+			for(Thread t;(t=parked.poll())!=null;)
+				LockSupport.unpark(t);
+			return;
+		}
+		for(int spin=0;spin<SPINS;spin++) {
+			if(sense==local)
+				return;
+			Thread.onSpinWait();
+		}
+		// 每次挂起之前都重新登记：前一轮的唤醒可能取走了本轮的登记
+		Thread current = Thread.currentThread();
+		while(sense!=local) {
+			parked.add(current);
+			if(sense!=local)
+				LockSupport.park(this);
+		}
+	}
+}
@@ -0,0 +1,260 @@
+package com.qq.bbsunok;
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
+/**
+ * 流式短时傅里叶变换（时频谱）。
+ * <p>
+ * 连续记录按任意长度的块依次输入，对象自己保存相邻窗口重叠部分的样点，
+ * 每凑满一个窗口就加窗、做实数FFT并把该帧的频谱交给{@link FrameConsumer}。
+ * 窗函数按类型和长度缓存，变换计划和缓冲区在构造时分配一次，
+ * 因此无论输入多长，占用的内存都只与窗长有关。
+ * <p>
+ * 第k帧从第k*hop个样点开始；频谱交错存放nfft/2+1个复数，正变换不归一化。
+ * 对象保存了流的状态，不能被多个线程同时使用。
+ * @author bbsun
+ *
+ */
+public final class StreamingStft {
+	/**
+	 * 窗函数类型
+	 */
+	public enum Window {
+		/**
+		 * 矩形窗
+		 */
+		RECTANGLE,
+		/**
+		 * 汉宁窗
+		 */
+		HANN,
+		/**
+		 * 汉明窗
+		 */
+		HAMMING,
+		/**
+		 * 布莱克曼窗
+		 */
+		BLACKMAN
+	}
+	/**
+	 * 每一帧频谱的处理
+	 */
+	public interface FrameConsumer {
+		/**
+		 * 处理一帧频谱
+		 * @param frame 帧号，从0开始
+		 * @param spectrum 交错存放的nfft/2+1个复数，数组在下一帧时会被重用，需要保留时请复制
+		 */
+		void accept(long frame, float[] spectrum);
+	}
+	/**
+	 * 窗函数缓存，键为类型和长度
+	 */
+	private static final ConcurrentHashMap<Long, float[]> WINDOWS = new ConcurrentHashMap<>();
+	/**
+	 * 窗长
+	 */
+	private final int nw;
+	/**
+	 * 相邻两帧之间的样点数
+	 */
+	private final int hop;
+	/**
+	 * 变换长度，不小于窗长，多出的部分补零
+	 */
+	private final int nfft;
+	/**
+	 * 窗函数
+	 */
+	private final float[] window;
+	/**
+	 * 实数变换计划
+	 */
+	private final RealFftPlan plan;
+	/**
+	 * 尚未用完的样点，长度为窗长
+	 */
+	private final float[] buffer;
+	/**
+	 * 加窗并补零后的一帧
+	 */
+	private final float[] frame;
+	/**
+	 * 一帧的频谱
+	 */
+	private final float[] spectrum;
+	/**
+	 * 缓冲区中的样点数
+	 */
+	private int count;
+	/**
+	 * 缓冲区中还没有进入任何一帧的样点数
+	 */
+	private int pending;
+	/**
+	 * 已经输出的帧数
+	 */
+	private long frames;
+	/**
+	 * 构造函数，变换长度等于窗长
+	 * @param nw 窗长
+	 * @param hop 相邻两帧之间的样点数
+	 * @param window 窗函数类型
+	 */
+	public StreamingStft(int nw, int hop, Window window) {
+		this(nw, hop, nw, window);
+	}
+	/**
+	 * 构造函数
+	 * @param nw 窗长
+	 * @param hop 相邻两帧之间的样点数，1&lt;=hop&lt;=nw
+	 * @param nfft 变换长度，不小于窗长
+	 * @param window 窗函数类型
+	 */
+	public StreamingStft(int nw, int hop, int nfft, Window window) {
+		if(nw<1 || hop<1 || hop>nw)
+			throw new ArithmeticException("步长必须在1和窗长之间");
+		if(nfft<nw)
+			throw new ArithmeticException("变换长度不能小于窗长");
+		this.nw       = nw;
+		this.hop      = hop;
+		this.nfft     = nfft;
+		this.window   = window(window, nw);
+		this.plan     = RealFftPlan.get(nfft);
+		this.buffer   = new float[nw];
+		this.frame    = new float[nfft];
+		this.spectrum = new float[2*plan.getSpectrumLength()];
+	}
+	/**
+	 * 返回窗长
+	 * @return 窗长
+	 */
+	public int getWindowLength() {
+		return nw;
+	}
+	/**
+	 * 返回相邻两帧之间的样点数
+	 * @return 步长
+	 */
+	public int getHop() {
+		return hop;
+	}
+	/**
+	 * 返回变换长度
+	 * @return 变换长度
+	 */
+	public int getNfft() {
+		return nfft;
+	}
+	/**
+	 * 返回每帧的频率样点数nfft/2+1
+	 * @return 频率样点数
+	 */
+	public int getSpectrumLength() {
+		return plan.getSpectrumLength();
+	}
+	/**
+	 * 返回已经输出的帧数
+	 * @return 帧数
+	 */
+	public long getFrameCount() {
+		return frames;
+	}
+	/**
+	 * 输入一块样点
+	 * @param x 样点
+	 * @param consumer 每一帧频谱的处理
+	 */
+	public void process(float[] x, FrameConsumer consumer) {
+		process(x, 0, x.length, consumer);
+	}
+	/**
+	 * 输入一块样点，凑满的帧立即输出
+	 * @param x 样点数组
+	 * @param offset 第一个样点的下标
+	 * @param length 样点数
+	 * @param consumer 每一帧频谱的处理
+	 */
+	public void process(float[] x, int offset, int length, FrameConsumer consumer) {
+		if(offset<0 || length<0 || offset+(long)length>x.length)
+			throw new ArithmeticException("数组的长度或偏移不正确");
+		while(length>0) {
+			int m = Math.min(length, nw-count);
+			System.arraycopy(x, offset, buffer, count, m);
+			count   += m;
+			pending += m;
+			offset  += m;
+			length  -= m;
+			if(count==nw)
+				emit(consumer);
+		}
+	}
+	/**
+	 * 结束输入，剩余的样点补零后输出最后一帧，然后重置流的状态
+	 * @param consumer 每一帧频谱的处理
+	 */
+	public void flush(FrameConsumer consumer) {
+		if(pending>0) {
+			Arrays.fill(buffer, count, nw, 0.0f);
+			count = nw;
+			emit(consumer);
+		}
+		reset();
+	}
+	/**
+	 * 丢弃保存的样点，重新开始一个新的流
+	 */
+	public void reset() {
+		count   = 0;
+		pending = 0;
+		frames  = 0;
+	}
+	/**
+	 * 变换缓冲区中的一帧并移出前hop个样点
+	 * @param consumer 每一帧频谱的处理
+	 */
+	private void emit(FrameConsumer consumer) {
+		for(int i=0;i<nw;i++)
+			frame[i] = buffer[i]*window[i];
+		// frame中nw以后的部分始终为零
+		plan.forward(frame, 0, spectrum, 0);
+		consumer.accept(frames++, spectrum);
+		System.arraycopy(buffer, hop, buffer, 0, nw-hop);
+		count  -= hop;
+		pending = 0;
+	}
+	/**
+	 * 得到（缓存的）窗函数
+	 * @param type 窗函数类型
+	 * @param n 窗长
+	 * @return 窗函数，不能修改
+	 */
+	static float[] window(Window type, int n) {
+		Long key = ((long) type.ordinal()<<32)|n;
+		float[] w = WINDOWS.get(key);
+		if(w==null) {
+			w = new float[n];
+			for(int i=0;i<n;i++) {
+				double a = n>1?2.0*Math.PI*i/(n-1):0.0;
+				switch(type) {
+				case HANN:
+					w[i] = (float) (0.5-0.5*Math.cos(a));
+					break;
+				case HAMMING:
+					w[i] = (float) (0.54-0.46*Math.cos(a));
+					break;
+				case BLACKMAN:
+					w[i] = (float) (0.42-0.5*Math.cos(a)+0.08*Math.cos(2.0*a));
+					break;
+				default:
+					w[i] = 1.0f;
+					break;
+				}
+			}
+			float[] old = WINDOWS.putIfAbsent(key, w);
+			if(old!=null)
+				w = old;
+		}
+		return w;
+	}
+}
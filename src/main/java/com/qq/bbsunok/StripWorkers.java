@@ -0,0 +1,161 @@
+package com.qq.bbsunok;
+import java.util.concurrent.atomic.AtomicReference;
+/**
+ * 有限差分时间循环的条带工作线程。
+ * <p>
+ * 构造时启动parties-1个常驻线程，{@link #run(int, int, Strip)}把一个区间按行分为parties个连续的条带，
+ * 当前线程计算第一个条带，其余条带由工作线程计算，全部完成后返回。
+ * 开始和结束都用{@link SpinBarrier}同步，每个时间步不需要提交任务，连续调用时也不需要唤醒线程，
+ * 适合有限差分时间循环这类每步计算量相同、步数很多的循环；两次调用之间的串行部分（例如加载震源和记录检波点）
+ * 由当前线程完成。
+ * 对象只能由一个线程调用，用完后必须关闭。
+ * @author bbsun
+ *
+ */
+final class StripWorkers implements AutoCloseable {
+	/**
+	 * 一个条带的计算
+	 */
+	interface Strip {
+		/**
+		 * 计算一个条带
+		 * @param begin 起始行号
+		 * @param end 结束行号（不包含）
+		 * @param t 条带编号，可以用来选取每个线程自己的缓冲区
+		 */
+		void run(int begin, int end, int t);
+	}
+	/**
+	 * 条带数（包括当前线程）
+	 */
+	private final int parties;
+	/**
+	 * 开始和结束的屏障
+	 */
+	private final SpinBarrier barrier;
+	/**
+	 * 工作线程
+	 */
+	private final Thread[] threads;
+	/**
+	 * 第一个出现的异常
+	 */
+	private final AtomicReference<Throwable> error = new AtomicReference<>();
+	/**
+	 * 当前的计算，在屏障之前写入
+	 */
+	private Strip strip;
+	/**
+	 * 当前区间的起点
+	 */
+	private int begin;
+	/**
+	 * 当前区间的终点（不包含）
+	 */
+	private int end;
+	/**
+	 * 是否已经关闭
+	 */
+	private volatile boolean closed;
+	/**
+	 * 构造函数
+	 * @param parties 条带数，1为串行计算（不启动线程）
+	 */
+	StripWorkers(int parties) {
+		if(parties<1)
+			throw new ArithmeticException("线程数必须为正整数");
+		this.parties = parties;
+		this.barrier = new SpinBarrier(parties);
+		this.threads = new Thread[parties];
+		for(int t=1;t<parties;t++) {
+			int id = t;
+			threads[t] = new Thread(() -> loop(id), "fd-strip-"+t);
+			threads[t].setDaemon(true);
+			threads[t].start();
+		}
+	}
+	/**
+	 * 返回条带数
+	 * @return 条带数
+	 */
+	int getParties() {
+		return parties;
+	}
+	/**
+	 * 把区间[begin, end)分为条带并行计算，全部完成后返回
+	 * @param begin 起始行号
+	 * @param end 结束行号（不包含）
+	 * @param strip 条带的计算
+	 */
+	void run(int begin, int end, Strip strip) {
+		if(parties==1) {
+			strip.run(begin, end, 0);
+			return;
+		}
+		if(closed)
+			throw new IllegalStateException("工作线程已经关闭");
+		this.strip = strip;
+		this.begin = begin;
+		this.end   = end;
+		barrier.await(null);
+		execute(0);
+		barrier.await(null);
+		this.strip = null;
+		Throwable e = error.getAndSet(null);
+		if(e instanceof RuntimeException)
+			throw (RuntimeException) e;
+		if(e instanceof Error)
+			throw (Error) e;
+		if(e!=null)
+			throw new IllegalStateException(e);
+	}
+	/**
+	 * 计算第t个条带，异常记录下来由调用线程抛出
+	 * @param t 条带编号
+	 */
+	private void execute(int t) {
+		try {
+			int a = begin+(int) ((long) (end-begin)*t/parties);
+			int b = begin+(int) ((long) (end-begin)*(t+1)/parties);
+			strip.run(a, b, t);
+		} catch(Throwable e) {
+			error.compareAndSet(null, e);
+		}
+	}
+	/**
+	 * 工作线程的循环
+	 * @param t 条带编号
+	 */
+	private void loop(int t) {
+		while(true) {
+			barrier.await(null);
+			if(closed)
+				return;
+			execute(t);
+			barrier.await(null);
+		}
+	}
+	/**
+	 * 结束工作线程
+	 */
+	@Override
+	public void close() {
+		if(parties==1 || closed)
+			return;
+		closed = true;
+		barrier.await(null);
+		boolean interrupted = false;
+		for(int t=1;t<parties;t++) {
+			while(true) {
+				try {
+					threads[t].join();
+					break;
+				} catch(InterruptedException e) {
+					interrupted = true;
+				}
+			}
+		}
+		if(interrupted)
+			Thread.currentThread().interrupt();
+	}
+}
@@ -0,0 +1,179 @@
+package com.qq.bbsunok;
+import jdk.incubator.vector.FloatVector;
+import jdk.incubator.vector.VectorSpecies;
+/**
+ * 基于Java Vector API的基2/基4蝶形计算核。
+ * <p>
+ * 数据为实部和虚部分开存放、已经Bitreverse排序的数组，旋转因子表与{@link FftPlan}相同。
+ * 半长小于向量长度的前几级采用标量计算，其余各级每两级合并为一个基4级，
+ * 每条指令同时计算向量长度个蝶形，级数为奇数时最后一级为基2级。
+ * 只有在{@link VectorSupport#ENABLED}为真时才能调用本类。
+ * @author bbsun
+ *
+ */
+final class VectorFftKernel {
+	/**
+	 * 向量类型
+	 */
+	private static final VectorSpecies<Float> SPECIES = FloatVector.SPECIES_PREFERRED;
+	/**
+	 * 返回向量长度
+	 * @return 向量长度
+	 */
+	static int length() {
+		return SPECIES.length();
+	}
+	/**
+	 * 完成所有蝶形级的计算（不含归一化）
+	 * @param re 实部数组
+	 * @param ro 第一个样点在实部数组中的下标
+	 * @param im 虚部数组
+	 * @param io 第一个样点在虚部数组中的下标
+	 * @param n 变换长度，2的整数幂
+	 * @param wr 按蝶形级连续存放的旋转因子实部
+	 * @param wi 按蝶形级连续存放的旋转因子虚部
+	 */
+	static void butterflies(float[] re, int ro, float[] im, int io, int n, float[] wr, float[] wi) {
+		int vl = SPECIES.length();
+		int xn = 1;
+		for(;xn<n && xn<vl;xn<<=1)
+			scalarStage(re, ro, im, io, n, xn, wr, wi);
+		for(;4*xn<=n;xn<<=2)
+			radix4Stage(re, ro, im, io, n, xn, wr, wi);
+		if(xn<n)
+			radix2Stage(re, ro, im, io, n, xn, wr, wi);
+	}
+	/**
+	 * 标量基2级
+	 * @param re 实部数组
+	 * @param ro 实部起始下标
+	 * @param im 虚部数组
+	 * @param io 虚部起始下标
+	 * @param n 变换长度
+	 * @param xn 蝶形半长
+	 * @param wr 旋转因子实部
+	 * @param wi 旋转因子虚部
+	 */
+	private static void scalarStage(float[] re, int ro, float[] im, int io, int n, int xn, float[] wr, float[] wi) {
+		int w0 = xn-1;
+		for(int j=0;j<n;j+=2*xn) {
+			for(int k=0;k<xn;k++) {
+				int ix = ro+j+k;
+				int jx = io+j+k;
+				float pr = wr[w0+k];
+				float pi = wi[w0+k];
+				float yr = re[ix+xn];
+				float yi = im[jx+xn];
+				float t1 = pr*yr-pi*yi;
+				float t2 = pr*yi+pi*yr;
+				float xr = re[ix];
+				float xi = im[jx];
+				re[ix]    = xr + t1;
+				im[jx]    = xi + t2;
+				re[ix+xn] = xr - t1;
+				im[jx+xn] = xi - t2;
+			}
+		}
+	}
+	/**
+	 * 向量化基2级，要求xn为向量长度的整数倍
+	 * @param re 实部数组
+	 * @param ro 实部起始下标
+	 * @param im 虚部数组
+	 * @param io 虚部起始下标
+	 * @param n 变换长度
+	 * @param xn 蝶形半长
+	 * @param wr 旋转因子实部
+	 * @param wi 旋转因子虚部
+	 */
+	private static void radix2Stage(float[] re, int ro, float[] im, int io, int n, int xn, float[] wr, float[] wi) {
+		int vl = SPECIES.length();
+		int w0 = xn-1;
+		for(int j=0;j<n;j+=2*xn) {
+			for(int k=0;k<xn;k+=vl) {
+				int ix = ro+j+k;
+				int jx = io+j+k;
+				FloatVector pr = FloatVector.fromArray(SPECIES, wr, w0+k);
+				FloatVector pi = FloatVector.fromArray(SPECIES, wi, w0+k);
+				FloatVector yr = FloatVector.fromArray(SPECIES, re, ix+xn);
+				FloatVector yi = FloatVector.fromArray(SPECIES, im, jx+xn);
+				FloatVector xr = FloatVector.fromArray(SPECIES, re, ix);
+				FloatVector xi = FloatVector.fromArray(SPECIES, im, jx);
+				FloatVector t1 = pr.mul(yr).sub(pi.mul(yi));
+				FloatVector t2 = pr.mul(yi).add(pi.mul(yr));
+				xr.add(t1).intoArray(re, ix);
+				xi.add(t2).intoArray(im, jx);
+				xr.sub(t1).intoArray(re, ix+xn);
+				xi.sub(t2).intoArray(im, jx+xn);
+			}
+		}
+	}
+	/**
+	 * 向量化基4级，合并半长为xn和2xn的两个基2级，数据只读写一遍
+	 * @param re 实部数组
+	 * @param ro 实部起始下标
+	 * @param im 虚部数组
+	 * @param io 虚部起始下标
+	 * @param n 变换长度
+	 * @param xn 第一级的蝶形半长，为向量长度的整数倍
+	 * @param wr 旋转因子实部
+	 * @param wi 旋转因子虚部
+	 */
+	private static void radix4Stage(float[] re, int ro, float[] im, int io, int n, int xn, float[] wr, float[] wi) {
+		int vl = SPECIES.length();
+		int wa = xn-1;
+		int wb = 2*xn-1;
+		for(int j=0;j<n;j+=4*xn) {
+			for(int k=0;k<xn;k+=vl) {
+				int i0 = ro+j+k;
+				int j0 = io+j+k;
+				FloatVector ar = FloatVector.fromArray(SPECIES, wr, wa+k);
+				FloatVector ai = FloatVector.fromArray(SPECIES, wi, wa+k);
+				FloatVector p0r = FloatVector.fromArray(SPECIES, re, i0);
+				FloatVector p0i = FloatVector.fromArray(SPECIES, im, j0);
+				FloatVector p1r = FloatVector.fromArray(SPECIES, re, i0+xn);
+				FloatVector p1i = FloatVector.fromArray(SPECIES, im, j0+xn);
+				FloatVector p2r = FloatVector.fromArray(SPECIES, re, i0+2*xn);
+				FloatVector p2i = FloatVector.fromArray(SPECIES, im, j0+2*xn);
+				FloatVector p3r = FloatVector.fromArray(SPECIES, re, i0+3*xn);
+				FloatVector p3i = FloatVector.fromArray(SPECIES, im, j0+3*xn);
+				// 第一级：(p0,p1)和(p2,p3)使用相同的旋转因子
+				FloatVector t1r = ar.mul(p1r).sub(ai.mul(p1i));
+				FloatVector t1i = ar.mul(p1i).add(ai.mul(p1r));
+				FloatVector t3r = ar.mul(p3r).sub(ai.mul(p3i));
+				FloatVector t3i = ar.mul(p3i).add(ai.mul(p3r));
+				FloatVector q0r = p0r.add(t1r);
+				FloatVector q0i = p0i.add(t1i);
+				FloatVector q1r = p0r.sub(t1r);
+				FloatVector q1i = p0i.sub(t1i);
+				FloatVector q2r = p2r.add(t3r);
+				FloatVector q2i = p2i.add(t3i);
+				FloatVector q3r = p2r.sub(t3r);
+				FloatVector q3i = p2i.sub(t3i);
+				// 第二级：(q0,q2)使用下标k的旋转因子，(q1,q3)使用下标k+xn的旋转因子
+				FloatVector br = FloatVector.fromArray(SPECIES, wr, wb+k);
+				FloatVector bi = FloatVector.fromArray(SPECIES, wi, wb+k);
+				FloatVector cr = FloatVector.fromArray(SPECIES, wr, wb+xn+k);
+				FloatVector ci = FloatVector.fromArray(SPECIES, wi, wb+xn+k);
+				FloatVector u2r = br.mul(q2r).sub(bi.mul(q2i));
+				FloatVector u2i = br.mul(q2i).add(bi.mul(q2r));
+				FloatVector u3r = cr.mul(q3r).sub(ci.mul(q3i));
+				FloatVector u3i = cr.mul(q3i).add(ci.mul(q3r));
+				q0r.add(u2r).intoArray(re, i0);
+				q0i.add(u2i).intoArray(im, j0);
+				q1r.add(u3r).intoArray(re, i0+xn);
+				q1i.add(u3i).intoArray(im, j0+xn);
+				q0r.sub(u2r).intoArray(re, i0+2*xn);
+				q0i.sub(u2i).intoArray(im, j0+2*xn);
+				q1r.sub(u3r).intoArray(re, i0+3*xn);
+				q1i.sub(u3i).intoArray(im, j0+3*xn);
+			}
+		}
+	}
+	/**
+	 * 私有构造器
+	 */
+	private VectorFftKernel() {
+		
+	}
+}
@@ -0,0 +1,132 @@
+package com.qq.bbsunok;
+import jdk.incubator.vector.FloatVector;
+import jdk.incubator.vector.VectorMask;
+import jdk.incubator.vector.VectorSpecies;
+/**
+ * 基于Java Vector API的Laplace差分算子计算核，用于{@link ScalarWavePropagator}的时间循环。
+ * <p>
+ * 沿z方向（快轴）每次计算向量长度个网格点，每个向量在寄存器中累加完所有order/2项后才写回，
+ * 最后不足一个向量的部分用掩码处理。运算的顺序与标量计算核完全相同（不使用融合乘加），
+ * 因此结果与标量计算核逐位相同（由单元测试检查）。
+ * 只有在{@link VectorSupport#ENABLED}为真时才能调用本类。
+ * @author bbsun
+ *
+ */
+final class VectorStencilKernel {
+	/**
+	 * 向量类型
+	 */
+	private static final VectorSpecies<Float> SPECIES = FloatVector.SPECIES_PREFERRED;
+	/**
+	 * 计算一段网格点的Laplace算子
+	 * @param u 波场
+	 * @param i0 第一个网格点的数组下标
+	 * @param n 网格点数
+	 * @param lap 输出的Laplace算子
+	 * @param c0 中心点的系数
+	 * @param cx 水平方向的系数c[k]/dx^2
+	 * @param cz 深度方向的系数c[k]/dz^2
+	 * @param stride 一行的长度
+	 */
+	static void laplacian(float[] u, int i0, int n, float[] lap, float c0, float[] cx, float[] cz, int stride) {
+		int m = cx.length-1;
+		int vl = SPECIES.length();
+		int bound = SPECIES.loopBound(n);
+		int j = 0;
+		for(;j<bound;j+=vl) {
+			int i = i0+j;
+			FloatVector acc = FloatVector.fromArray(SPECIES, u, i).mul(c0);
+			for(int k=1;k<=m;k++) {
+				FloatVector up = FloatVector.fromArray(SPECIES, u, i-k);
+				FloatVector dn = FloatVector.fromArray(SPECIES, u, i+k);
+				FloatVector lf = FloatVector.fromArray(SPECIES, u, i-k*stride);
+				FloatVector rt = FloatVector.fromArray(SPECIES, u, i+k*stride);
+				acc = acc.add(up.add(dn).mul(cz[k]).add(lf.add(rt).mul(cx[k])));
+			}
+			acc.intoArray(lap, j);
+		}
+		if(j<n) {
+			VectorMask<Float> mask = SPECIES.indexInRange(j, n);
+			int i = i0+j;
+			FloatVector acc = FloatVector.fromArray(SPECIES, u, i, mask).mul(c0);
+			for(int k=1;k<=m;k++) {
+				FloatVector up = FloatVector.fromArray(SPECIES, u, i-k, mask);
+				FloatVector dn = FloatVector.fromArray(SPECIES, u, i+k, mask);
+				FloatVector lf = FloatVector.fromArray(SPECIES, u, i-k*stride, mask);
+				FloatVector rt = FloatVector.fromArray(SPECIES, u, i+k*stride, mask);
+				acc = acc.add(up.add(dn).mul(cz[k]).add(lf.add(rt).mul(cx[k])));
+			}
+			acc.intoArray(lap, j, mask);
+		}
+	}
+	/**
+	 * 不带阻尼项的时间更新 p = 2u-p+w*lap
+	 * @param u 当前时刻的波场
+	 * @param p 前一时刻的波场，更新为下一时刻的波场
+	 * @param w v^2*dt^2
+	 * @param i0 第一个网格点的数组下标
+	 * @param n 网格点数
+	 * @param lap Laplace算子
+	 * @param l0 第一个网格点在Laplace算子中的下标
+	 */
+	static void update(float[] u, float[] p, float[] w, int i0, int n, float[] lap, int l0) {
+		int vl = SPECIES.length();
+		int bound = SPECIES.loopBound(n);
+		int j = 0;
+		for(;j<bound;j+=vl) {
+			int i = i0+j;
+			FloatVector uv = FloatVector.fromArray(SPECIES, u, i);
+			FloatVector pv = FloatVector.fromArray(SPECIES, p, i);
+			FloatVector wl = FloatVector.fromArray(SPECIES, w, i).mul(FloatVector.fromArray(SPECIES, lap, l0+j));
+			uv.mul(2.0f).sub(pv).add(wl).intoArray(p, i);
+		}
+		if(j<n) {
+			VectorMask<Float> mask = SPECIES.indexInRange(j, n);
+			int i = i0+j;
+			FloatVector uv = FloatVector.fromArray(SPECIES, u, i, mask);
+			FloatVector pv = FloatVector.fromArray(SPECIES, p, i, mask);
+			FloatVector wl = FloatVector.fromArray(SPECIES, w, i, mask).mul(FloatVector.fromArray(SPECIES, lap, l0+j, mask));
+			uv.mul(2.0f).sub(pv).add(wl).intoArray(p, i, mask);
+		}
+	}
+	/**
+	 * 不带阻尼项的散射波场时间更新 dp = 2du-dp+w*lapD+s*lap
+	 * @param du 当前时刻的散射波场
+	 * @param dp 前一时刻的散射波场，更新为下一时刻的散射波场
+	 * @param w v^2*dt^2
+	 * @param s 散射系数2*v*dv*dt^2
+	 * @param i0 第一个网格点的数组下标
+	 * @param n 网格点数
+	 * @param lap 背景波场的Laplace算子
+	 * @param lapD 散射波场的Laplace算子
+	 * @param l0 第一个网格点在Laplace算子中的下标
+	 */
+	static void scattered(float[] du, float[] dp, float[] w, float[] s, int i0, int n, float[] lap, float[] lapD, int l0) {
+		int vl = SPECIES.length();
+		int bound = SPECIES.loopBound(n);
+		int j = 0;
+		for(;j<bound;j+=vl) {
+			int i = i0+j;
+			FloatVector uv = FloatVector.fromArray(SPECIES, du, i);
+			FloatVector pv = FloatVector.fromArray(SPECIES, dp, i);
+			FloatVector wl = FloatVector.fromArray(SPECIES, w, i).mul(FloatVector.fromArray(SPECIES, lapD, l0+j));
+			FloatVector sl = FloatVector.fromArray(SPECIES, s, i).mul(FloatVector.fromArray(SPECIES, lap, l0+j));
+			uv.mul(2.0f).sub(pv).add(wl).add(sl).intoArray(dp, i);
+		}
+		if(j<n) {
+			VectorMask<Float> mask = SPECIES.indexInRange(j, n);
+			int i = i0+j;
+			FloatVector uv = FloatVector.fromArray(SPECIES, du, i, mask);
+			FloatVector pv = FloatVector.fromArray(SPECIES, dp, i, mask);
+			FloatVector wl = FloatVector.fromArray(SPECIES, w, i, mask).mul(FloatVector.fromArray(SPECIES, lapD, l0+j, mask));
+			FloatVector sl = FloatVector.fromArray(SPECIES, s, i, mask).mul(FloatVector.fromArray(SPECIES, lap, l0+j, mask));
+			uv.mul(2.0f).sub(pv).add(wl).add(sl).intoArray(dp, i, mask);
+		}
+	}
+	/**
+	 * 私有构造器
+	 */
+	private VectorStencilKernel() {
+
+	}
+}
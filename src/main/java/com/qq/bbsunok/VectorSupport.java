@@ -0,0 +1,38 @@
+package com.qq.bbsunok;
+/**
+ * 检测Java Vector API（jdk.incubator.vector）是否可用。
+ * <p>
+ * 运行时需要加上参数{@code --add-modules jdk.incubator.vector}才会启用SIMD计算核；
+ * 设置系统属性{@code -Dcom.qq.bbsunok.vector=false}可以强制使用标量计算核。
+ * 本类不直接引用孵化模块中的类，因此在模块不存在时也可以安全加载。
+ * @author bbsun
+ *
+ */
+final class VectorSupport {
+	/**
+	 * 是否启用SIMD计算核
+	 */
+	static final boolean ENABLED = detect();
+	/**
+	 * 检测Vector API模块是否已加载
+	 * @return 是否可用
+	 */
+	private static boolean detect() {
+		if(!Boolean.parseBoolean(System.getProperty("com.qq.bbsunok.vector", "true")))
+			return false;
+		if(!ModuleLayer.boot().findModule("jdk.incubator.vector").isPresent())
+			return false;
+		try {
+			Class.forName("jdk.incubator.vector.FloatVector");
+			return true;
+		} catch(ClassNotFoundException | LinkageError e) {
+			return false;
+		}
+	}
+	/**
+	 * 私有构造器
+	 */
+	private VectorSupport() {
+		
+	}
+}
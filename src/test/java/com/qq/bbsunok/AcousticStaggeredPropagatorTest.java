@@ -0,0 +1,114 @@
+package com.qq.bbsunok;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertTrue;
+import org.junit.Test;
+/**
+ * 交错网格变密度声波方程传播器的测试
+ * @author bbsun
+ *
+ */
+public class AcousticStaggeredPropagatorTest {
+	/**
+	 * 模型的网格点数
+	 */
+	private static final int N = 60;
+	/**
+	 * 时间采样点数
+	 */
+	private static final int NT = 400;
+	/**
+	 * 时间采样
+	 */
+	private static final float DT = 0.001f;
+	/**
+	 * 吸收边界的网格点数
+	 */
+	private static final int NPML = 20;
+	/**
+	 * 多线程的记录与单线程逐位相同
+	 */
+	@Test
+	public void threads() {
+		for(boolean free: new boolean[] {false, true}) {
+			float[][] r1 = record(N, N, 0, free, 1.0f, 1);
+			float[][] rn = record(N, N, 0, free, 1.0f, 3);
+			for(int ir=0;ir<N;ir++)
+				assertArrayEquals("free="+free+" ir="+ir, r1[ir], rn[ir], 0.0f);
+		}
+	}
+	/**
+	 * 常密度时压力与密度的大小无关
+	 */
+	@Test
+	public void densityScale() {
+		float[][] r1 = record(N, N, 0, true, 1.0f, 1);
+		float[][] r2 = record(N, N, 0, true, 1000.0f, 1);
+		assertTrue(relativeError(r1, r2)<1.0e-5);
+	}
+	/**
+	 * 吸收边界的反射很小：与在左右和下方加大的模型（记录时间内没有边界反射）的记录比较
+	 */
+	@Test
+	public void absorbingBoundary() {
+		int pad = 90;
+		float[][] small = record(N, N, 0, false, 1.0f, 1);
+		float[][] large = record(N+2*pad, N+pad, pad, false, 1.0f, 1);
+		assertTrue(relativeError(large, small)<1.0e-3);
+	}
+	/**
+	 * 均匀模型中一个震源、一行检波点的压力记录
+	 * @param nx 模型的水平网格点数
+	 * @param nz 模型的深度网格点数
+	 * @param x0 震源和检波点的水平偏移
+	 * @param free 是否采用自由表面
+	 * @param rho 密度
+	 * @param threads 线程数
+	 * @return 记录 [N][nt]
+	 */
+	private static float[][] record(int nx, int nz, int x0, boolean free, float rho, int threads) {
+		float[][] v = new float[nx][nz];
+		float[][] r = new float[nx][nz];
+		for(int ix=0;ix<nx;ix++) {
+			for(int iz=0;iz<nz;iz++) {
+				v[ix][iz] = 2000.0f;
+				r[ix][iz] = rho;
+			}
+		}
+		float[][] sou = new float[1][NT];
+		for(int it=0;it<NT;it++) {
+			double x = Math.PI*20.0*(it*DT-0.06);
+			sou[0][it] = (float) ((1.0-2.0*x*x)*Math.exp(-x*x));
+		}
+		float[] rx = new float[N];
+		float[] rz = new float[N];
+		for(int i=0;i<N;i++) {
+			rx[i] = x0+i;
+			rz[i] = 5;
+		}
+		ModelGrid grid = new ModelGrid.Builder(DT, 10.0f, 10.0f, NPML, 8, free).velocity(v).density(r).build();
+		AcousticStaggeredPropagator p = new AcousticStaggeredPropagator(grid, 20.0f);
+		p.setSources(new float[] {x0+N/2}, new float[] {20});
+		p.setReceivers(rx, rz);
+		p.setThreads(threads);
+		float[][] rec = new float[N][NT];
+		p.forward(sou, rec);
+		return rec;
+	}
+	/**
+	 * 相对均方根误差
+	 * @param expected 期望值
+	 * @param actual 实际结果
+	 * @return 相对误差
+	 */
+	private static double relativeError(float[][] expected, float[][] actual) {
+		double error = 0.0, norm = 0.0;
+		for(int i=0;i<expected.length;i++) {
+			for(int j=0;j<expected[i].length;j++) {
+				double d = expected[i][j]-actual[i][j];
+				error += d*d;
+				norm  += (double) expected[i][j]*expected[i][j];
+			}
+		}
+		return Math.sqrt(error/norm);
+	}
+}
@@ -0,0 +1,134 @@
+package com.qq.bbsunok;
+import static org.junit.Assert.assertArrayEquals;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import org.junit.Test;
+import com.qq.bbsunok.FastFourierTransform.Type;
+/**
+ * 多道快速傅里叶变换的测试：并行计算的每一道与单道变换逐位相同
+ * @author bbsun
+ *
+ */
+public class BatchFftTest {
+	/**
+	 * 每道的样点数
+	 */
+	private static final int NT = 360;
+	/**
+	 * 道数，总样点数超过一个子任务的最小样点数，保证任务被划分
+	 */
+	private static final int NTRACES = 300;
+	/**
+	 * 交错存放的二维数组和按道连续存放的一维数组
+	 */
+	@Test
+	public void complexInterleaved() {
+		ForkJoinPool pool = new ForkJoinPool(4);
+		try {
+			BatchFft batch = new BatchFft(NT, pool);
+			for(Type type: Type.values()) {
+				float[][] c = random(NTRACES, 2*NT, 1);
+				float[][] expected = copy(c);
+				FftPlan plan = FftPlan.get(NT, type);
+				for(float[] trace: expected)
+					plan.execute(trace, 0, 1);
+				batch.complexToComplex(c, type);
+				for(int i=0;i<NTRACES;i++)
+					assertArrayEquals(type+" trace "+i, expected[i], c[i], 0.0f);
+				float[] flat = flatten(random(NTRACES, 2*NT, 2));
+				float[] flatExpected = flat.clone();
+				for(int i=0;i<NTRACES;i++)
+					plan.execute(flatExpected, 2*NT*i, 1);
+				batch.complexToComplex(flat, NTRACES, type);
+				assertArrayEquals(type+" flat", flatExpected, flat, 0.0f);
+			}
+		} finally {
+			pool.shutdown();
+		}
+	}
+	/**
+	 * 实部和虚部分开存放
+	 */
+	@Test
+	public void complexSplit() {
+		BatchFft batch = new BatchFft(NT);
+		float[][] re = random(NTRACES, NT, 3);
+		float[][] im = random(NTRACES, NT, 4);
+		float[][] er = copy(re);
+		float[][] ei = copy(im);
+		FftPlan plan = FftPlan.get(NT, Type.FORWARD);
+		for(int i=0;i<NTRACES;i++)
+			plan.execute(er[i], 0, ei[i], 0, 1);
+		batch.complexToComplex(re, im, Type.FORWARD);
+		for(int i=0;i<NTRACES;i++) {
+			assertArrayEquals("re trace "+i, er[i], re[i], 0.0f);
+			assertArrayEquals("im trace "+i, ei[i], im[i], 0.0f);
+		}
+	}
+	/**
+	 * 实数变换的二维数组和一维数组，以及反变换恢复原数据
+	 */
+	@Test
+	public void real() {
+		BatchFft batch = new BatchFft(NT);
+		RealFftPlan plan = RealFftPlan.get(NT);
+		int nc = 2*plan.getSpectrumLength();
+		float[][] x = random(NTRACES, NT, 5);
+		float[][] c = new float[NTRACES][nc];
+		batch.realToComplex(x, c);
+		float[] single = new float[nc];
+		for(int i=0;i<NTRACES;i++) {
+			plan.forward(x[i], 0, single, 0);
+			assertArrayEquals("trace "+i, single, c[i], 0.0f);
+		}
+		float[][] y = new float[NTRACES][NT];
+		batch.complexToReal(c, y);
+		for(int i=0;i<NTRACES;i++)
+			assertArrayEquals("inverse trace "+i, x[i], y[i], 1.0e-5f);
+		float[] flat = flatten(x);
+		float[] fc = new float[NTRACES*nc];
+		batch.realToComplex(flat, NTRACES, fc);
+		assertArrayEquals("flat", flatten(c), fc, 0.0f);
+		float[] fy = new float[NTRACES*NT];
+		batch.complexToReal(fc, NTRACES, fy);
+		assertArrayEquals("flat inverse", flatten(y), fy, 0.0f);
+	}
+	/**
+	 * 随机数组
+	 * @param n1 行数
+	 * @param n2 列数
+	 * @param seed 种子
+	 * @return 数组
+	 */
+	private static float[][] random(int n1, int n2, long seed) {
+		Random random = new Random(seed);
+		float[][] a = new float[n1][n2];
+		for(float[] row: a)
+			for(int j=0;j<n2;j++)
+				row[j] = (float) random.nextGaussian();
+		return a;
+	}
+	/**
+	 * 复制二维数组
+	 * @param a 数组
+	 * @return 复制的数组
+	 */
+	private static float[][] copy(float[][] a) {
+		float[][] b = new float[a.length][];
+		for(int i=0;i<a.length;i++)
+			b[i] = a[i].clone();
+		return b;
+	}
+	/**
+	 * 按行连续存放
+	 * @param a 二维数组
+	 * @return 一维数组
+	 */
+	private static float[] flatten(float[][] a) {
+		int n = a[0].length;
+		float[] f = new float[a.length*n];
+		for(int i=0;i<a.length;i++)
+			System.arraycopy(a[i], 0, f, i*n, n);
+		return f;
+	}
+}
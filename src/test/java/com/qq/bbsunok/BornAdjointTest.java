@@ -0,0 +1,130 @@
+package com.qq.bbsunok;
+import static org.junit.Assert.assertEquals;
+import java.util.Random;
+import org.junit.Test;
+/**
+ * 波恩近似算子与梯度的转置关系（点积测试）：&lt;B dv, r&gt; = &lt;dv, B^T r&gt;
+ * @author bbsun
+ *
+ */
+public class BornAdjointTest {
+	/**
+	 * 模型的网格点数
+	 */
+	private static final int NX = 60, NZ = 50;
+	/**
+	 * 时间采样点数
+	 */
+	private static final int NT = 400;
+	/**
+	 * 时间采样
+	 */
+	private static final float DT = 0.001f;
+	/**
+	 * 空间采样
+	 */
+	private static final float H = 10.0f;
+	/**
+	 * 吸收边界的网格点数
+	 */
+	private static final int NPML = 15;
+	/**
+	 * 空间有限差分阶数
+	 */
+	private static final int ORDER = 8;
+	/**
+	 * 震源位置（以网格点为单位）
+	 */
+	private static final int SX = 30, SZ = 8;
+	/**
+	 * 允许的相对误差
+	 */
+	private static final double TOLERANCE = 1.0e-4;
+	/**
+	 * 整个模型中的随机扰动
+	 */
+	@Test
+	public void randomPerturbation() {
+		Random random = new Random(1);
+		float[][] dv = new float[NX][NZ];
+		for(float[] d : dv)
+			for(int iz=0;iz<NZ;iz++)
+				d[iz] = (float) random.nextGaussian();
+		check(dv, false);
+		check(dv, true);
+	}
+	/**
+	 * 只在模型边缘3个网格点内的扰动，与吸收边界相邻
+	 */
+	@Test
+	public void edgePerturbation() {
+		Random random = new Random(2);
+		float[][] dv = new float[NX][NZ];
+		for(int ix=0;ix<NX;ix++)
+			for(int iz=0;iz<NZ;iz++)
+				if(ix<3 || iz<3 || ix>=NX-3 || iz>=NZ-3)
+					dv[ix][iz] = (float) random.nextGaussian();
+		check(dv, false);
+		check(dv, true);
+	}
+	/**
+	 * 只在震源周围3x3个网格点的扰动
+	 */
+	@Test
+	public void sourcePerturbation() {
+		Random random = new Random(3);
+		float[][] dv = new float[NX][NZ];
+		for(int ix=SX-1;ix<=SX+1;ix++)
+			for(int iz=SZ-1;iz<=SZ+1;iz++)
+				dv[ix][iz] = (float) random.nextGaussian();
+		check(dv, false);
+		check(dv, true);
+	}
+	/**
+	 * 计算&lt;B dv, r&gt;和&lt;dv, B^T r&gt;并比较
+	 * @param dv 速度扰动 [nx][nz]
+	 * @param free 是否采用自由表面
+	 */
+	private static void check(float[][] dv, boolean free) {
+		float[][] v = new float[NX][NZ];
+		for(float[] vx : v)
+			for(int iz=0;iz<NZ;iz++)
+				vx[iz] = iz<NZ/2?2000.0f:2600.0f;
+		float[] rx = new float[NX];
+		float[] rz = new float[NX];
+		for(int ix=0;ix<NX;ix++) {
+			rx[ix] = ix;
+			rz[ix] = 4;
+		}
+		float[][] sou = new float[1][NT];
+		for(int it=0;it<NT;it++) {
+			double x = Math.PI*25.0*(it*DT-0.05);
+			sou[0][it] = (float) ((1.0-2.0*x*x)*Math.exp(-x*x));
+		}
+		Random random = new Random(4);
+		float[][] res = new float[NX][NT];
+		for(float[] r : res)
+			for(int it=0;it<NT;it++)
+				r[it] = (float) random.nextGaussian();
+		ScalarWavePropagator born = new ScalarWavePropagator(new ModelGrid.Builder(DT, H, H, NPML, ORDER, free)
+				.velocity(v).perturbation(dv).build());
+		born.setSources(new float[] {SX}, new float[] {SZ});
+		born.setReceivers(rx, rz);
+		float[][] rec = new float[NX][NT];
+		born.born(sou, ReceiverSink.of(rec));
+		ScalarWavePropagator adjoint = new ScalarWavePropagator(new ModelGrid.Builder(DT, H, H, NPML, ORDER, free)
+				.velocity(v).build());
+		adjoint.setSources(new float[] {SX}, new float[] {SZ});
+		adjoint.setReceivers(rx, rz);
+		float[][] g = new float[NX][NZ];
+		adjoint.adjoint(sou, res, g, NT);
+		double left = 0.0, right = 0.0;
+		for(int ir=0;ir<NX;ir++)
+			for(int it=0;it<NT;it++)
+				left += (double) rec[ir][it]*res[ir][it];
+		for(int ix=0;ix<NX;ix++)
+			for(int iz=0;iz<NZ;iz++)
+				right += (double) dv[ix][iz]*g[ix][iz];
+		assertEquals("free="+free, 0.0, (left-right)/Math.abs(left), TOLERANCE);
+	}
+}
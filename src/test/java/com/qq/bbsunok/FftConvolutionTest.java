@@ -0,0 +1,157 @@
+package com.qq.bbsunok;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import java.util.Arrays;
+import java.util.Random;
+import org.junit.Test;
+/**
+ * 基于FFT的卷积、互相关和重叠保留滤波与直接计算的比较
+ * @author bbsun
+ *
+ */
+public class FftConvolutionTest {
+	/**
+	 * 允许的误差（相对于输出的最大绝对值）
+	 */
+	private static final double TOLERANCE = 1.0e-5;
+	/**
+	 * 卷积，包括短序列在前和在后、输出只取一部分和超出完整结果的范围
+	 */
+	@Test
+	public void conv() {
+		int[][] cases = {
+				// lx, kx, ly, ky, lz, kz
+				{100, 0, 3000, 0, 3099, 0},
+				{3000, -7, 150, 4, 2000, 500},
+				{257, 3, 257, -5, 600, -20},
+				{1, 0, 500, 0, 500, 0},
+				{64, 0, 4000, 0, 100, 3900}};
+		for(int[] c: cases) {
+			float[] x = random(c[0], 1);
+			float[] y = random(c[2], 2);
+			float[] z = new float[c[4]];
+			FftConvolution.conv(c[0], c[1], x, c[2], c[3], y, c[4], c[5], z);
+			assertClose(Arrays.toString(c), direct(c[0], c[1], x, c[2], c[3], y, c[4], c[5], false), z);
+		}
+	}
+	/**
+	 * 互相关
+	 */
+	@Test
+	public void xcor() {
+		int[][] cases = {
+				{200, 0, 3000, 0, 3199, -199},
+				{3000, 2, 120, -3, 500, -1000},
+				{300, 0, 300, 0, 599, -299}};
+		for(int[] c: cases) {
+			float[] x = random(c[0], 3);
+			float[] y = random(c[2], 4);
+			float[] z = new float[c[4]];
+			FftConvolution.xcor(c[0], c[1], x, c[2], c[3], y, c[4], c[5], z);
+			assertClose(Arrays.toString(c), direct(c[0], c[1], x, c[2], c[3], y, c[4], c[5], true), z);
+		}
+	}
+	/**
+	 * 多道卷积和互相关共享同一个滤波器
+	 */
+	@Test
+	public void traces() {
+		int lx = 150, ly = 2500, lz = 2649, ntraces = 9;
+		float[] x = random(lx, 5);
+		float[][] y = new float[ntraces][];
+		for(int t=0;t<ntraces;t++)
+			y[t] = random(ly, 10+t);
+		float[][] z = new float[ntraces][lz];
+		float[][] r = new float[ntraces][lz];
+		FftConvolution.conv(lx, 0, x, ly, 0, y, lz, 0, z);
+		FftConvolution.xcor(lx, 0, x, ly, 0, y, lz, -lx+1, r);
+		for(int t=0;t<ntraces;t++) {
+			assertClose("conv trace "+t, direct(lx, 0, x, ly, 0, y[t], lz, 0, false), z[t]);
+			assertClose("xcor trace "+t, direct(lx, 0, x, ly, 0, y[t], lz, -lx+1, true), r[t]);
+		}
+	}
+	/**
+	 * 重叠保留滤波：输入分成不规则的块，输出等于完整的因果卷积（包括长度为lh-1的尾部）
+	 */
+	@Test
+	public void overlapSave() {
+		for(int lh: new int[] {1, 31, 200}) {
+			float[] h = random(lh, 6);
+			float[] x = random(5000, 7);
+			float[] expected = direct(lh, 0, h, x.length, 0, x, x.length+lh-1, 0, false);
+			OverlapSaveFilter filter = new OverlapSaveFilter(h);
+			// 同一个对象重复使用两个流，第二个流检查reset后的状态
+			for(int pass=0;pass<2;pass++) {
+				float[] y = new float[expected.length];
+				long[] next = new long[1];
+				OverlapSaveFilter.OutputConsumer consumer = (first, out, offset, n) -> {
+					assertEquals("输出应该连续", next[0], first);
+					System.arraycopy(out, offset, y, (int) first, n);
+					next[0] += n;
+				};
+				Random random = new Random(pass);
+				for(int i=0;i<x.length;) {
+					int n = Math.min(random.nextInt(700), x.length-i);
+					filter.process(x, i, n, consumer);
+					i += n;
+				}
+				filter.flush(consumer);
+				assertEquals("lh="+lh, expected.length, next[0]);
+				assertClose("lh="+lh+" pass="+pass, expected, y);
+			}
+		}
+	}
+	/**
+	 * 直接计算卷积或互相关（双精度累加）
+	 * @param lx x的长度
+	 * @param kx x第一个样点的序号
+	 * @param x 输入数组
+	 * @param ly y的长度
+	 * @param ky y第一个样点的序号
+	 * @param y 输入数组
+	 * @param lz z的长度
+	 * @param kz z第一个样点的序号
+	 * @param xcor 是否为互相关
+	 * @return z
+	 */
+	private static float[] direct(int lx, int kx, float[] x, int ly, int ky, float[] y, int lz, int kz, boolean xcor) {
+		float[] z = new float[lz];
+		for(int i=0;i<lz;i++) {
+			double s = 0.0;
+			for(int j=0;j<lx;j++) {
+				int k = xcor?i+kz+j+kx-ky:i+kz-j-kx-ky;
+				if(k>=0 && k<ly)
+					s += (double) x[j]*y[k];
+			}
+			z[i] = (float) s;
+		}
+		return z;
+	}
+	/**
+	 * 随机数组
+	 * @param n 长度
+	 * @param seed 种子
+	 * @return 数组
+	 */
+	private static float[] random(int n, long seed) {
+		Random random = new Random(seed);
+		float[] x = new float[n];
+		for(int i=0;i<n;i++)
+			x[i] = (float) random.nextGaussian();
+		return x;
+	}
+	/**
+	 * 检查最大误差
+	 * @param message 说明
+	 * @param expected 期望值
+	 * @param actual 实际结果
+	 */
+	private static void assertClose(String message, float[] expected, float[] actual) {
+		double max = 0.0, error = 0.0;
+		for(int i=0;i<expected.length;i++) {
+			max   = Math.max(max, Math.abs(expected[i]));
+			error = Math.max(error, Math.abs(expected[i]-actual[i]));
+		}
+		assertTrue(message+" error "+error+" max "+max, error<=TOLERANCE*Math.max(max, 1.0));
+	}
+}
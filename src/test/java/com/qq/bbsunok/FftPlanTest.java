@@ -0,0 +1,160 @@
+package com.qq.bbsunok;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.util.Random;
+import org.junit.Test;
+import com.qq.bbsunok.FastFourierTransform.Type;
+/**
+ * 快速傅里叶变换计划与直接计算的离散傅里叶变换的比较
+ * @author bbsun
+ *
+ */
+public class FftPlanTest {
+	/**
+	 * 2的整数幂长度
+	 */
+	private static final int[] POWERS_OF_TWO = {1, 2, 4, 8, 16, 64, 512, 1024, 4096};
+	/**
+	 * 混合基长度
+	 */
+	private static final int[] MIXED_RADIX = {3, 6, 12, 60, 77, 143, 360, 1000};
+	/**
+	 * Bluestein算法的长度（含大素因子）
+	 */
+	private static final int[] BLUESTEIN = {17, 97, 251, 2*101, 1009};
+	/**
+	 * 允许的相对误差（均方根）
+	 */
+	private static final double TOLERANCE = 2.0e-6;
+	/**
+	 * 2的整数幂长度的复数变换
+	 */
+	@Test
+	public void powerOfTwo() {
+		for(int n: POWERS_OF_TWO)
+			checkComplex(n);
+	}
+	/**
+	 * 混合基长度的复数变换
+	 */
+	@Test
+	public void mixedRadix() {
+		for(int n: MIXED_RADIX)
+			checkComplex(n);
+	}
+	/**
+	 * Bluestein算法的复数变换
+	 */
+	@Test
+	public void bluestein() {
+		for(int n: BLUESTEIN)
+			checkComplex(n);
+	}
+	/**
+	 * 交错存放的复数数组长度为奇数时不能丢掉最后一个值
+	 */
+	@Test(expected = ArithmeticException.class)
+	public void oddInterleavedLength() {
+		FastFourierTransform.runInplace(new float[2*16+1], Type.FORWARD);
+	}
+	/**
+	 * 检查一个长度的复数变换：交错存放、按间隔存放、实部和虚部分开存放的数据，正变换和反变换
+	 * @param n 变换长度
+	 */
+	private static void checkComplex(int n) {
+		Random random = new Random(n);
+		float[] c = new float[2*n];
+		for(int i=0;i<2*n;i++)
+			c[i] = (float) random.nextGaussian();
+		for(Type type: Type.values()) {
+			double[] expected = dft(c, type);
+			FftPlan plan = FftPlan.get(n, type);
+			// 交错存放，前面留出偏移
+			float[] a = new float[2*n+6];
+			System.arraycopy(c, 0, a, 6, 2*n);
+			plan.execute(a, 6, 1);
+			assertClose("n="+n+" "+type+" interleaved", expected, a, 6, 2, 1);
+			// 缓冲区：底层数组带偏移的堆缓冲区直接变换，直接缓冲区经工作数组复制，结果都与数组逐位相同
+			float[] h = new float[2*n+10];
+			System.arraycopy(c, 0, h, 10, 2*n);
+			plan.execute(FloatBuffer.wrap(h, 4, 2*n+6).slice(), 6);
+			FloatBuffer direct = ByteBuffer.allocateDirect(4*(2*n+6)).order(ByteOrder.nativeOrder()).asFloatBuffer();
+			direct.put(6, c, 0, 2*n);
+			plan.execute(direct, 6);
+			for(int i=0;i<2*n;i++) {
+				assertEquals("n="+n+" "+type+" heap buffer", a[6+i], h[10+i], 0.0f);
+				assertEquals("n="+n+" "+type+" direct buffer", a[6+i], direct.get(6+i), 0.0f);
+			}
+			// 按间隔存放
+			int stride = 3;
+			float[] b = new float[2*stride*n];
+			for(int k=0;k<n;k++) {
+				b[2*stride*k]   = c[2*k];
+				b[2*stride*k+1] = c[2*k+1];
+			}
+			plan.execute(b, 0, stride);
+			assertClose("n="+n+" "+type+" strided", expected, b, 0, 2*stride, 1);
+			// 实部和虚部分开存放
+			float[] re = new float[n+1];
+			float[] im = new float[n+2];
+			for(int k=0;k<n;k++) {
+				re[k+1] = c[2*k];
+				im[k+2] = c[2*k+1];
+			}
+			plan.execute(re, 1, im, 2, 1);
+			float[] d = new float[2*n];
+			for(int k=0;k<n;k++) {
+				d[2*k]   = re[k+1];
+				d[2*k+1] = im[k+2];
+			}
+			assertClose("n="+n+" "+type+" split", expected, d, 0, 2, 1);
+		}
+	}
+	/**
+	 * 直接计算的离散傅里叶变换（双精度），反变换乘以1/n
+	 * @param c 交错存放的复数
+	 * @param type 变换类型
+	 * @return 交错存放的变换结果
+	 */
+	private static double[] dft(float[] c, Type type) {
+		int n = c.length/2;
+		double sign = type==Type.FORWARD?-1.0:1.0;
+		double scale = type==Type.FORWARD?1.0:1.0/n;
+		double[] out = new double[2*n];
+		for(int k=0;k<n;k++) {
+			double sr = 0.0, si = 0.0;
+			for(int j=0;j<n;j++) {
+				double a = sign*2.0*Math.PI*((long) j*k%n)/n;
+				double cr = Math.cos(a), ci = Math.sin(a);
+				sr += c[2*j]*cr-c[2*j+1]*ci;
+				si += c[2*j]*ci+c[2*j+1]*cr;
+			}
+			out[2*k]   = sr*scale;
+			out[2*k+1] = si*scale;
+		}
+		return out;
+	}
+	/**
+	 * 检查相对均方根误差
+	 * @param message 说明
+	 * @param expected 交错存放的期望值
+	 * @param actual 实际结果
+	 * @param offset 第一个样点实部在actual中的下标
+	 * @param step 相邻复数样点在actual中的间隔
+	 * @param im 虚部相对实部的偏移
+	 */
+	private static void assertClose(String message, double[] expected, float[] actual, int offset, int step, int im) {
+		double error = 0.0, norm = 0.0;
+		for(int k=0;k<expected.length/2;k++) {
+			double dr = actual[offset+k*step]-expected[2*k];
+			double di = actual[offset+k*step+im]-expected[2*k+1];
+			error += dr*dr+di*di;
+			norm  += expected[2*k]*expected[2*k]+expected[2*k+1]*expected[2*k+1];
+		}
+		double relative = Math.sqrt(error/Math.max(norm, Double.MIN_NORMAL));
+		assertTrue(message+" relative error "+relative, relative<TOLERANCE);
+	}
+}
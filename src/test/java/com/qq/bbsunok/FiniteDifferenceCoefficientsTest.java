@@ -0,0 +1,142 @@
+package com.qq.bbsunok;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import org.junit.Test;
+/**
+ * 有限差分系数的测试：相容性约束，以及频散优化的系数在优化范围内的频散误差小于泰勒系数
+ * @author bbsun
+ *
+ */
+public class FiniteDifferenceCoefficientsTest {
+	/**
+	 * 最高频率
+	 */
+	private static final float FMAX = 45.0f;
+	/**
+	 * 速度范围
+	 */
+	private static final float VMIN = 1500.0f, VMAX = 4000.0f;
+	/**
+	 * 空间采样
+	 */
+	private static final float H = 15.0f;
+	/**
+	 * 时间采样
+	 */
+	private static final float DT = 0.001f;
+	/**
+	 * 泰勒系数：二阶为(-2, 1)，各阶都满足相容性约束
+	 */
+	@Test
+	public void taylor() {
+		assertArrayEquals(new float[] {-2.0f, 1.0f}, FiniteDifferenceCoefficients.taylor(2), 0.0f);
+		assertArrayEquals(new float[] {0.0f, 1.0f}, FiniteDifferenceCoefficients.staggered(2), 0.0f);
+		for(int order=2;order<=10;order+=2) {
+			checkSecond(order, FiniteDifferenceCoefficients.taylor(order));
+			checkStaggered(order, FiniteDifferenceCoefficients.staggered(order));
+		}
+	}
+	/**
+	 * 二阶导数的频散优化系数
+	 */
+	@Test
+	public void optimized() {
+		for(int order=4;order<=10;order+=2) {
+			float[] c = FiniteDifferenceCoefficients.optimized(order, FMAX, VMIN, VMAX, H, DT);
+			checkSecond(order, c);
+			double taylor    = dispersion(FiniteDifferenceCoefficients.taylor(order), false);
+			double optimized = dispersion(c, false);
+			assertTrue("order="+order+" taylor "+taylor+" optimized "+optimized, optimized<taylor);
+		}
+	}
+	/**
+	 * 交错网格一阶导数的频散优化系数
+	 */
+	@Test
+	public void optimizedStaggered() {
+		for(int order=4;order<=10;order+=2) {
+			float[] a = FiniteDifferenceCoefficients.optimizedStaggered(order, FMAX, VMIN, VMAX, H, DT);
+			checkStaggered(order, a);
+			double taylor    = dispersion(FiniteDifferenceCoefficients.staggered(order), true);
+			double optimized = dispersion(a, true);
+			assertTrue("order="+order+" taylor "+taylor+" optimized "+optimized, optimized<taylor);
+		}
+	}
+	/**
+	 * 缓存的系数不会被调用方修改
+	 */
+	@Test
+	public void cached() {
+		float[] c = FiniteDifferenceCoefficients.optimized(8, FMAX, VMIN, VMAX, H, DT);
+		float[] expected = c.clone();
+		c[1] = 0.0f;
+		assertArrayEquals(expected, FiniteDifferenceCoefficients.optimized(8, FMAX, VMIN, VMAX, H, DT), 0.0f);
+	}
+	/**
+	 * 不合理的参数
+	 */
+	@Test(expected = ArithmeticException.class)
+	public void invalidVelocityRange() {
+		FiniteDifferenceCoefficients.optimized(8, FMAX, VMAX, VMIN, H, DT);
+	}
+	/**
+	 * 二阶导数系数的长度和约束：c[0]+2*sum c[k] = 0，sum k^2*c[k] = 1
+	 * @param order 阶数
+	 * @param c 系数
+	 */
+	private static void checkSecond(int order, float[] c) {
+		assertEquals(order/2+1, c.length);
+		double sum = c[0], moment = 0.0;
+		for(int k=1;k<c.length;k++) {
+			sum    += 2.0*c[k];
+			moment += (double) k*k*c[k];
+		}
+		assertEquals("order="+order, 0.0, sum, 1.0e-5);
+		assertEquals("order="+order, 1.0, moment, 1.0e-5);
+	}
+	/**
+	 * 交错网格一阶导数系数的长度和约束：a[0] = 0，sum (2k-1)*a[k] = 1
+	 * @param order 阶数
+	 * @param a 系数
+	 */
+	private static void checkStaggered(int order, float[] a) {
+		assertEquals(order/2+1, a.length);
+		assertEquals(0.0f, a[0], 0.0f);
+		double moment = 0.0;
+		for(int k=1;k<a.length;k++)
+			moment += (2*k-1)*a[k];
+		assertEquals("order="+order, 1.0, moment, 1.0e-5);
+	}
+	/**
+	 * 优化范围内（速度从VMIN到VMAX，波数到最高频率）沿坐标轴传播的平面波的最大相对频散误差
+	 * @param c 系数
+	 * @param staggered 是否为交错网格一阶导数
+	 * @return 最大相对误差
+	 */
+	private static double dispersion(float[] c, boolean staggered) {
+		double max = 0.0;
+		for(int iv=0;iv<=20;iv++) {
+			double v = VMIN+(VMAX-VMIN)*iv/20.0;
+			double r = v*DT/H;
+			double kmax = 2.0*Math.PI*FMAX*H/v;
+			for(int ik=1;ik<=300;ik++) {
+				double x = kmax*ik/300.0;
+				double s, t;
+				if(staggered) {
+					t = 2.0*Math.sin(r*x/2.0)/r;
+					s = 0.0;
+					for(int k=1;k<c.length;k++)
+						s += 2.0*c[k]*Math.sin((k-0.5)*x);
+				} else {
+					t = 2.0*(Math.cos(r*x)-1.0)/(r*r);
+					s = c[0];
+					for(int k=1;k<c.length;k++)
+						s += 2.0*c[k]*Math.cos(k*x);
+				}
+				max = Math.max(max, Math.abs(s-t)/Math.abs(t));
+			}
+		}
+		return max;
+	}
+}
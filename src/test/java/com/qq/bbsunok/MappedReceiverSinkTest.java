@@ -0,0 +1,112 @@
+package com.qq.bbsunok;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Random;
+import org.junit.Test;
+/**
+ * 内存映射文件的检波点记录输出与内存中的记录比较
+ * @author bbsun
+ *
+ */
+public class MappedReceiverSinkTest {
+	/**
+	 * 道数
+	 */
+	private static final int NR = 60;
+	/**
+	 * 时间采样点数，不是时间块长度的整数倍
+	 */
+	private static final int NT = 1003;
+	/**
+	 * 任意长度的时间块写入后，文件按道排列（大端），与内存中的记录逐位相同；再次开始时文件按新的大小重建
+	 * @throws IOException 文件无法创建
+	 */
+	@Test
+	public void blocks() throws IOException {
+		Path file = Files.createTempFile("receivers", ".bin");
+		try(MappedReceiverSink sink = new MappedReceiverSink(file)) {
+			for(int pass=0;pass<2;pass++) {
+				int nr = NR-20*pass;
+				int nt = NT-300*pass;
+				float[][] expected = new float[nr][nt];
+				ReceiverSink array = ReceiverSink.of(expected);
+				sink.begin(nr, nt);
+				array.begin(nr, nt);
+				Random random = new Random(pass);
+				for(int it0=0;it0<nt;) {
+					int n = Math.min(nt-it0, 1+random.nextInt(100));
+					float[] block = new float[n*nr];
+					for(int i=0;i<block.length;i++)
+						block[i] = (float) random.nextGaussian();
+					sink.write(it0, n, block);
+					array.write(it0, n, block);
+					// 写入后立即修改，不影响已经写入的数据
+					block[0] = Float.NaN;
+					it0 += n;
+				}
+				sink.end();
+				array.end();
+				assertEquals(nr, sink.getTraceCount());
+				assertEquals(nt, sink.getSampleCount());
+				float[] trace = new float[nt];
+				for(int ir=0;ir<nr;ir++) {
+					sink.read(ir, trace);
+					assertArrayEquals("pass="+pass+" ir="+ir, expected[ir], trace, 0.0f);
+				}
+				ByteBuffer raw = ByteBuffer.wrap(Files.readAllBytes(file));
+				assertEquals(4L*nr*nt, raw.capacity());
+				for(int ir=0;ir<nr;ir+=7)
+					for(int it=0;it<nt;it+=13)
+						assertEquals(expected[ir][it], raw.getFloat(4*(ir*nt+it)), 0.0f);
+			}
+		} finally {
+			Files.deleteIfExists(file);
+		}
+	}
+	/**
+	 * 正演模拟写入文件的记录与写入数组的记录逐位相同
+	 * @throws IOException 文件无法创建
+	 */
+	@Test
+	public void forward() throws IOException {
+		float[][] v = new float[NR][50];
+		for(float[] vx: v)
+			for(int iz=0;iz<vx.length;iz++)
+				vx[iz] = 2000.0f+10.0f*iz;
+		ModelGrid grid = new ModelGrid.Builder(0.001f, 10.0f, 10.0f, 15, 8, false).velocity(v).build();
+		float[][] sou = new float[1][NT];
+		for(int it=0;it<NT;it++) {
+			double x = Math.PI*20.0*(it*0.001-0.06);
+			sou[0][it] = (float) ((1.0-2.0*x*x)*Math.exp(-x*x));
+		}
+		float[] rx = new float[NR];
+		float[] rz = new float[NR];
+		for(int ir=0;ir<NR;ir++) {
+			rx[ir] = ir;
+			rz[ir] = 3;
+		}
+		Path file = Files.createTempFile("receivers", ".bin");
+		try(MappedReceiverSink sink = new MappedReceiverSink(file)) {
+			for(int threads: new int[] {1, 3}) {
+				ScalarWavePropagator p = new ScalarWavePropagator(grid);
+				p.setSources(new float[] {NR/2}, new float[] {20});
+				p.setReceivers(rx, rz);
+				p.setThreads(threads);
+				float[][] expected = new float[NR][NT];
+				p.forward(sou, expected);
+				p.forward(sou, sink);
+				float[] trace = new float[NT];
+				for(int ir=0;ir<NR;ir++) {
+					sink.read(ir, trace);
+					assertArrayEquals("threads="+threads+" ir="+ir, expected[ir], trace, 0.0f);
+				}
+			}
+		} finally {
+			Files.deleteIfExists(file);
+		}
+	}
+}
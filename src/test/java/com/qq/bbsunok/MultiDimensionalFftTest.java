@@ -0,0 +1,143 @@
+package com.qq.bbsunok;
+import static org.junit.Assert.assertTrue;
+import java.util.Random;
+import org.junit.Test;
+import com.qq.bbsunok.FastFourierTransform.Type;
+/**
+ * 二维和三维快速傅里叶变换与直接计算的离散傅里叶变换的比较
+ * @author bbsun
+ *
+ */
+public class MultiDimensionalFftTest {
+	/**
+	 * 允许的相对误差（均方根）
+	 */
+	private static final double TOLERANCE = 2.0e-6;
+	/**
+	 * 二维复数变换，快轴长度超过一个列块且不是块长的整数倍
+	 */
+	@Test
+	public void complex2D() {
+		for(Type type: Type.values()) {
+			int n2 = 12, n1 = 40;
+			float[][] c = random(n2, 2*n1, 1);
+			double[] expected = dft(new float[][][] {c}, type);
+			MultiDimensionalFft.run2D(c, type);
+			assertClose("2D "+type, expected, new float[][][] {c});
+		}
+	}
+	/**
+	 * 三维复数变换
+	 */
+	@Test
+	public void complex3D() {
+		for(Type type: Type.values()) {
+			int n3 = 5, n2 = 6, n1 = 18;
+			float[][][] c = new float[n3][][];
+			for(int i3=0;i3<n3;i3++)
+				c[i3] = random(n2, 2*n1, 10+i3);
+			double[] expected = dft(c, type);
+			MultiDimensionalFft.run3D(c, type);
+			assertClose("3D "+type, expected, c);
+		}
+	}
+	/**
+	 * 二维实数变换与复数变换的非负频率部分一致，反变换恢复原数据
+	 */
+	@Test
+	public void real2D() {
+		for(int n1: new int[] {32, 33}) {
+			int n2 = 20;
+			float[][] x = random(n2, n1, 2);
+			float[][] c = new float[n2][2*n1];
+			for(int i2=0;i2<n2;i2++)
+				for(int i1=0;i1<n1;i1++)
+					c[i2][2*i1] = x[i2][i1];
+			double[] full = dft(new float[][][] {c}, Type.FORWARD);
+			float[][] s = MultiDimensionalFft.realToComplex2D(x);
+			int nk = n1/2+1;
+			double[] expected = new double[2*n2*nk];
+			for(int i2=0;i2<n2;i2++)
+				System.arraycopy(full, 2*n1*i2, expected, 2*nk*i2, 2*nk);
+			assertClose("real n1="+n1, expected, new float[][][] {s});
+			float[][] y = new float[n2][n1];
+			MultiDimensionalFft.complexToReal2D(s, y);
+			double[] original = new double[n2*n1];
+			for(int i2=0;i2<n2;i2++)
+				for(int i1=0;i1<n1;i1++)
+					original[i2*n1+i1] = x[i2][i1];
+			assertClose("inverse n1="+n1, original, new float[][][] {y});
+		}
+	}
+	/**
+	 * 直接计算的多维离散傅里叶变换（双精度），反变换乘以1/n
+	 * @param c 交错存放的复数 [n3][n2][2*n1]
+	 * @param type 变换类型
+	 * @return 按[n3][n2][2*n1]顺序连续存放的结果
+	 */
+	private static double[] dft(float[][][] c, Type type) {
+		int n3 = c.length, n2 = c[0].length, n1 = c[0][0].length/2;
+		double sign = type==Type.FORWARD?-1.0:1.0;
+		double scale = type==Type.FORWARD?1.0:1.0/((double) n1*n2*n3);
+		double[] out = new double[2*n1*n2*n3];
+		for(int k3=0;k3<n3;k3++) {
+			for(int k2=0;k2<n2;k2++) {
+				for(int k1=0;k1<n1;k1++) {
+					double sr = 0.0, si = 0.0;
+					for(int j3=0;j3<n3;j3++) {
+						for(int j2=0;j2<n2;j2++) {
+							float[] row = c[j3][j2];
+							for(int j1=0;j1<n1;j1++) {
+								double a = sign*2.0*Math.PI*((double) j1*k1/n1+(double) j2*k2/n2+(double) j3*k3/n3);
+								double cr = Math.cos(a), ci = Math.sin(a);
+								sr += row[2*j1]*cr-row[2*j1+1]*ci;
+								si += row[2*j1]*ci+row[2*j1+1]*cr;
+							}
+						}
+					}
+					int i = 2*((k3*n2+k2)*n1+k1);
+					out[i]   = sr*scale;
+					out[i+1] = si*scale;
+				}
+			}
+		}
+		return out;
+	}
+	/**
+	 * 随机数组
+	 * @param n1 行数
+	 * @param n2 列数
+	 * @param seed 种子
+	 * @return 数组
+	 */
+	private static float[][] random(int n1, int n2, long seed) {
+		Random random = new Random(seed);
+		float[][] a = new float[n1][n2];
+		for(float[] row: a)
+			for(int j=0;j<n2;j++)
+				row[j] = (float) random.nextGaussian();
+		return a;
+	}
+	/**
+	 * 检查相对均方根误差
+	 * @param message 说明
+	 * @param expected 按行连续存放的期望值
+	 * @param actual 实际结果
+	 */
+	private static void assertClose(String message, double[] expected, float[][][] actual) {
+		double error = 0.0, norm = 0.0;
+		int i = 0;
+		for(float[][] slab: actual) {
+			for(float[] row: slab) {
+				for(float v: row) {
+					double d = v-expected[i];
+					error += d*d;
+					norm  += expected[i]*expected[i];
+					i++;
+				}
+			}
+		}
+		double relative = Math.sqrt(error/norm);
+		assertTrue(message+" relative error "+relative, i==expected.length && relative<TOLERANCE);
+	}
+}
@@ -0,0 +1,150 @@
+package com.qq.bbsunok;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.fail;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import org.junit.Test;
+/**
+ * 多炮并行模拟的测试
+ * @author bbsun
+ *
+ */
+public class MultiShotModelingTest {
+	/**
+	 * 模型的网格点数
+	 */
+	private static final int NX = 60, NZ = 40;
+	/**
+	 * 时间采样点数
+	 */
+	private static final int NT = 300;
+	/**
+	 * 时间采样
+	 */
+	private static final float DT = 0.001f;
+	/**
+	 * 炮数
+	 */
+	private static final int SHOTS = 5;
+	/**
+	 * 多线程模拟的每一炮记录与单线程逐位相同，也与单独的传播器相同（波场池中的波场被正确重置）
+	 */
+	@Test
+	public void threadsMatchSingleThread() {
+		ModelGrid grid = grid();
+		List<MultiShotModeling.Shot> serial   = shots();
+		List<MultiShotModeling.Shot> parallel = shots();
+		new MultiShotModeling(grid, 1, Long.MAX_VALUE).run(serial);
+		new MultiShotModeling(grid, 3, Long.MAX_VALUE).run(parallel);
+		for(int is=0;is<SHOTS;is++) {
+			ScalarWavePropagator p = new ScalarWavePropagator(grid);
+			p.setSources(new float[] {sx(is)}, new float[] {2});
+			p.setReceivers(receiverX(), receiverZ());
+			float[][] expected = new float[NX][NT];
+			p.forward(source(), expected);
+			float[][] r1 = serial.get(is).getRecord();
+			float[][] rn = parallel.get(is).getRecord();
+			for(int ir=0;ir<NX;ir++) {
+				assertArrayEquals("shot="+is+" ir="+ir, expected[ir], r1[ir], 0.0f);
+				assertArrayEquals("shot="+is+" ir="+ir, expected[ir], rn[ir], 0.0f);
+			}
+		}
+	}
+	/**
+	 * 线程被中断（线程池关闭）后，时间循环在下一个记录块处中止，不再写出记录
+	 */
+	@Test
+	public void interruptAbortsShot() {
+		int[] writes = new int[1];
+		boolean[] ended = new boolean[1];
+		ReceiverSink sink = new ReceiverSink() {
+			@Override
+			public void begin(int nr, int nt) {
+
+			}
+			@Override
+			public void write(int it0, int n, float[] block) {
+				// 模拟线程池关闭时对工作线程的中断
+				writes[0]++;
+				Thread.currentThread().interrupt();
+			}
+			@Override
+			public void end() {
+				ended[0] = true;
+			}
+		};
+		List<MultiShotModeling.Shot> shots = Arrays.asList(new MultiShotModeling.Shot(new float[] {sx(0)}, new float[] {2},
+				receiverX(), receiverZ(), source(), sink));
+		try {
+			new MultiShotModeling(grid(), 1, Long.MAX_VALUE).run(shots);
+			fail("线程被中断后模拟应该中止");
+		} catch(IllegalStateException e) {
+			assertEquals(1, writes[0]);
+			assertFalse(ended[0]);
+		}
+	}
+	/**
+	 * 速度随深度线性增加的模型网格
+	 * @return 模型网格
+	 */
+	private static ModelGrid grid() {
+		float[][] v = new float[NX][NZ];
+		for(float[] vx: v)
+			for(int iz=0;iz<NZ;iz++)
+				vx[iz] = 1800.0f+15.0f*iz;
+		return new ModelGrid.Builder(DT, 10.0f, 10.0f, 12, 8, false).velocity(v).build();
+	}
+	/**
+	 * 炮集
+	 * @return 炮集
+	 */
+	private static List<MultiShotModeling.Shot> shots() {
+		List<MultiShotModeling.Shot> shots = new ArrayList<>();
+		for(int is=0;is<SHOTS;is++)
+			shots.add(new MultiShotModeling.Shot(new float[] {sx(is)}, new float[] {2}, receiverX(), receiverZ(),
+					source(), new float[NX][NT]));
+		return shots;
+	}
+	/**
+	 * 第is炮的震源位置
+	 * @param is 炮号
+	 * @return 水平坐标（以网格点为单位）
+	 */
+	private static float sx(int is) {
+		return 5+is*12;
+	}
+	/**
+	 * 检波点的水平坐标
+	 * @return 坐标（以网格点为单位）
+	 */
+	private static float[] receiverX() {
+		float[] rx = new float[NX];
+		for(int ix=0;ix<NX;ix++)
+			rx[ix] = ix;
+		return rx;
+	}
+	/**
+	 * 检波点的深度坐标
+	 * @return 坐标（以网格点为单位）
+	 */
+	private static float[] receiverZ() {
+		float[] rz = new float[NX];
+		Arrays.fill(rz, 1);
+		return rz;
+	}
+	/**
+	 * 主频25Hz的雷克子波
+	 * @return 震源子波 [1][nt]
+	 */
+	private static float[][] source() {
+		float[][] sou = new float[1][NT];
+		for(int it=0;it<NT;it++) {
+			double x = Math.PI*25.0*(it*DT-0.05);
+			sou[0][it] = (float) ((1.0-2.0*x*x)*Math.exp(-x*x));
+		}
+		return sou;
+	}
+}
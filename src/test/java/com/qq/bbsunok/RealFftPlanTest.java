@@ -0,0 +1,126 @@
+package com.qq.bbsunok;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import java.util.Random;
+import org.junit.Test;
+/**
+ * 实数快速傅里叶变换与直接计算的离散傅里叶变换的比较
+ * @author bbsun
+ *
+ */
+public class RealFftPlanTest {
+	/**
+	 * 偶数长度（包括2的整数幂、混合基和需要Bluestein算法的半长）
+	 */
+	private static final int[] EVEN = {2, 4, 16, 64, 1024, 60, 360, 2*97, 2*251};
+	/**
+	 * 奇数长度
+	 */
+	private static final int[] ODD = {1, 3, 15, 77, 97, 251};
+	/**
+	 * 允许的相对误差（均方根）
+	 */
+	private static final double TOLERANCE = 2.0e-6;
+	/**
+	 * 偶数长度的正变换和反变换
+	 */
+	@Test
+	public void evenLengths() {
+		for(int n: EVEN)
+			check(n);
+	}
+	/**
+	 * 奇数长度的正变换和反变换
+	 */
+	@Test
+	public void oddLengths() {
+		for(int n: ODD)
+			check(n);
+	}
+	/**
+	 * 频率样点数为n/2+1，偶数长度时最后一个样点为Nyquist频率
+	 */
+	@Test
+	public void spectrumLength() {
+		assertEquals(9, RealFftPlan.get(16).getSpectrumLength());
+		assertEquals(8, RealFftPlan.get(15).getSpectrumLength());
+		assertEquals(1, RealFftPlan.get(1).getSpectrumLength());
+		// 交替的±1只有Nyquist频率的分量
+		float[] x = new float[16];
+		for(int i=0;i<16;i++)
+			x[i] = i%2==0?1.0f:-1.0f;
+		float[] c = FastFourierTransform.realToComplex(x);
+		for(int k=0;k<8;k++) {
+			assertEquals(0.0f, c[2*k], 1.0e-6f);
+			assertEquals(0.0f, c[2*k+1], 1.0e-6f);
+		}
+		assertEquals(16.0f, c[16], 1.0e-5f);
+		assertEquals(0.0f, c[17], 1.0e-6f);
+	}
+	/**
+	 * 检查一个长度：正变换的n/2+1个频率样点与离散傅里叶变换一致，反变换恢复原信号
+	 * @param n 变换长度
+	 */
+	private static void check(int n) {
+		Random random = new Random(n);
+		float[] x = new float[n];
+		for(int i=0;i<n;i++)
+			x[i] = (float) random.nextGaussian();
+		RealFftPlan plan = RealFftPlan.get(n);
+		int nc = 2*plan.getSpectrumLength();
+		// 输入和输出前面留出偏移
+		float[] xo = new float[n+3];
+		System.arraycopy(x, 0, xo, 3, n);
+		float[] c = new float[nc+5];
+		plan.forward(xo, 3, c, 5);
+		double[] expected = dft(x, nc/2);
+		assertClose("n="+n+" forward", expected, c, 5);
+		float[] y = new float[n+7];
+		plan.inverse(c, 5, y, 7);
+		double[] original = new double[n];
+		for(int i=0;i<n;i++)
+			original[i] = x[i];
+		assertClose("n="+n+" inverse", original, y, 7);
+		// 静态方法的结果与计划相同
+		float[] s = FastFourierTransform.realToComplex(x);
+		float[] z = new float[n];
+		FastFourierTransform.complexToReal(s, z);
+		assertClose("n="+n+" realToComplex", expected, s, 0);
+		assertClose("n="+n+" complexToReal", original, z, 0);
+	}
+	/**
+	 * 直接计算实信号的离散傅里叶变换的前nk个频率样点（双精度）
+	 * @param x 实信号
+	 * @param nk 频率样点数
+	 * @return 交错存放的频率样点
+	 */
+	private static double[] dft(float[] x, int nk) {
+		int n = x.length;
+		double[] c = new double[2*nk];
+		for(int k=0;k<nk;k++) {
+			for(int j=0;j<n;j++) {
+				double a = -2.0*Math.PI*((long) j*k%n)/n;
+				c[2*k]   += x[j]*Math.cos(a);
+				c[2*k+1] += x[j]*Math.sin(a);
+			}
+		}
+		return c;
+	}
+	/**
+	 * 检查相对均方根误差
+	 * @param message 说明
+	 * @param expected 期望值
+	 * @param actual 实际结果
+	 * @param offset 第一个值在actual中的下标
+	 */
+	private static void assertClose(String message, double[] expected, float[] actual, int offset) {
+		double error = 0.0, norm = 0.0;
+		for(int i=0;i<expected.length;i++) {
+			double d = actual[offset+i]-expected[i];
+			error += d*d;
+			norm  += expected[i]*expected[i];
+		}
+		double relative = Math.sqrt(error/Math.max(norm, Double.MIN_NORMAL));
+		assertTrue(message+" relative error "+relative, relative<TOLERANCE);
+	}
+}
@@ -0,0 +1,112 @@
+package com.qq.bbsunok;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import org.junit.Test;
+/**
+ * 二项式检查点调度的测试
+ * @author bbsun
+ *
+ */
+public class RevolveTest {
+	/**
+	 * 只记录状态步数的执行对象，检查伴随的顺序和状态
+	 */
+	private static final class Counter implements Revolve.Target {
+		/**
+		 * 当前状态的步数
+		 */
+		int current;
+		/**
+		 * 下一次伴随应该的步数
+		 */
+		int expected;
+		/**
+		 * 检查点保存的步数
+		 */
+		final int[] slots;
+		/**
+		 * 是否出现错误的状态
+		 */
+		boolean wrong;
+		/**
+		 * 构造函数
+		 * @param steps 总步数
+		 * @param snapshots 检查点个数
+		 */
+		Counter(int steps, int snapshots) {
+			this.expected = steps;
+			this.slots    = new int[snapshots];
+		}
+		@Override
+		public void initial() {
+			current = 0;
+		}
+		@Override
+		public void advance(int step) {
+			wrong |= step!=current;
+			current++;
+		}
+		@Override
+		public void store(int slot) {
+			slots[slot] = current;
+		}
+		@Override
+		public void restore(int slot) {
+			current = slots[slot];
+		}
+		@Override
+		public void adjoint(int step) {
+			wrong |= step!=expected || current!=step;
+			expected--;
+		}
+	}
+	/**
+	 * 最少的正演步数：T(n,s) = min(n+T(n-1,s), min_m m+T(n-m,s-1)+T(m-1,s))
+	 * @param steps 最大步数
+	 * @param snapshots 最大检查点个数
+	 * @return T[n][s]
+	 */
+	private static long[][] optimum(int steps, int snapshots) {
+		long[][] t = new long[steps+1][snapshots+1];
+		for(int s=0;s<=snapshots;s++) {
+			for(int n=1;n<=steps;n++) {
+				long best = n+t[n-1][s];
+				for(int m=1;s>0 && m<n;m++)
+					best = Math.min(best, m+t[n-m][s-1]+t[m-1][s]);
+				t[n][s] = best;
+			}
+		}
+		return t;
+	}
+	/**
+	 * 执行调度
+	 * @param steps 总步数
+	 * @param snapshots 检查点个数
+	 * @return 正演步数
+	 */
+	private static long run(int steps, int snapshots) {
+		Counter c = new Counter(steps, snapshots);
+		long advances = new Revolve(steps, snapshots).run(c);
+		assertTrue("steps="+steps+" snapshots="+snapshots, !c.wrong && c.expected==0);
+		return advances;
+	}
+	/**
+	 * 正演步数等于动态规划得到的最小值
+	 */
+	@Test
+	public void minimalAdvances() {
+		long[][] t = optimum(200, 8);
+		for(int s=0;s<=8;s++)
+			for(int n=0;n<=200;n++)
+				assertEquals("steps="+n+" snapshots="+s, t[n][s], run(n, s));
+	}
+	/**
+	 * 检查点足够时每步只正演一次
+	 */
+	@Test
+	public void enoughSnapshots() {
+		assertEquals(599, run(599, 599));
+		assertEquals(2285, run(599, 7));
+		assertEquals(4113, run(599, 3));
+	}
+}
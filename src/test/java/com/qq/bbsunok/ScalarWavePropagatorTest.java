@@ -0,0 +1,185 @@
+package com.qq.bbsunok;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertTrue;
+import java.io.IOException;
+import java.util.Random;
+import org.junit.Test;
+/**
+ * 标量波动方程传播器的测试：三种梯度计算方式相互比较，多线程与单线程的结果比较
+ * @author bbsun
+ *
+ */
+public class ScalarWavePropagatorTest {
+	/**
+	 * 模型的网格点数
+	 */
+	private static final int NX = 70, NZ = 50;
+	/**
+	 * 时间采样点数
+	 */
+	private static final int NT = 400;
+	/**
+	 * 时间采样
+	 */
+	private static final float DT = 0.001f;
+	/**
+	 * 线程数
+	 */
+	private static final int THREADS = 3;
+	/**
+	 * 检查点足够和不足时的梯度、无损快照存储的梯度逐位相同，边界倒推的梯度只有舍入误差
+	 * @throws IOException 快照文件无法创建
+	 */
+	@Test
+	public void gradientModes() throws IOException {
+		for(boolean free: new boolean[] {false, true}) {
+			float[][] all      = gradient(free, 1, 0);
+			float[][] few      = gradient(free, 1, 7);
+			float[][] stored   = gradient(free, 1, -1);
+			float[][] boundary = gradient(free, 1, -2);
+			for(int ix=0;ix<NX;ix++) {
+				assertArrayEquals("free="+free+" checkpoints ix="+ix, all[ix], few[ix], 0.0f);
+				assertArrayEquals("free="+free+" stored ix="+ix, all[ix], stored[ix], 0.0f);
+			}
+			assertTrue("free="+free+" boundary", relativeError(all, boundary)<1.0e-4);
+		}
+	}
+	/**
+	 * 多线程的梯度与单线程逐位相同
+	 * @throws IOException 快照文件无法创建
+	 */
+	@Test
+	public void gradientThreads() throws IOException {
+		for(int mode: new int[] {7, -1, -2}) {
+			float[][] g1 = gradient(false, 1, mode);
+			float[][] gn = gradient(false, THREADS, mode);
+			for(int ix=0;ix<NX;ix++)
+				assertArrayEquals("mode="+mode+" ix="+ix, g1[ix], gn[ix], 0.0f);
+		}
+	}
+	/**
+	 * 多线程的正演和波恩近似记录与单线程逐位相同
+	 */
+	@Test
+	public void recordThreads() {
+		for(boolean free: new boolean[] {false, true}) {
+			for(boolean born: new boolean[] {false, true}) {
+				float[][] r1 = record(free, born, 1);
+				float[][] rn = record(free, born, THREADS);
+				for(int ir=0;ir<NX;ir++)
+					assertArrayEquals("free="+free+" born="+born+" ir="+ir, r1[ir], rn[ir], 0.0f);
+			}
+		}
+	}
+	/**
+	 * 计算梯度
+	 * @param free 是否采用自由表面
+	 * @param threads 线程数
+	 * @param mode 正数为检查点个数，0为每步一个检查点，-1为无损快照存储，-2为边界倒推
+	 * @return 梯度 [nx][nz]
+	 * @throws IOException 快照文件无法创建
+	 */
+	private static float[][] gradient(boolean free, int threads, int mode) throws IOException {
+		ScalarWavePropagator p = propagator(grid(free).build(), threads);
+		Random random = new Random(1);
+		float[][] res = new float[NX][NT];
+		for(float[] r: res)
+			for(int it=0;it<NT;it++)
+				r[it] = (float) random.nextGaussian();
+		float[][] g = new float[NX][NZ];
+		if(mode>=0) {
+			p.adjoint(source(), res, g, mode>0?mode:NT);
+		} else if(mode==-1) {
+			try(SnapshotStore store = SnapshotStore.temporary(null, p.regionLength(), SnapshotStore.Compression.LOSSLESS, 23)) {
+				p.adjointStored(source(), res, g, store);
+			}
+		} else {
+			p.adjointBoundary(source(), res, g);
+		}
+		return g;
+	}
+	/**
+	 * 正演或波恩近似模拟的记录
+	 * @param free 是否采用自由表面
+	 * @param born 是否为波恩近似模拟
+	 * @param threads 线程数
+	 * @return 记录 [nr][nt]
+	 */
+	private static float[][] record(boolean free, boolean born, int threads) {
+		ModelGrid.Builder b = grid(free);
+		if(born) {
+			float[][] dv = new float[NX][NZ];
+			for(int ix=0;ix<NX;ix++)
+				for(int iz=NZ/2;iz<NZ;iz++)
+					dv[ix][iz] = (float) (100.0*Math.sin(0.2*ix));
+			b.perturbation(dv);
+		}
+		ScalarWavePropagator p = propagator(b.build(), threads);
+		float[][] rec = new float[NX][NT];
+		if(born)
+			p.born(source(), ReceiverSink.of(rec));
+		else
+			p.forward(source(), rec);
+		return rec;
+	}
+	/**
+	 * 两层速度模型的构造器
+	 * @param free 是否采用自由表面
+	 * @return 构造器
+	 */
+	private static ModelGrid.Builder grid(boolean free) {
+		float[][] v = new float[NX][NZ];
+		for(float[] vx: v)
+			for(int iz=0;iz<NZ;iz++)
+				vx[iz] = iz<NZ/2?2000.0f:2500.0f+4.0f*iz;
+		return new ModelGrid.Builder(DT, 10.0f, 10.0f, 15, 8, free).velocity(v);
+	}
+	/**
+	 * 地表一个震源、每道一个检波点的传播器
+	 * @param grid 模型网格
+	 * @param threads 线程数
+	 * @return 传播器
+	 */
+	private static ScalarWavePropagator propagator(ModelGrid grid, int threads) {
+		ScalarWavePropagator p = new ScalarWavePropagator(grid);
+		float[] rx = new float[NX];
+		float[] rz = new float[NX];
+		for(int ix=0;ix<NX;ix++) {
+			rx[ix] = ix;
+			rz[ix] = 3;
+		}
+		p.setSources(new float[] {NX/2}, new float[] {5});
+		p.setReceivers(rx, rz);
+		p.setThreads(threads);
+		return p;
+	}
+	/**
+	 * 主频25Hz的雷克子波
+	 * @return 震源子波 [1][nt]
+	 */
+	private static float[][] source() {
+		float[][] sou = new float[1][NT];
+		for(int it=0;it<NT;it++) {
+			double x = Math.PI*25.0*(it*DT-0.05);
+			sou[0][it] = (float) ((1.0-2.0*x*x)*Math.exp(-x*x));
+		}
+		return sou;
+	}
+	/**
+	 * 相对均方根误差
+	 * @param expected 期望值
+	 * @param actual 实际结果
+	 * @return 相对误差
+	 */
+	private static double relativeError(float[][] expected, float[][] actual) {
+		double error = 0.0, norm = 0.0;
+		for(int ix=0;ix<expected.length;ix++) {
+			for(int iz=0;iz<expected[ix].length;iz++) {
+				double d = expected[ix][iz]-actual[ix][iz];
+				error += d*d;
+				norm  += (double) expected[ix][iz]*expected[ix][iz];
+			}
+		}
+		return Math.sqrt(error/norm);
+	}
+}
@@ -0,0 +1,149 @@
+package com.qq.bbsunok;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import java.io.IOException;
+import java.util.Random;
+import org.junit.Test;
+import com.qq.bbsunok.SnapshotStore.Compression;
+/**
+ * 波场快照存储的测试：写入后倒序读回，检查三种压缩方式的误差
+ * @author bbsun
+ *
+ */
+public class SnapshotStoreTest {
+	/**
+	 * 快照的长度
+	 */
+	private static final int LENGTH = 5000;
+	/**
+	 * 快照个数，多于预读的深度
+	 */
+	private static final int COUNT = 40;
+	/**
+	 * 截断尾数时保留的位数
+	 */
+	private static final int BITS = 10;
+	/**
+	 * 无损压缩逐位恢复，平滑的波场压缩后变小
+	 * @throws IOException 快照文件无法创建
+	 */
+	@Test
+	public void lossless() throws IOException {
+		try(SnapshotStore store = SnapshotStore.temporary(null, LENGTH, Compression.LOSSLESS, 23)) {
+			writeAll(store);
+			float[] y = new float[LENGTH];
+			for(int k=COUNT-1;k>=0;k--) {
+				store.read(k, y);
+				assertArrayEquals("snapshot "+k, snapshot(k), y, 0.0f);
+			}
+			assertTrue(store.getStoredBytes()<4L*LENGTH*COUNT);
+		}
+	}
+	/**
+	 * 截断尾数后每个值的相对误差小于2^-bits
+	 * @throws IOException 快照文件无法创建
+	 */
+	@Test
+	public void bitPlane() throws IOException {
+		try(SnapshotStore store = SnapshotStore.temporary(null, LENGTH, Compression.BIT_PLANE, BITS)) {
+			writeAll(store);
+			float[] y = new float[LENGTH];
+			for(int k=COUNT-1;k>=0;k--) {
+				store.read(k, y);
+				float[] x = snapshot(k);
+				for(int i=0;i<LENGTH;i++)
+					assertTrue("snapshot "+k+" i="+i, Math.abs(x[i]-y[i])<=Math.abs(x[i])*Math.scalb(1.0f, -BITS));
+			}
+		}
+	}
+	/**
+	 * 半精度存储的误差小于快照最大绝对值的2^-11
+	 * @throws IOException 快照文件无法创建
+	 */
+	@Test
+	public void float16() throws IOException {
+		try(SnapshotStore store = SnapshotStore.temporary(null, LENGTH, Compression.FLOAT16, 0)) {
+			writeAll(store);
+			float[] y = new float[LENGTH];
+			for(int k=COUNT-1;k>=0;k--) {
+				store.read(k, y);
+				float[] x = snapshot(k);
+				float max = 0.0f;
+				for(float v: x)
+					max = Math.max(max, Math.abs(v));
+				for(int i=0;i<LENGTH;i++)
+					assertTrue("snapshot "+k+" i="+i, Math.abs(x[i]-y[i])<=max*Math.scalb(1.0f, -11));
+			}
+		}
+	}
+	/**
+	 * 读取之后继续写入（覆盖已经预读的编号），再读取时得到新写入的内容
+	 * @throws IOException 快照文件无法创建
+	 */
+	@Test
+	public void writeAfterRead() throws IOException {
+		try(SnapshotStore store = SnapshotStore.temporary(null, LENGTH, Compression.LOSSLESS, 23)) {
+			writeAll(store);
+			float[] y = new float[LENGTH];
+			store.read(COUNT-1, y);
+			// 编号COUNT-2...COUNT-5此时已经在预读
+			for(int k=COUNT-2;k>=COUNT-5;k--)
+				store.write(k, snapshot(1000+k));
+			for(int k=COUNT-2;k>=0;k--) {
+				store.read(k, y);
+				assertArrayEquals("snapshot "+k, snapshot(k>=COUNT-5?1000+k:k), y, 0.0f);
+			}
+			// 随机顺序读取
+			Random random = new Random(1);
+			for(int n=0;n<20;n++) {
+				int k = random.nextInt(COUNT-5);
+				store.read(k, y);
+				assertArrayEquals("snapshot "+k, snapshot(k), y, 0.0f);
+			}
+		}
+	}
+	/**
+	 * 半精度转换：所有有限的半精度数转换为单精度再转换回来不变
+	 */
+	@Test
+	public void halfRoundTrip() {
+		for(int h=0;h<0x10000;h++) {
+			if((h&0x7c00)==0x7c00)
+				continue;
+			assertEquals(Integer.toHexString(h), h, SnapshotStore.toHalf(SnapshotStore.fromHalf(h)));
+		}
+	}
+	/**
+	 * 读取没有写入的编号
+	 * @throws IOException 快照文件无法创建
+	 */
+	@Test(expected = ArithmeticException.class)
+	public void missing() throws IOException {
+		try(SnapshotStore store = SnapshotStore.temporary(null, LENGTH, Compression.LOSSLESS, 23)) {
+			store.write(0, snapshot(0));
+			store.read(1, new float[LENGTH]);
+		}
+	}
+	/**
+	 * 依次写入所有快照
+	 * @param store 快照存储
+	 */
+	private static void writeAll(SnapshotStore store) {
+		for(int k=0;k<COUNT;k++)
+			store.write(k, snapshot(k));
+	}
+	/**
+	 * 第k个快照：传播的平滑波形，其中一部分为零
+	 * @param k 编号
+	 * @return 快照
+	 */
+	private static float[] snapshot(int k) {
+		float[] x = new float[LENGTH];
+		Random random = new Random(k);
+		int front = LENGTH*(k%COUNT+1)/(COUNT+1);
+		for(int i=0;i<front;i++)
+			x[i] = (float) (Math.sin(0.05*(front-i))*Math.exp(-1.0e-3*(front-i))*(k+1))+1.0e-4f*(float) random.nextGaussian();
+		return x;
+	}
+}
@@ -0,0 +1,62 @@
+package com.qq.bbsunok;
+import static org.junit.Assert.assertEquals;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import org.junit.Test;
+/**
+ * 线程屏障的同步和挂起后的唤醒
+ * @author bbsun
+ *
+ */
+public class SpinBarrierTest {
+	/**
+	 * 参与的线程数
+	 */
+	private static final int PARTIES = 4;
+	/**
+	 * 同步的轮数
+	 */
+	private static final int ROUNDS = 2000;
+	/**
+	 * 每一轮所有线程到达后才执行屏障动作；部分轮次的屏障动作很慢，等待的线程挂起后必须被唤醒
+	 * @throws InterruptedException 等待线程结束时被中断
+	 */
+	@Test(timeout=60000)
+	public void rounds() throws InterruptedException {
+		SpinBarrier barrier = new SpinBarrier(PARTIES);
+		AtomicInteger arrived = new AtomicInteger();
+		int[] actions = new int[1];
+		AtomicReference<Throwable> failure = new AtomicReference<>();
+		Runnable action = () -> {
+			assertEquals(PARTIES*(actions[0]+1), arrived.get());
+			actions[0]++;
+			if(actions[0]%100==0) {
+				try {
+					Thread.sleep(20);
+				} catch(InterruptedException e) {
+					Thread.currentThread().interrupt();
+				}
+			}
+		};
+		Thread[] threads = new Thread[PARTIES];
+		for(int i=0;i<PARTIES;i++) {
+			threads[i] = new Thread(() -> {
+				try {
+					for(int round=0;round<ROUNDS;round++) {
+						arrived.incrementAndGet();
+						barrier.await(action);
+					}
+				} catch(Throwable e) {
+					failure.compareAndSet(null, e);
+				}
+			});
+			threads[i].start();
+		}
+		for(Thread t: threads)
+			t.join();
+		if(failure.get()!=null)
+			throw new AssertionError(failure.get());
+		assertEquals(ROUNDS, actions[0]);
+		assertEquals(PARTIES*ROUNDS, arrived.get());
+	}
+}
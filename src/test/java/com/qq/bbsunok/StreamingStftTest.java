@@ -0,0 +1,170 @@
+package com.qq.bbsunok;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import org.junit.Test;
+import com.qq.bbsunok.StreamingStft.Window;
+/**
+ * 流式短时傅里叶变换的测试：帧数、分块输入和结束时的补零
+ * @author bbsun
+ *
+ */
+public class StreamingStftTest {
+	/**
+	 * 窗长
+	 */
+	private static final int NW = 128;
+	/**
+	 * 步长
+	 */
+	private static final int HOP = 32;
+	/**
+	 * 变换长度，大于窗长
+	 */
+	private static final int NFFT = 150;
+	/**
+	 * 允许的相对误差（均方根）
+	 */
+	private static final double TOLERANCE = 2.0e-6;
+	/**
+	 * 每一帧等于对应位置加窗补零后的离散傅里叶变换，flush输出的最后一帧在窗口末尾补零
+	 */
+	@Test
+	public void frames() {
+		int n = 1000;
+		float[] x = random(n, 1);
+		StreamingStft stft = new StreamingStft(NW, HOP, NFFT, Window.HANN);
+		List<float[]> spectra = new ArrayList<>();
+		stft.process(x, collect(spectra));
+		// 完整的窗口数为(n-NW)/HOP+1
+		assertEquals((n-NW)/HOP+1, spectra.size());
+		assertEquals(spectra.size(), stft.getFrameCount());
+		stft.flush(collect(spectra));
+		// 剩余的n-(NW+27*HOP)=8个样点补零后多输出一帧
+		assertEquals((n-NW)/HOP+2, spectra.size());
+		assertEquals(0, stft.getFrameCount());
+		float[] w = StreamingStft.window(Window.HANN, NW);
+		for(int k=0;k<spectra.size();k++) {
+			float[] expected = new float[NW];
+			int m = Math.min(NW, n-k*HOP);
+			for(int i=0;i<m;i++)
+				expected[i] = x[k*HOP+i]*w[i];
+			assertEquals(2*(NFFT/2+1), spectra.get(k).length);
+			assertClose("frame "+k, dft(expected, NFFT), spectra.get(k));
+		}
+	}
+	/**
+	 * 任意长度的分块输入与一次输入的结果逐位相同
+	 */
+	@Test
+	public void chunked() {
+		int n = 2000;
+		float[] x = random(n, 2);
+		StreamingStft stft = new StreamingStft(NW, HOP, Window.BLACKMAN);
+		List<float[]> whole = new ArrayList<>();
+		stft.process(x, collect(whole));
+		stft.flush(collect(whole));
+		List<float[]> parts = new ArrayList<>();
+		Random random = new Random(3);
+		for(int offset=0;offset<n;) {
+			int length = Math.min(n-offset, random.nextInt(3*NW));
+			stft.process(x, offset, length, collect(parts));
+			offset += length;
+		}
+		stft.flush(collect(parts));
+		assertEquals(whole.size(), parts.size());
+		for(int k=0;k<whole.size();k++)
+			assertArrayEquals("frame "+k, whole.get(k), parts.get(k), 0.0f);
+	}
+	/**
+	 * 样点恰好用完时flush不再输出，不足一个窗口时flush输出一帧
+	 */
+	@Test
+	public void flush() {
+		StreamingStft stft = new StreamingStft(NW, HOP, Window.RECTANGLE);
+		List<float[]> spectra = new ArrayList<>();
+		stft.process(random(NW+3*HOP, 4), collect(spectra));
+		assertEquals(4, spectra.size());
+		stft.flush(collect(spectra));
+		assertEquals(4, spectra.size());
+		spectra.clear();
+		float[] x = random(NW/2, 5);
+		stft.process(x, collect(spectra));
+		assertEquals(0, spectra.size());
+		stft.flush(collect(spectra));
+		assertEquals(1, spectra.size());
+		assertClose("short", dft(Arrays.copyOf(x, NW), NW), spectra.get(0));
+		spectra.clear();
+		stft.flush(collect(spectra));
+		assertEquals(0, spectra.size());
+	}
+	/**
+	 * 不合理的参数
+	 */
+	@Test(expected = ArithmeticException.class)
+	public void hopLongerThanWindow() {
+		new StreamingStft(NW, NW+1, Window.HANN);
+	}
+	/**
+	 * 复制每一帧的频谱
+	 * @param spectra 保存频谱
+	 * @return 帧处理
+	 */
+	private static StreamingStft.FrameConsumer collect(List<float[]> spectra) {
+		return (frame, spectrum) -> {
+			assertEquals(spectra.size(), frame);
+			spectra.add(spectrum.clone());
+		};
+	}
+	/**
+	 * 直接计算补零后的实信号的离散傅里叶变换的非负频率部分（双精度）
+	 * @param x 实信号
+	 * @param n 变换长度
+	 * @return 交错存放的n/2+1个频率样点
+	 */
+	private static double[] dft(float[] x, int n) {
+		int nk = n/2+1;
+		double[] c = new double[2*nk];
+		for(int k=0;k<nk;k++) {
+			for(int j=0;j<x.length;j++) {
+				double a = -2.0*Math.PI*((long) j*k%n)/n;
+				c[2*k]   += x[j]*Math.cos(a);
+				c[2*k+1] += x[j]*Math.sin(a);
+			}
+		}
+		return c;
+	}
+	/**
+	 * 随机信号
+	 * @param n 样点数
+	 * @param seed 种子
+	 * @return 信号
+	 */
+	private static float[] random(int n, long seed) {
+		Random random = new Random(seed);
+		float[] x = new float[n];
+		for(int i=0;i<n;i++)
+			x[i] = (float) random.nextGaussian();
+		return x;
+	}
+	/**
+	 * 检查相对均方根误差
+	 * @param message 说明
+	 * @param expected 期望值
+	 * @param actual 实际结果
+	 */
+	private static void assertClose(String message, double[] expected, float[] actual) {
+		double error = 0.0, norm = 0.0;
+		for(int i=0;i<expected.length;i++) {
+			double d = actual[i]-expected[i];
+			error += d*d;
+			norm  += expected[i]*expected[i];
+		}
+		double relative = Math.sqrt(error/norm);
+		assertTrue(message+" relative error "+relative, relative<TOLERANCE);
+	}
+}
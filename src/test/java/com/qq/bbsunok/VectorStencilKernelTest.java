@@ -0,0 +1,67 @@
+package com.qq.bbsunok;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assume.assumeTrue;
+import java.util.Random;
+import org.junit.Test;
+/**
+ * Vector API计算核的测试
+ * @author bbsun
+ *
+ */
+public class VectorStencilKernelTest {
+	/**
+	 * 用随机数据检查计算核与标量计算核的结果逐位相同
+	 */
+	@Test
+	public void matchesScalar() {
+		assumeTrue(VectorSupport.ENABLED);
+		Random random = new Random(1);
+		// 各种阶数，长度取若干个向量再加上不足一个向量的尾部
+		for(int order=2;order<=10;order+=2) {
+			int m = order/2;
+			int n = 3*64+m;
+			int stride = n+2*m;
+			float[] c  = FiniteDifferenceCoefficients.taylor(order);
+			float[] cx = new float[m+1];
+			float[] cz = new float[m+1];
+			for(int k=0;k<=m;k++) {
+				cx[k] = c[k]/(random.nextFloat()+0.5f);
+				cz[k] = c[k]/(random.nextFloat()+0.5f);
+			}
+			float c0 = cx[0]+cz[0];
+			int size = (2*m+1)*stride;
+			float[] u = new float[size];
+			float[] p = new float[size];
+			float[] q = new float[size];
+			float[] w = new float[size];
+			for(int i=0;i<size;i++) {
+				u[i] = (float) random.nextGaussian();
+				p[i] = q[i] = (float) random.nextGaussian();
+				w[i] = random.nextFloat();
+			}
+			int i0 = m*stride+m;
+			float[] a = new float[n];
+			float[] b = new float[n];
+			VectorStencilKernel.laplacian(u, i0, n, a, c0, cx, cz, stride);
+			ScalarWavePropagator.laplacian(u, i0, n, b, c0, cx, cz, stride);
+			assertBitwise("laplacian order="+order, b, a);
+			VectorStencilKernel.update(u, p, w, i0, n, a, 0);
+			ScalarWavePropagator.update(u, q, w, i0, n, b, 0);
+			assertBitwise("update order="+order, q, p);
+			// 散射波场的更新以u作为散射系数，两个Laplace算子取同一个
+			VectorStencilKernel.scattered(u, p, w, u, i0, n, a, a, 0);
+			ScalarWavePropagator.scattered(u, q, w, u, i0, n, b, b, 0);
+			assertBitwise("scattered order="+order, q, p);
+		}
+	}
+	/**
+	 * 检查两个数组逐位相同
+	 * @param message 说明
+	 * @param expected 标量计算核的结果
+	 * @param actual 向量计算核的结果
+	 */
+	private static void assertBitwise(String message, float[] expected, float[] actual) {
+		for(int i=0;i<expected.length;i++)
+			assertEquals(message+" i="+i, Float.floatToRawIntBits(expected[i]), Float.floatToRawIntBits(actual[i]));
+	}
+}